@@ -0,0 +1,69 @@
+package net.sharksystem.asap.pki;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Measures lookup costs of the in memory issuer index compared to a full scan with 10k, 100k and 1M
+ * certificates. Prints timings - there is no threshold, machines are too different. Run with -Xmx2g or more.
+ */
+public class CertificateIndexBenchmark {
+    private static final int NUMBER_ISSUERS = 1000;
+    private static final int QUERIES = 100;
+
+    private static InMemoCertificates fillStorage(int numberCertificates) throws IOException {
+        InMemoCertificates storage = new InMemoCertificates("Owner_ID", "Owner");
+        for(int i = 0; i < numberCertificates; i++) {
+            storage.storeCertificate(new StubCertificate("Issuer_" + (i % NUMBER_ISSUERS), "Subject_" + i));
+        }
+        return storage;
+    }
+
+    /** That's what getCertificatesByIssuerID did before there was an issuer index */
+    private static Collection<ASAPCertificate> scanForIssuer(Collection<ASAPCertificate> allCerts,
+                                                             CharSequence issuerID) {
+        Set<ASAPCertificate> certSetIssuer = new HashSet<>();
+        for(ASAPCertificate cert : allCerts) {
+            if(cert.getIssuerID().toString().equalsIgnoreCase(issuerID.toString())) {
+                certSetIssuer.add(cert);
+            }
+        }
+        return certSetIssuer;
+    }
+
+    private static void issuerLookup(int numberCertificates) throws IOException {
+        InMemoCertificates storage = fillStorage(numberCertificates);
+        // warm up - fills in memo maps
+        storage.getCertificatesByIssuerID("Issuer_0");
+        Collection<ASAPCertificate> allCerts = storage.getAllCertificates();
+
+        int found = 0;
+        long start = System.nanoTime();
+        for(int i = 0; i < QUERIES; i++) {
+            found += storage.getCertificatesByIssuerID("ISSUER_" + i).size();
+        }
+        long indexDuration = System.nanoTime() - start;
+
+        // full scan is very slow with huge numbers - take fewer rounds
+        int scanQueries = numberCertificates > 100000 ? 5 : QUERIES;
+        start = System.nanoTime();
+        for(int i = 0; i < scanQueries; i++) {
+            found += scanForIssuer(allCerts, "ISSUER_" + i).size();
+        }
+        long scanDuration = System.nanoTime() - start;
+
+        long indexPerQuery = indexDuration / QUERIES;
+        long scanPerQuery = scanDuration / scanQueries;
+        System.out.println("#certificates == " + numberCertificates
+                + " | issuer index: " + indexPerQuery / 1000 + " us/query"
+                + " | full scan: " + scanPerQuery / 1000 + " us/query"
+                + " | speedup: " + (scanPerQuery / Math.max(1, indexPerQuery))
+                + " | found: " + found);
+    }
+
+    public static void main(String[] args) throws IOException {
+        for(int numberCertificates : new int[] {10000, 100000, 1000000}) {
+            issuerLookup(numberCertificates);
+        }
+    }
+}
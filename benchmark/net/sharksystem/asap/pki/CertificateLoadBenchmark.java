@@ -0,0 +1,53 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.engine.ASAPEngine;
+import net.sharksystem.fs.FSUtils;
+
+import java.security.KeyPair;
+import java.util.Map;
+
+import static net.sharksystem.asap.pki.ASAPStorageBasedCertificatesTests.OWNER_ID;
+import static net.sharksystem.asap.pki.ASAPStorageBasedCertificatesTests.ROOT_DIRECTORY;
+import static net.sharksystem.asap.pki.ASAPStorageBasedCertificatesTests.createKeyPair;
+import static net.sharksystem.asap.pki.ASAPStorageBasedCertificatesTests.getASAPStorage;
+import static net.sharksystem.asap.pki.ASAPStorageBasedCertificatesTests.loadCertificates;
+import static net.sharksystem.asap.pki.ASAPStorageBasedCertificatesTests.storeCertificates;
+
+/**
+ * Time to load certificates from an ASAP storage against store size and number of threads. Prints timings -
+ * there is no threshold, machines are too different.
+ */
+public class CertificateLoadBenchmark {
+    public static void main(String[] args) throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        ASAPEngine asapStorage = getASAPStorage();
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+        int number = 0;
+        for(int size : new int[] {250, 750, 1000, 3000}) {
+            storeCertificates(storage, issuerKeys, number, number + size);
+            number += size;
+            asapStorage.newEra();
+
+            Map<String, Integer> expected = loadCertificates(1);
+            StringBuilder sb = new StringBuilder();
+            sb.append("# load ").append(number).append(" certificates (").append(cores).append(" cores)");
+            for(int parallelism : new int[] {1, 2, 4, cores}) {
+                // warm up
+                loadCertificates(parallelism);
+                long start = System.nanoTime();
+                Map<String, Integer> loaded = loadCertificates(parallelism);
+                long duration = System.nanoTime() - start;
+
+                if(!expected.equals(loaded)) {
+                    throw new IllegalStateException("different certificates with " + parallelism + " threads");
+                }
+                sb.append(" | ").append(parallelism).append(" threads: ").append(duration / 1000 / 1000).append(" ms");
+            }
+            System.out.println(sb);
+        }
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+    }
+}
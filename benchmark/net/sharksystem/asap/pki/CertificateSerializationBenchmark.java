@@ -0,0 +1,184 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.sharksystem.asap.pki.ASAPCertificateSerializationTests.createCertificate;
+import static net.sharksystem.asap.pki.ASAPCertificateSerializationTests.createKeyPair;
+import static net.sharksystem.asap.pki.ASAPCertificateSerializationTests.createMessages;
+import static net.sharksystem.asap.pki.ASAPCertificateSerializationTests.legacyBytes;
+import static net.sharksystem.asap.pki.ASAPCertificateSerializationTests.legacyRead;
+import static net.sharksystem.asap.pki.ASAPCertificateSerializationTests.usedHeap;
+
+/**
+ * Costs of certificate serialization. Prints timings - there is no threshold, machines are too different.
+ */
+public class CertificateSerializationBenchmark {
+    /**
+     * Encoding with streams as it was done before, into a byte array and into a buffer - and decoding from a buffer.
+     */
+    private static void encoding() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        ASAPCertificateImpl certificate = createCertificate(issuerKeys, "Alice", ASAPEncounterConnectionType.INTERNET);
+        byte[] signature = legacyRead(certificate.asBytes(), certificate);
+        PublicKey publicKey = certificate.getPublicKey();
+        int rounds = 20000;
+
+        // warm up
+        for(int i = 0; i < 1000; i++) {
+            legacyBytes(certificate, signature);
+            certificate.asBytes();
+        }
+
+        long start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) legacyBytes(certificate, signature);
+        long legacyEncode = (System.nanoTime() - start) / rounds;
+
+        start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) certificate.asBytes();
+        long encode = (System.nanoTime() - start) / rounds;
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(certificate.getSerializedLength() * rounds);
+        start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) certificate.writeTo(buffer);
+        long encodeIntoBuffer = (System.nanoTime() - start) / rounds;
+
+        buffer.flip();
+        start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            if(!publicKey.equals(ASAPCertificateImpl.produceCertificateFromBuffer(buffer).getPublicKey())) {
+                throw new IllegalStateException("decoded certificate has another key");
+            }
+        }
+        long decode = (System.nanoTime() - start) / rounds;
+
+        System.out.println("# certificate encoding: streams: " + legacyEncode + " ns | byte array: " + encode
+                + " ns | into buffer: " + encodeIntoBuffer + " ns | decoding (incl. key factory): " + decode + " ns");
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Bytes allocated by encoding all fields again - what each asBytes() call did before - by asBytes() and
+     * by verification.
+     */
+    private static void allocation() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        ASAPCertificateImpl certificate = createCertificate(issuerKeys, "Alice", ASAPEncounterConnectionType.INTERNET);
+        ASAPCertificate received = ASAPCertificateImpl.produceCertificateFromBytes(certificate.asBytes());
+
+        int rounds = 20000;
+        // warm up
+        for(int i = 0; i < 1000; i++) {
+            encodeAgain(certificate);
+            certificate.asBytes();
+        }
+
+        long allocated = allocatedBytes();
+        for(int i = 0; i < rounds; i++) encodeAgain(certificate);
+        long encodeAllocation = (allocatedBytes() - allocated) / rounds;
+
+        allocated = allocatedBytes();
+        for(int i = 0; i < rounds; i++) certificate.asBytes();
+        long asBytesAllocation = (allocatedBytes() - allocated) / rounds;
+
+        // verify
+        for(int i = 0; i < 100; i++) received.verify(issuerKeys.getPublic());
+        rounds = 2000;
+        allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            if(!received.verify(issuerKeys.getPublic())) throw new IllegalStateException("not verified");
+        }
+        long verifyNanos = (System.nanoTime() - start) / rounds;
+        long verifyAllocation = (allocatedBytes() - allocated) / rounds;
+
+        System.out.println("# bytes allocated per call: encoding: " + encodeAllocation
+                + " | asBytes: " + asBytesAllocation + " | verify: " + verifyAllocation
+                + " (" + verifyNanos / 1000 + " us)");
+    }
+
+    private static byte[] encodeAgain(ASAPCertificate certificate) {
+        return new CertificateCodec(certificate.getIssuerID(), certificate.getIssuerName(), certificate.getSubjectID(),
+                certificate.getSubjectName(), certificate.getValidSince().getTimeInMillis(),
+                certificate.getValidUntil().getTimeInMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD,
+                certificate.getConnectionTypeCredentialsReceived(), certificate.getPublicKey(),
+                new byte[256]).toByteArray(true);
+    }
+
+    /**
+     * Time and heap to load 100k certificates - eager and lazy.
+     */
+    private static void lazyLoad() throws Exception {
+        int numberCertificates = 100000;
+        KeyPair issuerKeys = createKeyPair();
+        List<byte[]> messages = createMessages(issuerKeys, numberCertificates);
+
+        ASAPCertificate[] certificates = new ASAPCertificate[numberCertificates];
+        for(int i = 0; i < 1000; i++) ASAPCertificateImpl.produceCertificateFromBytes(messages.get(i)); // warm up
+
+        long heap = usedHeap();
+        long start = System.nanoTime();
+        for(int i = 0; i < numberCertificates; i++) {
+            // there are just 10 different keys - force key factory like with 100k different keys
+            KeyHelper.getPublicKeyCache().clear();
+            certificates[i] = ASAPCertificateImpl.produceCertificateFromBytes(messages.get(i));
+        }
+        long eagerMillis = (System.nanoTime() - start) / 1000 / 1000;
+        long eagerHeap = usedHeap() - heap;
+        Arrays.fill(certificates, null);
+
+        heap = usedHeap();
+        start = System.nanoTime();
+        for(int i = 0; i < numberCertificates; i++) {
+            certificates[i] = ASAPCertificateImpl.produceLazyCertificate(messages.get(i), null);
+        }
+        long lazyMillis = (System.nanoTime() - start) / 1000 / 1000;
+        long lazyHeap = usedHeap() - heap;
+
+        System.out.println("# load " + numberCertificates + " certificates: eager: " + eagerMillis + " ms, "
+                + eagerHeap / 1024 / 1024 + " MB | lazy: " + lazyMillis + " ms, " + lazyHeap / 1024 / 1024
+                + " MB (messages kept in both cases)");
+    }
+
+    /**
+     * Heap per lazily read certificate - and what decoding its key adds.
+     */
+    private static void footprint() throws Exception {
+        int numberCertificates = 100000;
+        List<byte[]> messages = createMessages(createKeyPair(), numberCertificates);
+        int encodedBytes = messages.get(0).length;
+
+        ASAPCertificate[] certificates = new ASAPCertificate[numberCertificates];
+        long heap = usedHeap();
+        for(int i = 0; i < numberCertificates; i++) {
+            certificates[i] = ASAPCertificateImpl.produceLazyCertificate(messages.get(i), null);
+        }
+        long compactBytes = (usedHeap() - heap) / numberCertificates;
+
+        heap = usedHeap();
+        for(ASAPCertificate certificate : certificates) {
+            if(certificate.getPublicKey() == null) throw new IllegalStateException("key not decoded");
+        }
+        long keyBytes = (usedHeap() - heap) / numberCertificates;
+
+        System.out.println("# bytes per certificate: " + compactBytes + " + " + encodedBytes + " encoded"
+                + " | decoded public key: +" + keyBytes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        encoding();
+        allocation();
+        lazyLoad();
+        footprint();
+    }
+}
@@ -0,0 +1,70 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+
+import static net.sharksystem.asap.pki.CryptoObjectPoolTests.createKeyPair;
+
+/**
+ * Decoding keys and verifying certificates with new and with pooled crypto objects. Prints timings - there is
+ * no threshold, machines are too different.
+ */
+public class CryptoObjectPoolBenchmark {
+    public static void main(String[] args) throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        ASAPCertificateImpl certificate = ASAPCertificateImpl.produceCertificate("Bob_ID", "Bob",
+                issuerKeys.getPrivate(), "Alice_ID", "Alice", createKeyPair().getPublic(),
+                System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD,
+                ASAPEncounterConnectionType.INTERNET);
+        byte[] encodedKey = certificate.getPublicKey().getEncoded();
+        byte[] signed = ASAPCertificateImpl.produceCertificateFromBytes(certificate.asBytes()).asBytes();
+        int signedLength = signed.length - 4 - 256;
+        int rounds = 2000;
+
+        for(int i = 0; i < rounds; i++) { // warm up
+            KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encodedKey));
+            KeyFactory keyFactory = CryptoObjectPool.KEY_FACTORIES.borrow("RSA");
+            keyFactory.generatePublic(new X509EncodedKeySpec(encodedKey));
+            CryptoObjectPool.KEY_FACTORIES.release("RSA", keyFactory);
+            certificate.verify(issuerKeys.getPublic());
+        }
+
+        // decode: key factory per call (as before) and pooled key factory
+        long start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encodedKey));
+        }
+        long decodeNew = (System.nanoTime() - start) / rounds;
+
+        start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            KeyFactory keyFactory = CryptoObjectPool.KEY_FACTORIES.borrow("RSA");
+            keyFactory.generatePublic(new X509EncodedKeySpec(encodedKey));
+            CryptoObjectPool.KEY_FACTORIES.release("RSA", keyFactory);
+        }
+        long decodePooled = (System.nanoTime() - start) / rounds;
+
+        // verify: signature object per call (as before) and certificate.verify() with pooled one
+        start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            Signature signature = Signature.getInstance(ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD);
+            signature.initVerify(issuerKeys.getPublic());
+            signature.update(signed, 0, signedLength);
+            if(!signature.verify(signed, signedLength + 4, 256)) throw new IllegalStateException("not verified");
+        }
+        long verifyNew = (System.nanoTime() - start) / rounds;
+
+        start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            if(!certificate.verify(issuerKeys.getPublic())) throw new IllegalStateException("not verified");
+        }
+        long verifyPooled = (System.nanoTime() - start) / rounds;
+
+        System.out.println("# decode key: getInstance: " + decodeNew + " ns | pooled: " + decodePooled + " ns"
+                + " || verify: getInstance: " + verifyNew + " ns | pooled: " + verifyPooled + " ns");
+    }
+}
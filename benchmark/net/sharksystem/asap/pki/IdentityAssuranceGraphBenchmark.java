@@ -0,0 +1,53 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPKeyStore;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import net.sharksystem.asap.persons.PersonInformationStore;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.sharksystem.asap.pki.IdentityAssuranceGraphTests.OWNER_ID;
+import static net.sharksystem.asap.pki.IdentityAssuranceGraphTests.createTrustGraph;
+import static net.sharksystem.asap.pki.IdentityAssuranceGraphTests.failureRates;
+import static net.sharksystem.asap.pki.IdentityAssuranceGraphTests.peer;
+
+/**
+ * Identity assurances on a synthetic trust graph with 10k peers and 20 certificates per peer. Prints time to
+ * calculate all of them and time of a later query.
+ */
+public class IdentityAssuranceGraphBenchmark {
+    public static void main(String[] args) throws IOException, ASAPSecurityException {
+        int peers = 10000;
+        int degree = 20;
+        Map<String, Integer> failureRates = new HashMap<>();
+        InMemoCertificates storage = createTrustGraph(peers, degree, 10, failureRates);
+        ASAPKeyStore keyStore = new InMemoASAPKeyStore(OWNER_ID);
+        PersonInformationStore persons = failureRates(failureRates);
+
+        // warm up
+        storage.getIdentityAssurances(peer(peers - 1), keyStore, persons);
+
+        int rounds = 5;
+        long start = System.nanoTime();
+        for(int round = 0; round < rounds; round++) {
+            storage.syncIdentityAssurance();
+            storage.getIdentityAssurances(peer(peers - 1), keyStore, persons);
+        }
+        long setupDuration = (System.nanoTime() - start) / rounds;
+
+        // any further query reads precomputed results
+        start = System.nanoTime();
+        int reachable = 0;
+        for(int i = 1; i < peers; i++) {
+            if(storage.getIdentityAssurancesCertificationPath(peer(i), keyStore, persons).size() > 0) reachable++;
+        }
+        long queryDuration = (System.nanoTime() - start) / (peers - 1);
+
+        System.out.println("# " + peers + " peers, " + peers * degree + " certificates: "
+                + "all identity assurances in " + setupDuration / 1000 / 1000 + " ms, "
+                + "query " + queryDuration + " ns, reachable peers: " + reachable);
+    }
+}
@@ -0,0 +1,77 @@
+package net.sharksystem.asap.pki;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Compares lookup by scanning ids with toString().equalsIgnoreCase (as it was done before) with PeerID keyed map.
+ * Prints time and allocated bytes per lookup for three rounds - first ones are warm up.
+ */
+public class PeerIDBenchmark {
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void check(int expected, int found) {
+        if(expected != found) throw new IllegalStateException("found " + found + " ids instead of " + expected);
+    }
+
+    public static void main(String[] args) {
+        int numberIDs = 1000;
+        int rounds = 100000;
+        List<CharSequence> idList = new ArrayList<>();
+        Map<PeerID, CharSequence> idMap = new HashMap<>();
+        CharSequence[] queries = new CharSequence[numberIDs];
+        PeerID[] peerIDQueries = new PeerID[numberIDs];
+        for(int i = 0; i < numberIDs; i++) {
+            String id = "Peer_ID_" + i;
+            idList.add(id);
+            idMap.put(PeerID.of(id), id);
+            queries[i] = new StringBuilder("PEER_ID_" + i);
+            peerIDQueries[i] = PeerID.of(queries[i]);
+        }
+
+        for(int warmUp = 0; warmUp < 3; warmUp++) {
+            // scan as before
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            int found = 0;
+            for(int i = 0; i < rounds / 100; i++) {
+                CharSequence query = queries[i % numberIDs];
+                for(CharSequence id : idList) {
+                    if(id.toString().equalsIgnoreCase(query.toString())) { found++; break; }
+                }
+            }
+            long scanNanos = (System.nanoTime() - start) / (rounds / 100);
+            long scanBytes = (allocatedBytes() - allocated) / (rounds / 100);
+            check(rounds / 100, found);
+
+            // map - query is any char sequence
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            found = 0;
+            for(int i = 0; i < rounds; i++) {
+                if(idMap.get(PeerID.of(queries[i % numberIDs])) != null) found++;
+            }
+            long mapNanos = (System.nanoTime() - start) / rounds;
+            long mapBytes = (allocatedBytes() - allocated) / rounds;
+            check(rounds, found);
+
+            // map - query is already a peer id
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            found = 0;
+            for(int i = 0; i < rounds; i++) {
+                if(idMap.get(peerIDQueries[i % numberIDs]) != null) found++;
+            }
+            long peerIDNanos = (System.nanoTime() - start) / rounds;
+            long peerIDBytes = (allocatedBytes() - allocated) / rounds;
+            check(rounds, found);
+
+            System.out.println("# round " + warmUp + " | scan: " + scanNanos + " ns, " + scanBytes + " bytes"
+                    + " | map (char sequence): " + mapNanos + " ns, " + mapBytes + " bytes"
+                    + " | map (peer id): " + peerIDNanos + " ns, " + peerIDBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package net.sharksystem.asap.pki;
+
+import java.security.KeyPair;
+
+import static net.sharksystem.asap.pki.SigningAlgorithmsTests.KEY_ALGORITHMS;
+import static net.sharksystem.asap.pki.SigningAlgorithmsTests.produceCertificate;
+
+/**
+ * Time to sign and verify certificates and their size with each kind of key. Prints timings - there is no
+ * threshold, machines are too different.
+ */
+public class SigningAlgorithmsBenchmark {
+    public static void main(String[] args) throws Exception {
+        int rounds = 200;
+        StringBuilder sb = new StringBuilder("#");
+        for(String keyAlgorithm : KEY_ALGORITHMS) {
+            KeyPair issuerKeys = KeyHelper.generateKeyPair(keyAlgorithm);
+            KeyPair subjectKeys = KeyHelper.generateKeyPair(keyAlgorithm);
+
+            ASAPCertificateImpl certificate = null;
+            for(int i = 0; i < rounds; i++) { // warm up
+                certificate = produceCertificate(issuerKeys, subjectKeys);
+                certificate.verify(issuerKeys.getPublic());
+            }
+
+            long start = System.nanoTime();
+            for(int i = 0; i < rounds; i++) certificate = produceCertificate(issuerKeys, subjectKeys);
+            long sign = (System.nanoTime() - start) / rounds / 1000;
+
+            start = System.nanoTime();
+            for(int i = 0; i < rounds; i++) {
+                if(!certificate.verify(issuerKeys.getPublic())) throw new IllegalStateException("not verified");
+            }
+            long verify = (System.nanoTime() - start) / rounds / 1000;
+
+            sb.append(" ").append(certificate.getSigningAlgorithm())
+                    .append(": sign: ").append(sign).append(" us")
+                    .append(" | verify: ").append(verify).append(" us")
+                    .append(" | certificate: ").append(certificate.getSerializedLength()).append(" bytes")
+                    .append(" | key: ").append(subjectKeys.getPublic().getEncoded().length).append(" bytes ||");
+        }
+        System.out.println(sb);
+    }
+}
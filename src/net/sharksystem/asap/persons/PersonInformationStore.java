@@ -2,6 +2,7 @@ package net.sharksystem.asap.persons;
 
 import net.sharksystem.asap.ASAPSecurityException;
 import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.asap.pki.CertificateVerification;
 import net.sharksystem.fs.ExtraData;
 import net.sharksystem.pki.CredentialMessage;
 
@@ -184,6 +185,17 @@ public interface PersonInformationStore {
      */
     boolean verifyCertificate(ASAPCertificate asapCertificate) throws ASAPSecurityException, NoSuchAlgorithmException, InvalidKeyException, SignatureException;
 
+    /**
+     * Verify a number of certificates assumed to be issued by storage owner - in parallel if there are enough
+     * of them.
+     * @param asapCertificates certificates to verify with owners public key
+     * @return result of each certificate in same order
+     * @throws ASAPSecurityException owners public key not available
+     * @see #verifyCertificate(ASAPCertificate)
+     */
+    List<CertificateVerification> verifyCertificates(Collection<ASAPCertificate> asapCertificates)
+            throws ASAPSecurityException;
+
     /**
      * A credential message contains public key, peer id an name of this local peer. This message can be sent to
      * another peer to ask for certification of those information. Use defined format and uri for that message.
@@ -7,7 +7,11 @@ import net.sharksystem.asap.crypto.ASAPKeyStore;
 import net.sharksystem.asap.pki.ASAPCertificate;
 import net.sharksystem.asap.pki.ASAPCertificateImpl;
 import net.sharksystem.asap.pki.ASAPCertificateStorage;
+import net.sharksystem.asap.pki.CertificateBatchSigner;
+import net.sharksystem.asap.pki.CertificateVerification;
 import net.sharksystem.asap.pki.CredentialMessageInMemo;
+import net.sharksystem.asap.pki.KeyHelper;
+import net.sharksystem.asap.pki.PeerID;
 import net.sharksystem.asap.utils.DateTimeHelper;
 import net.sharksystem.fs.ExtraData;
 import net.sharksystem.pki.CredentialMessage;
@@ -30,6 +34,15 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
 
     // keep other persons - contact list in other words
     private List<PersonValuesImpl> personsList = new ArrayList<>();
+    // same persons - indexed by id
+    private Map<PeerID, PersonValuesImpl> personsByID = new HashMap<>();
+
+    private void addPerson(PersonValuesImpl personValues) {
+        this.personsList.add(personValues);
+        // there could be duplicates in list - first one wins
+        PeerID peerID = PeerID.of(personValues.getUserID());
+        if(!this.personsByID.containsKey(peerID)) this.personsByID.put(peerID, personValues);
+    }
 
     private ASAPCertificateStorage getCertsStorage() {
         return this.certificateStorage;
@@ -79,7 +92,7 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
     }
 
     public PublicKey getPublicKey(CharSequence peerID) throws SharkException {
-        return this.certificateStorage.getPublicKey(peerID);
+        return this.certificateStorage.getPublicKey(peerID, this.getASAPKeyStore(), this);
     }
 
     public PrivateKey getPrivateKey() throws ASAPSecurityException {
@@ -100,11 +113,8 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
     //////////////////////////////////////////////////////////////////////////////////////////////
 
     public PersonValuesImpl getPersonValues(CharSequence userID) throws ASAPSecurityException {
-        for (PersonValuesImpl personValues : this.personsList) {
-            if (personValues.getUserID().toString().equalsIgnoreCase(userID.toString())) {
-                return personValues;
-            }
-        }
+        PersonValuesImpl personValues = this.personsByID.get(PeerID.of(userID));
+        if(personValues != null) return personValues;
 
         throw new ASAPSecurityException("person not found with userID: " + userID);
     }
@@ -120,19 +130,14 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
 
     @Override
     public PersonValues getPersonValuesByID(CharSequence personID) throws ASAPSecurityException {
-        // TODO: a map would be better?
-        String wantedIDString = personID.toString();
-        for(PersonValuesImpl personValues : this.personsList) {
-            if(wantedIDString.equalsIgnoreCase(personValues.getUserID().toString())) {
-                return personValues;
-            }
-        }
+        PersonValuesImpl personValues = this.personsByID.get(PeerID.of(personID));
+        if(personValues != null) return personValues;
 
         throw new ASAPSecurityException("no person with this id found: " + personID);
     }
 
     public boolean isMe(CharSequence userID) {
-        return this.getOwnerID().equals(userID);
+        return PeerID.sameID(this.getOwnerID(), userID);
     }
 
     public int getNumberOfPersons() {
@@ -193,26 +198,19 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
 
         Log.writeLog(this, "entered addAndSignPerson");
         // try to overwrite owner ?
-        if (userID.toString().equalsIgnoreCase(this.getOwnerID().toString())) {
+        if (this.isMe(userID)) {
             throw new ASAPSecurityException("cannot add person with your userID");
         }
 
         // already in there
-        boolean personAlreadyExists = false;
-        for (PersonValuesImpl personValues : this.personsList) {
-            if (userID.toString().equalsIgnoreCase(personValues.getUserID().toString())) {
-                //throw new SharkCryptoException("person with userID already exists: " + userID);
-                personAlreadyExists = true;
-                break;
-            }
-        }
+        boolean personAlreadyExists = this.personsByID.containsKey(PeerID.of(userID));
 
         if(!personAlreadyExists) {
             Log.writeLog(this, "going to add person " + userID + " | " + userName);
             // ok - add
             PersonValuesImpl newPersonValues =
                     new PersonValuesImpl(userID, userName, this.certificateStorage, this);
-            this.personsList.add(newPersonValues);
+            this.addPerson(newPersonValues);
             this.save();
             ////////////////////// debug
             /*
@@ -230,7 +228,7 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
             Log.writeLog(this, "check for duplicated certificates");
             Collection<ASAPCertificate> certificates = this.getCertificatesBySubject(userID);
             for (ASAPCertificate certTemp : certificates) {
-                if (certTemp.getIssuerID().toString().equalsIgnoreCase(this.getOwnerID().toString())) {
+                if (this.isMe(certTemp.getIssuerID())) {
                     // drop it
                     Log.writeLog(this, "duplicate found - drop");
                     this.certificateStorage.removeCertificate(certTemp);
@@ -243,15 +241,17 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
         ASAPCertificate cert = null;
         try {
             Log.writeLog(this, "produce new certificate");
+            PrivateKey privateKey = this.getPrivateKey();
+
             cert = ASAPCertificateImpl.produceCertificate(
                     this.getOwnerID(),
                     this.getOwnerName(),
-                    this.getPrivateKey(),
+                    privateKey,
                     userID,
                     userName,
                     publicKey,
                     validSince,
-                    this.asapKeyStorage.getAsymmetricSigningAlgorithm(),
+                    this.getSigningAlgorithm(privateKey),
                     encounterType);
 
             // make it persistent
@@ -267,13 +267,96 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
         }
     }
 
+    private String getSigningAlgorithm(PrivateKey privateKey) throws NoSuchAlgorithmException {
+        // key store names an RSA signing algorithm - owner could have an EC or Ed25519 key pair
+        return KeyHelper.KEY_ALGORITHM_RSA.equalsIgnoreCase(privateKey.getAlgorithm())
+                ? this.asapKeyStorage.getAsymmetricSigningAlgorithm()
+                : KeyHelper.getSigningAlgorithm(privateKey);
+    }
+
+    private CertificateBatchSigner certificateSigner =
+            new CertificateBatchSigner(Runtime.getRuntime().availableProcessors());
+
+    public int getSigningParallelism() {
+        return this.certificateSigner.getParallelism();
+    }
+
+    /**
+     * @param parallelism number of threads signing certificates with {@link #addAndSignPersons(Collection)} -
+     *                    1: sign in calling thread. Default: number of processors
+     */
+    public void setSigningParallelism(int parallelism) {
+        if(parallelism == this.certificateSigner.getParallelism()) return;
+        this.certificateSigner.shutdown();
+        this.certificateSigner = new CertificateBatchSigner(parallelism);
+    }
+
+    /**
+     * Same as {@link #addAndSignPerson(CharSequence, CharSequence, PublicKey, long, ASAPEncounterConnectionType)}
+     * with each credential message - but certificates are signed in parallel, persons are saved once and
+     * certificates are stored in one go. If there are several messages of a subject, the last one wins.
+     * @return new certificates - one for each subject
+     * @throws ASAPSecurityException a message has owners id - nothing is changed; or signing failed - persons
+     * are added but no certificate is stored
+     */
+    public List<ASAPCertificate> addAndSignPersons(Collection<CredentialMessage> credentialMessages)
+            throws ASAPSecurityException, IOException {
+
+        Map<PeerID, CredentialMessage> credentialMessageBySubject = new LinkedHashMap<>();
+        for(CredentialMessage credentialMessage : credentialMessages) {
+            if (this.isMe(credentialMessage.getSubjectID())) {
+                throw new ASAPSecurityException("cannot add person with your userID");
+            }
+            PeerID subjectID = PeerID.of(credentialMessage.getSubjectID());
+            credentialMessageBySubject.remove(subjectID); // keep order of last message
+            credentialMessageBySubject.put(subjectID, credentialMessage);
+        }
+        if(credentialMessageBySubject.isEmpty()) return new ArrayList<>();
+
+        boolean personsAdded = false;
+        List<ASAPCertificate> duplicates = new ArrayList<>();
+        for(CredentialMessage credentialMessage : credentialMessageBySubject.values()) {
+            CharSequence userID = credentialMessage.getSubjectID();
+            if(!this.personsByID.containsKey(PeerID.of(userID))) {
+                this.addPerson(new PersonValuesImpl(userID, credentialMessage.getSubjectName(),
+                        this.certificateStorage, this));
+                personsAdded = true;
+            }
+
+            // certificates issued before are replaced
+            for (ASAPCertificate certTemp : this.certificateStorage.getCertificatesBySubjectID(userID)) {
+                if (this.isMe(certTemp.getIssuerID())) duplicates.add(certTemp);
+            }
+        }
+        if(personsAdded) this.save();
+
+        if(!duplicates.isEmpty()) {
+            Log.writeLog(this, "drop " + duplicates.size() + " certificates issued before");
+            this.certificateStorage.removeCertificate(duplicates);
+        }
+
+        PrivateKey privateKey = this.getPrivateKey();
+        List<ASAPCertificate> certificates;
+        try {
+            certificates = this.certificateSigner.sign(this.getOwnerID(), this.getOwnerName(), privateKey,
+                    this.getSigningAlgorithm(privateKey), new ArrayList<>(credentialMessageBySubject.values()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new ASAPSecurityException("cannot create certificate: " + e.getLocalizedMessage());
+        }
+
+        this.certificateStorage.storeCertificates(certificates);
+        Log.writeLog(this, "signed and stored certificates: " + certificates.size());
+
+        return certificates;
+    }
+
     @Override
     public void addCertificate(ASAPCertificate asapCert) throws IOException, ASAPSecurityException {
         PersonValuesImpl newPersonValues =
                 new PersonValuesImpl(asapCert.getSubjectID(), asapCert.getSubjectName(),
                         this.certificateStorage, this);
 
-        this.personsList.add(newPersonValues);
+        this.addPerson(newPersonValues);
 
         this.certificateStorage.storeCertificate(asapCert);
     }
@@ -289,7 +372,7 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
         boolean changed = false;
         // check whether to add a new person
         for(ASAPCertificate newCert : newReceivedCertificates) {
-            if(!newCert.getSubjectID().toString().equalsIgnoreCase(this.getOwnerID().toString())) {
+            if(!this.isMe(newCert.getSubjectID())) {
                 // a new cert received
                 Log.writeLog(this, "read new cert");
 
@@ -303,7 +386,7 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
                             new PersonValuesImpl(newCert.getSubjectID(), newCert.getSubjectName(),
                                     this.certificateStorage, this);
 
-                    this.personsList.add(newPersonValues);
+                    this.addPerson(newPersonValues);
                     changed = true;
                 }
             } else {
@@ -314,6 +397,10 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
         return changed;
     }
 
+    public long getCertificatesChangeCounter() {
+        return this.certificateStorage.getChangeCounter();
+    }
+
     public Collection<ASAPCertificate> getCertificatesBySubject(CharSequence userID) throws ASAPSecurityException {
         return this.certificateStorage.getCertificatesBySubjectID(userID);
     }
@@ -332,6 +419,12 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
         return this.certificateStorage.getCertificateByIssuerAndSubjectID(issuerID, subjectID);
     }
 
+    public Map<CharSequence, ASAPCertificate> getCertificatesByIssuersAndSubject(
+            Collection<CharSequence> issuerIDs, CharSequence subjectID) {
+
+        return this.certificateStorage.getCertificatesByIssuersAndSubjectID(issuerIDs, subjectID);
+    }
+
 
     public Set<ASAPCertificate> getAllCertificates() {
         return this.certificateStorage.getAllCertificates();
@@ -339,20 +432,32 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
 
     public boolean verifyCertificate(ASAPCertificate asapCertificate) throws ASAPSecurityException {
         try {
-            return asapCertificate.verify(this.getPublicKey());
+            return this.certificateStorage.getVerificationCache().verify(asapCertificate, this.getPublicKey());
         }
         catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
             throw new ASAPSecurityException(e.getClass().getSimpleName() + ": " + e.getLocalizedMessage());
         }
     }
 
+    public List<CertificateVerification> verifyCertificates(Collection<ASAPCertificate> asapCertificates)
+            throws ASAPSecurityException {
+
+        PublicKey publicKey = this.getPublicKey();
+        List<CertificateVerification> verifications = new ArrayList<>();
+        for(ASAPCertificate asapCertificate : asapCertificates) {
+            verifications.add(new CertificateVerification(asapCertificate, publicKey));
+        }
+        this.certificateStorage.verifyCertificates(verifications);
+        return verifications;
+    }
+
     public CharSequence getOwnerName() {
         return this.certificateStorage.getOwnerName();
     }
 
     @Override
     public int getSigningFailureRate(CharSequence personID) {
-        if (personID.toString().equalsIgnoreCase(this.getOwnerID().toString())) {
+        if (this.isMe(personID)) {
             return OtherPerson.YOUR_SIGNING_FAILURE_RATE;
         }
 
@@ -460,8 +565,9 @@ public class PersonStoreImplAndCertsWrapper implements PersonInformationStore {
         DataInputStream dis = new DataInputStream(is);
         int size = dis.readInt();
         this.personsList = new ArrayList<>();
+        this.personsByID = new HashMap<>();
         while(size-- > 0) {
-            this.personsList.add(new PersonValuesImpl(dis, this.certificateStorage, this));
+            this.addPerson(new PersonValuesImpl(dis, this.certificateStorage, this));
         }
     }
 }
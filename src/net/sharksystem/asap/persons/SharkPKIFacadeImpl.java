@@ -16,6 +16,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -122,6 +123,12 @@ public class SharkPKIFacadeImpl implements SharkPKIFacade /* implements ASAPCert
         return this.personStoreAndCertsWrapper.addAndSignPerson(subjectID, subjectName, publicKey, validSince, encounterType);
     }
 
+    @Override
+    public List<ASAPCertificate> addAndSignPersons(Collection<CredentialMessage> credentialMessages)
+            throws ASAPSecurityException, IOException {
+        return this.personStoreAndCertsWrapper.addAndSignPersons(credentialMessages);
+    }
+
     @Override
     public void setSigningFailureRate(CharSequence personID, int failureRate) throws ASAPSecurityException {
         this.personStoreAndCertsWrapper.setSigningFailureRate(personID, failureRate);
@@ -162,6 +169,11 @@ public class SharkPKIFacadeImpl implements SharkPKIFacade /* implements ASAPCert
         return this.personStoreAndCertsWrapper.getCertificatesBySubject(subjectID);
     }
 
+    @Override
+    public long getCertificatesChangeCounter() {
+        return this.personStoreAndCertsWrapper.getCertificatesChangeCounter();
+    }
+
     @Override
     public Set<ASAPCertificate> getAllCertificates() {
         return this.personStoreAndCertsWrapper.getAllCertificates();
@@ -177,6 +189,12 @@ public class SharkPKIFacadeImpl implements SharkPKIFacade /* implements ASAPCert
         return this.personStoreAndCertsWrapper.getCertificateByIssuerAndSubject(issuerID, subjectID);
     }
 
+    @Override
+    public Map<CharSequence, ASAPCertificate> getCertificatesByIssuersAndSubject(
+            Collection<CharSequence> issuerIDs, CharSequence subjectID) {
+        return this.personStoreAndCertsWrapper.getCertificatesByIssuersAndSubject(issuerIDs, subjectID);
+    }
+
     @Override
     public void addCertificate(ASAPCertificate asapCertificate) throws ASAPSecurityException, IOException {
         this.personStoreAndCertsWrapper.addCertificate(asapCertificate);
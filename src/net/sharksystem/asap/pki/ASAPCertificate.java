@@ -10,6 +10,8 @@ import java.util.Calendar;
 
 public interface ASAPCertificate {
     public static final String ASAP_CERTIFICATE_URI = "asap/certificate";
+    /** many certificates in one message - serialized certificates one after the other */
+    public static final String ASAP_CERTIFICATE_BATCH_URI = "asap/certificates";
     int DEFAULT_CERTIFICATE_VALIDITY_IN_YEARS = 1;
 
     /**
@@ -30,12 +32,26 @@ public interface ASAPCertificate {
 
     Calendar getValidUntil();
 
+    /**
+     * @return same as getValidSince() - without creating a calendar
+     */
+    default long getValidSinceMillis() { return this.getValidSince().getTimeInMillis(); }
+
+    /**
+     * @return same as getValidUntil() - without creating a calendar
+     */
+    default long getValidUntilMillis() { return this.getValidUntil().getTimeInMillis(); }
+
     byte[] asBytes();
 
     boolean verify(PublicKey publicKeyIssuer) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException;
 
     ASAPStorageAddress getASAPStorageAddress();
 
+    /**
+     * @return public key of subject - null if it cannot be decoded. Certificates read lazily decode their key
+     * with first use. A broken key encoding is not found before.
+     */
     PublicKey getPublicKey();
 
     ASAPEncounterConnectionType getConnectionTypeCredentialsReceived();
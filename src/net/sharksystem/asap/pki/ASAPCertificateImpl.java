@@ -2,30 +2,49 @@ package net.sharksystem.asap.pki;
 
 import net.sharksystem.asap.ASAPEncounterConnectionType;
 import net.sharksystem.asap.ASAPException;
-import net.sharksystem.asap.utils.ASAPSerialization;
 import net.sharksystem.asap.utils.DateTimeHelper;
 import net.sharksystem.utils.Log;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.List;
 
 public class ASAPCertificateImpl implements ASAPCertificate {
-    public static final String DEFAULT_SIGNATURE_METHOD = "SHA256withRSA";
-
-    private PublicKey publicKey;
-    private CharSequence subjectName;
-    private CharSequence subjectID;
-    private CharSequence issuerName;
-    private CharSequence issuerID;
-    private byte[] signatureBytes;
+    public static final String SIGNATURE_METHOD_RSA = "SHA256withRSA";
+    /** ECDSA with curve P-256 keys - signatures have about 72 bytes, keys 91 bytes */
+    public static final String SIGNATURE_METHOD_ECDSA = "SHA256withECDSA";
+    /** signatures have 64 bytes, keys 44 bytes - needs Java 15 or later */
+    public static final String SIGNATURE_METHOD_ED25519 = "Ed25519";
+    /** certificates can be signed with any of those methods - each one names its method */
+    public static final String DEFAULT_SIGNATURE_METHOD = SIGNATURE_METHOD_RSA;
+
+    /*
+     * Trust graphs can hold lots of certificates - keep them small: Strings are interned, they are shared by all
+     * certificates of an issuer or subject. Validity is kept as long. Key and signature are not copied
+     * out of encoded bytes.
+     */
+    private volatile PublicKey publicKey; // decoded with first use if certificate was read lazily
+    private final String subjectName;
+    private final String subjectID;
+    private final String issuerName;
+    private final String issuerID;
     private ASAPStorageAddress asapStorageAddress;
-    private long validSince;
-    private long validUntil;
-    private String signingAlgorithm;
+    private final long validSince;
+    private final long validUntil;
+    private final String signingAlgorithm;
     private final ASAPEncounterConnectionType connectionTypeCredentialsReceived;
 
+    // a certificate never changes after signing - serialize it once
+    private final byte[] encoded;
+    private final int signedLength; // anything but signature: first bytes of encoded
+    private final String keyAlgorithm;
+    private final int keyLength; // encoded key: last bytes of signed part
+
     public static ASAPCertificateImpl produceCertificate(
             CharSequence issuerID, CharSequence issuerName,
             PrivateKey privateKey,
@@ -91,13 +110,22 @@ public class ASAPCertificateImpl implements ASAPCertificate {
 
         Log.writeLog(ASAPCertificateImpl.class, "now: " + DateTimeHelper.long2DateString(now));
 
-        ASAPCertificateImpl asapCertificate = new ASAPCertificateImpl(
-                issuerID, issuerName, subjectID, subjectName, publicKey, since.getTimeInMillis(),
-                until.getTimeInMillis(), signingAlgorithm, connectionTypeCredentialsReceived);
+        byte[] anythingButSignature = new CertificateCodec(issuerID, issuerName, subjectID, subjectName,
+                since.getTimeInMillis(), until.getTimeInMillis(), signingAlgorithm,
+                connectionTypeCredentialsReceived, publicKey, null).toByteArray(false);
 
-        asapCertificate.sign(privateKey);
+        byte[] signatureBytes = sign(privateKey, signingAlgorithm.toString(), anythingButSignature);
 
-        return asapCertificate;
+        ByteBuffer encoded = ByteBuffer.allocate(anythingButSignature.length + 4 + signatureBytes.length);
+        encoded.put(anythingButSignature);
+        encoded.putInt(signatureBytes.length);
+        encoded.put(signatureBytes);
+
+        return new ASAPCertificateImpl(
+                issuerID, issuerName, subjectID, subjectName, publicKey, since.getTimeInMillis(),
+                until.getTimeInMillis(), signingAlgorithm, connectionTypeCredentialsReceived,
+                encoded.array(), anythingButSignature.length, publicKey.getAlgorithm(),
+                publicKey.getEncoded().length);
     }
 
     private ASAPCertificateImpl(CharSequence issuerID,
@@ -105,54 +133,69 @@ public class ASAPCertificateImpl implements ASAPCertificate {
                                 CharSequence subjectID, CharSequence subjectName,
                                 PublicKey publicKey, long validSince, long validUntil,
                                 CharSequence signingAlgorithm,
-                                ASAPEncounterConnectionType connectionTypeCredentialsReceived) {
-        this.issuerID = issuerID;
-        this.issuerName = issuerName;
-        this.subjectID = subjectID;
-        this.subjectName = subjectName;
+                                ASAPEncounterConnectionType connectionTypeCredentialsReceived,
+                                byte[] encoded, int signedLength, String keyAlgorithm, int keyLength) {
+        this.issuerID = intern(issuerID);
+        this.issuerName = intern(issuerName);
+        this.subjectID = intern(subjectID);
+        this.subjectName = intern(subjectName);
         this.publicKey = publicKey;
 
         this.validSince = validSince;
         this.validUntil = validUntil;
 
-        this.signingAlgorithm = signingAlgorithm.toString();
+        this.signingAlgorithm = intern(signingAlgorithm);
 
         this.connectionTypeCredentialsReceived = connectionTypeCredentialsReceived;
+
+        this.encoded = encoded;
+        this.signedLength = signedLength;
+        this.keyAlgorithm = intern(keyAlgorithm);
+        this.keyLength = keyLength;
+    }
+
+    private static String intern(CharSequence charSequence) {
+        return charSequence == null ? null : charSequence.toString().intern();
     }
 
     void setASAPStorageAddress(ASAPStorageAddress asapStorageAddress) {
         this.asapStorageAddress = asapStorageAddress;
     }
 
-    private void sign(PrivateKey privateKey) throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
-        // create signature
+    private static byte[] sign(PrivateKey privateKey, String signingAlgorithm, byte[] anythingButSignature)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        // create signature - not from pool, signature object would keep private key
 //        Signature signature = Signature.getInstance(DEFAULT_SIGNATURE_METHOD);
-        Log.writeLog(this, "try to get signature object...");
-        Signature signature = Signature.getInstance(this.signingAlgorithm);
-        Log.writeLog(this, "...got signature object: " + signature);
-        Log.writeLog(this, "going to initialize signature object.... ");
+        Log.writeLog(ASAPCertificateImpl.class, "try to get signature object...");
+        Signature signature = Signature.getInstance(signingAlgorithm);
+        Log.writeLog(ASAPCertificateImpl.class, "...got signature object: " + signature);
+        Log.writeLog(ASAPCertificateImpl.class, "going to initialize signature object.... ");
 //        signature.initSign(privateKey, new SecureRandom()); // TODO: should use a seed
         signature.initSign(privateKey); // desperate try
-        Log.writeLog(this, "...initialized. Going to feed signature with text to sign..." + signature);
-        signature.update(this.getAnythingButSignatur());
-        Log.writeLog(this, "...updated signature object, going to sign...");
-        this.signatureBytes = signature.sign();
-        Log.writeLog(this, "..got signature. done." + signature);
+        Log.writeLog(ASAPCertificateImpl.class, "...initialized. Going to feed signature with text to sign..." + signature);
+        signature.update(anythingButSignature);
+        Log.writeLog(ASAPCertificateImpl.class, "...updated signature object, going to sign...");
+        byte[] signatureBytes = signature.sign();
+        Log.writeLog(ASAPCertificateImpl.class, "..got signature. done." + signature);
+        return signatureBytes;
     }
 
     @Override
     public boolean verify(PublicKey publicKeyIssuer) throws NoSuchAlgorithmException {
 //        Signature signature = Signature.getInstance(DEFAULT_SIGNATURE_METHOD);
-        Signature signature = Signature.getInstance(this.signingAlgorithm);
+        Signature signature = CryptoObjectPool.SIGNATURES.borrow(this.signingAlgorithm);
         Log.writeLog(this, "got signature object: " + signature);
 
         try {
             signature.initVerify(publicKeyIssuer);
             Log.writeLog(this, "got signature object for verifying: " + signature);
-            signature.update(this.getAnythingButSignatur());
+            signature.update(this.encoded, 0, this.signedLength);
             Log.writeLog(this, "updated signature object");
-            boolean verified = signature.verify(this.signatureBytes);
+            int signatureOffset = this.signedLength + 4;
+            boolean verified = signature.verify(this.encoded, signatureOffset, this.encoded.length - signatureOffset);
             Log.writeLog(this, "verified: " + verified);
+            // verify() resets signature object - it can be used again
+            CryptoObjectPool.SIGNATURES.release(this.signingAlgorithm, signature);
             return verified;
         }
         catch(Exception e) {
@@ -165,46 +208,104 @@ public class ASAPCertificateImpl implements ASAPCertificate {
             byte[] serializedMessage)
             throws IOException, NoSuchAlgorithmException, InvalidKeySpecException, ASAPException {
 
-        ByteArrayInputStream bais = new ByteArrayInputStream(serializedMessage);
-        DataInputStream dis = new DataInputStream(bais);
-
-        /*
-        String signerID = dis.readUTF();
-        String signerName = dis.readUTF();
-        String ownerID = dis.readUTF();
-        String ownerName = dis.readUTF();
-        long validSince = dis.readLong();
-        long validUntil = dis.readLong();
-        String signingAlgorithm = dis.readUTF();
-        byte encounterTypeCredentialsReceivedByte = dis.readByte();
-         */
-        String signerID = ASAPSerialization.readCharSequenceParameter(bais);
-        String signerName = ASAPSerialization.readCharSequenceParameter(bais);
-        String ownerID = ASAPSerialization.readCharSequenceParameter(bais);
-        String ownerName = ASAPSerialization.readCharSequenceParameter(bais);
-        long validSince = ASAPSerialization.readLongParameter(bais);
-        long validUntil = ASAPSerialization.readLongParameter(bais);
-        String signingAlgorithm = ASAPSerialization.readCharSequenceParameter(bais);
-        ASAPEncounterConnectionType encounterTypeCredentialsReceived = ASAPSerialization.readEncounterConnectionType(bais);
-
-
-        // read public key
-        PublicKey pubKey = KeyHelper.readPublicKeyFromStream(dis);
-
-        int length = dis.readInt();
-        byte[] signatureBytes = new byte[length];
-        dis.read(signatureBytes);
-
-        ASAPCertificateImpl asapCertificate = new ASAPCertificateImpl(
-                signerID, signerName, ownerID, ownerName, pubKey,
-                validSince, validUntil, signingAlgorithm, encounterTypeCredentialsReceived
-                );
-
-        asapCertificate.signatureBytes = signatureBytes;
+        return produceCertificateFromBuffer(ByteBuffer.wrap(serializedMessage));
+    }
 
+    /**
+     * Read a certificate starting at buffer position. Position is moved behind certificate - more certificates
+     * can follow. Buffer can be a slice of a larger one, e.g. a memory mapped file. Position is undefined after
+     * an exception.
+     * @throws IOException buffer does not contain a complete certificate
+     */
+    public static ASAPCertificateImpl produceCertificateFromBuffer(ByteBuffer buffer)
+            throws IOException, NoSuchAlgorithmException, InvalidKeySpecException {
+
+        ASAPCertificateImpl asapCertificate = readCertificate(buffer);
+        asapCertificate.publicKey = asapCertificate.decodePublicKey();
         return asapCertificate;
     }
 
+    /**
+     * Read certificate but not its public key - key factory is the most expensive part of reading and
+     * most certificates in a storage are never asked for their key. Key is decoded with first call of
+     * {@link #getPublicKey()}. Use it for certificates which were checked before, e.g. when they were stored.
+     * @param serializedMessage a single certificate - array is kept, it must not be changed
+     * @throws IOException not a complete certificate
+     */
+    static ASAPCertificateImpl produceLazyCertificate(byte[] serializedMessage,
+                                                      ASAPStorageAddress asapStorageAddress) throws IOException {
+        ASAPCertificateImpl asapCertificate = readCertificate(ByteBuffer.wrap(serializedMessage));
+        asapCertificate.asapStorageAddress = asapStorageAddress;
+        return asapCertificate;
+    }
+
+    /**
+     * @return message of {@link ASAPCertificate#ASAP_CERTIFICATE_BATCH_URI} - serialized certificates one after
+     * the other
+     */
+    public static byte[] produceBatch(Collection<ASAPCertificate> certificates) {
+        int length = 0;
+        for(ASAPCertificate certificate : certificates) length += certificate.asBytes().length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for(ASAPCertificate certificate : certificates) buffer.put(certificate.asBytes());
+        return buffer.array();
+    }
+
+    /**
+     * Public keys are not decoded - certificates are just taken apart.
+     * @return each certificate of a batch - same bytes as {@link #asBytes()} of that certificate
+     * @throws IOException batch does not end with a complete certificate
+     */
+    static List<byte[]> splitBatch(byte[] batch) throws IOException {
+        List<byte[]> serializedCertificates = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while(buffer.hasRemaining()) {
+            serializedCertificates.add(readCertificate(buffer).encoded);
+        }
+        return serializedCertificates;
+    }
+
+    private static ASAPCertificateImpl readCertificate(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        String signerID = CertificateCodec.getCharSequence(buffer);
+        String signerName = CertificateCodec.getCharSequence(buffer);
+        String ownerID = CertificateCodec.getCharSequence(buffer);
+        String ownerName = CertificateCodec.getCharSequence(buffer);
+        long validSince = CertificateCodec.getLong(buffer);
+        long validUntil = CertificateCodec.getLong(buffer);
+        String signingAlgorithm = CertificateCodec.getCharSequence(buffer);
+        ASAPEncounterConnectionType encounterTypeCredentialsReceived = CertificateCodec.getEncounterType(buffer);
+
+        // public key and signature - just remember where they are
+        String keyAlgorithm = CertificateCodec.getUTF(buffer);
+        int keyLength = CertificateCodec.skipBytes(buffer);
+        int signedLength = buffer.position() - start;
+        CertificateCodec.skipBytes(buffer);
+
+        // keep bytes as received - they are signed
+        byte[] encoded;
+        if(buffer.hasArray() && buffer.arrayOffset() + start == 0 && buffer.position() == buffer.array().length) {
+            // nothing but this certificate in there
+            encoded = buffer.array();
+        } else {
+            encoded = new byte[buffer.position() - start];
+            ByteBuffer received = buffer.duplicate();
+            received.position(start);
+            received.get(encoded);
+        }
+
+        return new ASAPCertificateImpl(
+                signerID, signerName, ownerID, ownerName, null,
+                validSince, validUntil, signingAlgorithm, encounterTypeCredentialsReceived,
+                encoded, signedLength, keyAlgorithm, keyLength);
+    }
+
+    private PublicKey decodePublicKey() throws NoSuchAlgorithmException, InvalidKeySpecException {
+        return KeyHelper.decodePublicKey(this.keyAlgorithm,
+                this.encoded, this.signedLength - this.keyLength, this.keyLength);
+    }
+
     public static ASAPCertificateImpl produceCertificateFromByteArray(
             byte[] serializedMessage, ASAPStorageAddress asapStorageAddress)
             throws IOException, NoSuchAlgorithmException, InvalidKeySpecException, ASAPException {
@@ -216,69 +317,26 @@ public class ASAPCertificateImpl implements ASAPCertificate {
         return asapCertificate;
     }
 
-    private byte[] getAnythingButSignatur() {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream daos = new DataOutputStream(baos);
-        this.serializeAnythingButSignature(daos);
-        return baos.toByteArray();
+    /**
+     * @return serialized certificate - same array with each call, it must not be changed.
+     */
+    public byte[] asBytes() {
+        return this.encoded;
     }
 
-    private void serializeAnythingButSignature(DataOutputStream dos) {
-        // create byte array that is to be signed
-        try {
-            /*
-            dos.writeUTF(this.issuerID.toString());
-            dos.writeUTF(this.issuerName.toString());
-            dos.writeUTF(this.subjectID.toString());
-            dos.writeUTF(this.getSubjectName().toString());
-
-            dos.writeLong(this.validSince);
-            dos.writeLong(this.validUntil);
-            dos.writeUTF(this.signingAlgorithm);
-             */
-            ASAPSerialization.writeCharSequenceParameter(this.issuerID, dos);
-            ASAPSerialization.writeCharSequenceParameter(this.issuerName, dos);
-            ASAPSerialization.writeCharSequenceParameter(this.subjectID, dos);
-            ASAPSerialization.writeCharSequenceParameter(this.subjectName, dos);
-
-            ASAPSerialization.writeLongParameter(this.validSince, dos);
-            ASAPSerialization.writeLongParameter(this.validUntil, dos);
-            ASAPSerialization.writeCharSequenceParameter(this.signingAlgorithm, dos);
-
-            ASAPSerialization.writeEncounterConnectionType(this.connectionTypeCredentialsReceived, dos);
-
-            // public key serialization
-            KeyHelper.writePublicKeyToStream(this.publicKey, dos);
-
-            /*
-            dos.writeUTF(this.publicKey.getAlgorithm());
-            byte[] pubKeyBytes = this.publicKey.getEncoded();
-
-            dos.writeInt(pubKeyBytes.length);
-            dos.write(pubKeyBytes);
-             */
-        }
-        catch (IOException ioe) {
-            // cannot happen - really
-        }
+    /**
+     * @return number of bytes written by {@link #writeTo(ByteBuffer)}
+     */
+    public int getSerializedLength() {
+        return this.encoded.length;
     }
 
-    public byte[] asBytes() {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream daos = new DataOutputStream(baos);
-
-        this.serializeAnythingButSignature(daos);
-
-        try {
-            daos.writeInt(this.signatureBytes.length);
-            daos.write(this.signatureBytes);
-        } catch (IOException e) {
-            // cannot happen - really
-            Log.writeLogErr(this, "could not happen but did while serializing a certificate (ignored): "
-                    + e.getLocalizedMessage());
-        }
-
-        return baos.toByteArray();
+    /**
+     * Write serialized certificate at buffer position - same bytes as {@link #asBytes()}.
+     * @throws java.nio.BufferOverflowException not enough space left - nothing is written
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put(this.encoded);
     }
 
     @Override
@@ -298,6 +356,11 @@ public class ASAPCertificateImpl implements ASAPCertificate {
     @Override
     public CharSequence getIssuerID() { return this.issuerID; }
 
+    /**
+     * @return algorithm this certificate was signed with - its issuer key must be of the same kind
+     */
+    public String getSigningAlgorithm() { return this.signingAlgorithm; }
+
     public static Calendar long2Calendar(long timeInMillis) {
         Calendar calendar = Calendar.getInstance();
         calendar.setTimeInMillis(timeInMillis);
@@ -310,7 +373,35 @@ public class ASAPCertificateImpl implements ASAPCertificate {
     @Override
     public Calendar getValidUntil() { return long2Calendar(this.validUntil); }
 
-    public PublicKey getPublicKey() { return this.publicKey; }
+    @Override
+    public long getValidSinceMillis() { return this.validSince; }
+
+    @Override
+    public long getValidUntilMillis() { return this.validUntil; }
+
+    /**
+     * @return public key - null if key of a lazily read certificate cannot be decoded
+     */
+    public PublicKey getPublicKey() {
+        PublicKey publicKey = this.publicKey;
+        if(publicKey == null) {
+            // threads might decode it at the same time - they get equal keys
+            try {
+                publicKey = this.decodePublicKey();
+                this.publicKey = publicKey;
+            } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+                Log.writeLogErr(this, "cannot decode public key: " + e.getLocalizedMessage());
+            }
+        }
+        return publicKey;
+    }
+
+    /**
+     * @return encoded public key - no need to decode it for comparison
+     */
+    private ByteBuffer getEncodedPublicKey() {
+        return ByteBuffer.wrap(this.encoded, this.signedLength - this.keyLength, this.keyLength);
+    }
 
     @Override
     public ASAPEncounterConnectionType getConnectionTypeCredentialsReceived() {
@@ -319,12 +410,23 @@ public class ASAPCertificateImpl implements ASAPCertificate {
 
     @Override
     public boolean isIdentical(ASAPCertificate cert) {
-        return this.getSubjectID().toString().equalsIgnoreCase(cert.getSubjectID().toString())
-                && this.getIssuerID().toString().equalsIgnoreCase(cert.getIssuerID().toString())
-                && this.getValidSince().getTimeInMillis() == cert.getValidSince().getTimeInMillis()
-                && this.getValidUntil().getTimeInMillis() == cert.getValidUntil().getTimeInMillis()
-                && this.getPublicKey().toString().equalsIgnoreCase(cert.getPublicKey().toString())
+        return PeerID.sameID(this.getSubjectID(), cert.getSubjectID())
+                && PeerID.sameID(this.getIssuerID(), cert.getIssuerID())
+                && this.validSince == cert.getValidSinceMillis()
+                && this.validUntil == cert.getValidUntilMillis()
+                && this.samePublicKey(cert)
                 && this.getConnectionTypeCredentialsReceived() == cert.getConnectionTypeCredentialsReceived()
         ;
     }
+
+    private boolean samePublicKey(ASAPCertificate cert) {
+        if(cert instanceof ASAPCertificateImpl) {
+            ASAPCertificateImpl other = (ASAPCertificateImpl) cert;
+            return this.keyAlgorithm.equals(other.keyAlgorithm)
+                    && this.getEncodedPublicKey().equals(other.getEncodedPublicKey());
+        }
+
+        PublicKey publicKey = this.getPublicKey();
+        return publicKey != null && publicKey.equals(cert.getPublicKey());
+    }
 }
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.security.PublicKey;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface ASAPCertificateStorage {
@@ -37,6 +38,16 @@ public interface ASAPCertificateStorage {
     ASAPCertificate getCertificateByIssuerAndSubjectID(
             CharSequence issuerID, CharSequence subjectID) throws ASAPSecurityException;
 
+    /**
+     * Bulk variant of getCertificateByIssuerAndSubjectID
+     * @param issuerIDs
+     * @param subjectID
+     * @return map issuerID -> certificate signed by that issuer for subjectID. Issuers without such a certificate
+     * are not in this map.
+     */
+    Map<CharSequence, ASAPCertificate> getCertificatesByIssuersAndSubjectID(
+            Collection<CharSequence> issuerIDs, CharSequence subjectID);
+
     /**
      *
      * @return a collection of certificates in which the owner of this storage is subject.
@@ -70,6 +81,13 @@ public interface ASAPCertificateStorage {
      */
     ASAPStorageAddress storeCertificate(ASAPCertificate asapCertificate) throws IOException;
 
+    /**
+     * Store a number of certificates at once - in memory structures and identity assurance are updated once.
+     * @return storage address of each certificate - same order
+     * @throws IOException certificates stored before remain stored
+     */
+    List<ASAPStorageAddress> storeCertificates(Collection<ASAPCertificate> asapCertificates) throws IOException;
+
     void removeCertificate(ASAPCertificate cert2remove) throws IOException;
     void removeCertificate(Collection<ASAPCertificate> certs2remove) throws IOException;
 
@@ -78,6 +96,12 @@ public interface ASAPCertificateStorage {
      */
     void syncIdentityAssurance();
 
+    /**
+     * @return counter that is increased with each change of certificates or identity assurance. Anything
+     * derived from certificates (e.g. a public key taken from a certificate) is outdated if it changed.
+     */
+    long getChangeCounter();
+
     /**
      *
      * @return current era of asap storage holding those certificates
@@ -99,10 +123,35 @@ public interface ASAPCertificateStorage {
     ASAPStorageAddress getASAPStorageAddress(byte[] serializedAddress) throws IOException;
 
     /**
-     * Public key are disseminated with certificates. This method check, if we have got a certificate issued
-     * for this peer and returns the first it finds.
+     * Public key are disseminated with certificates. Same choice as
+     * {@link #getPublicKey(CharSequence, ASAPKeyStore, PersonInformationStore)} but identity assurance of
+     * issuers is only known if it was calculated before.
      * @param peerID
      * @return
      */
     PublicKey getPublicKey(CharSequence peerID) throws SharkException;
+
+    /**
+     * Public key of the certificate issued by the peer with best identity assurance - owner first. Ties are
+     * broken by newest certificate and issuer id. The same key is chosen each time. Keys that cannot be decoded
+     * are skipped.
+     * @throws ASAPSecurityException no certificate with a usable key issued for this peer
+     */
+    PublicKey getPublicKey(CharSequence peerID, ASAPKeyStore keyStore, PersonInformationStore personInformationStore)
+            throws ASAPSecurityException;
+
+    /**
+     * Certificates should be verified with this cache. The same certificate is verified with the same key
+     * only once.
+     * @return verification cache of this storage
+     */
+    CertificateVerificationCache getVerificationCache();
+
+    /**
+     * Verify a number of certificates, each with its own public key - in parallel if there are enough of them.
+     * Results are set in each verification object. A certificate is verified with the same key only once.
+     * @param verifications certificates and keys
+     * @see CertificateVerification#isVerified()
+     */
+    void verifyCertificates(List<CertificateVerification> verifications);
 }
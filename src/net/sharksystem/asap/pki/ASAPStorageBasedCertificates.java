@@ -2,21 +2,97 @@ package net.sharksystem.asap.pki;
 
 import net.sharksystem.asap.*;
 import net.sharksystem.asap.ASAPMessages;
+import net.sharksystem.asap.engine.ASAPEngineFS;
 import net.sharksystem.utils.Log;
 
 import javax.management.RuntimeErrorException;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ASAPStorageBasedCertificates extends InMemoCertificatesAndIdentityAssurance {
+    /**
+     * How certificates are removed from asap storage.
+     */
+    public enum RemovalMode {
+        /** chunk is dropped and written again without removed certificate */
+        REWRITE_CHUNK,
+        /** a tombstone is appended next to asap storage - needs a file based asap storage */
+        TOMBSTONE
+    }
+
+    public static final String TOMBSTONE_FOLDER_EXTENSION = ".certificateTombstones";
 
     private final ASAPStorage asapStorage;
+    private final CertificateTombstones tombstones;
+    private RemovalMode removalMode;
+
+    // chunks of past eras are changed by removal and compaction - possibly on different threads
+    private final Object chunkLock = new Object();
+    // number of removals - guarded by chunk lock
+    private long removals = 0;
+    // era -> newer era its certificates were merged into by compaction - guarded by chunk lock
+    private final Map<Integer, Integer> movedEras = new HashMap<>();
+
+    // digests of certificates in owners channel - received copies of those are not stored again
+    private Set<ByteBuffer> storedDigests = null;
+
+    public static final int DEFAULT_LOAD_PARALLELISM = 1;
+    private CertificateDecoder decoder = new CertificateDecoder(DEFAULT_LOAD_PARALLELISM);
 
     public ASAPStorageBasedCertificates(ASAPStorage asapStorage, CharSequence ownerID, CharSequence ownerName) {
         super(ownerID, ownerName);
         this.asapStorage = asapStorage;
+
+        if(asapStorage instanceof ASAPEngineFS) {
+            File rootFolder = new File(((ASAPEngineFS) asapStorage).getRootFolder());
+            this.tombstones = new CertificateTombstones(
+                    new File(rootFolder.getPath() + TOMBSTONE_FOLDER_EXTENSION));
+            this.removalMode = RemovalMode.TOMBSTONE;
+        } else {
+            this.tombstones = null;
+            this.removalMode = RemovalMode.REWRITE_CHUNK;
+        }
+    }
+
+    public RemovalMode getRemovalMode() {
+        return this.removalMode;
+    }
+
+    /**
+     * Tombstones are honoured when reading certificates in any mode. Switching to chunk rewriting does not revive
+     * removed certificates.
+     */
+    public void setRemovalMode(RemovalMode removalMode) {
+        if(removalMode == RemovalMode.TOMBSTONE && this.tombstones == null) {
+            Log.writeLog(this, "tombstones need a file based asap storage - keep rewriting chunks");
+            return;
+        }
+        this.removalMode = removalMode;
+    }
+
+    public int getLoadParallelism() {
+        return this.decoder.getParallelism();
+    }
+
+    /**
+     * Certificates are decoded in parallel when read from storage. They are added to memory in the same order
+     * as with a single thread. Worth it with large stores on multi core machines.
+     * @param parallelism number of threads decoding certificates - 1: decode in calling thread (default)
+     */
+    public void setLoadParallelism(int parallelism) {
+        if(parallelism == this.decoder.getParallelism()) return;
+        this.decoder.shutdown();
+        this.decoder = new CertificateDecoder(parallelism);
+    }
+
+    private Set<ByteBuffer> getTombstones(int era) {
+        if(this.tombstones == null) return Collections.emptySet();
+        return this.tombstones.getTombstones(era);
     }
 
     public int getEra() {
@@ -28,45 +104,19 @@ public class ASAPStorageBasedCertificates extends InMemoCertificatesAndIdentityA
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     private ASAPCertificate addCertificate2InMemo(byte[] message, ASAPStorageAddressImpl asapStorageAddress,
-                                       Map<CharSequence, Set<ASAPCertificate>> certificatesByOwnerIDMap,
-                                       List<ASAPCertificate> expiredCertificates)
+                                       Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap,
+                                       List<ASAPCertificate> expiredCertificates, Set<ByteBuffer> tombstones)
             throws ASAPException, ASAPSecurityException {
         String text = "nothing";
         try {
             ASAPCertificate asapCertificate =
                     ASAPCertificateImpl.produceCertificateFromByteArray(message, asapStorageAddress);
 
-            // expired
-            if(this.isExpired(asapCertificate)) {
-                // set on delete list - if any
-                if(expiredCertificates != null) expiredCertificates.add(asapCertificate);
-            } else {
-                // valid - keep in memory
-                CharSequence ownerID = asapCertificate.getSubjectID();
-                // add to in-memo structure
-                Set<ASAPCertificate> certSet = certificatesByOwnerIDMap.get(ownerID);
-
-                boolean addCert = true;
-                if (certSet == null) {
-                    certSet = new HashSet<>();
-                    certificatesByOwnerIDMap.put(ownerID, certSet);
-                } else {
-                    // check if certificate already in there
-                    for(ASAPCertificate cert : certSet) {
-                        if(cert.isIdentical(asapCertificate)) {
-                            Log.writeLog(this, "found identical certificate - don't add new one");
-                            addCert = false;
-                            throw new ASAPSecurityException("certificate already exists");
-                        }
-                    }
-                }
+            asapCertificate = this.addDecodedCertificate2InMemo(
+                    asapCertificate, certificatesByOwnerIDMap, expiredCertificates, tombstones);
 
-                if(addCert) {
-                    certSet.add(asapCertificate);
-                }
-
-                return asapCertificate;
-            }
+            if(asapCertificate != null) return asapCertificate;
+            text = "certificate expired";
         } catch (RuntimeErrorException | IOException | NoSuchAlgorithmException | InvalidKeySpecException e) {
             text = "cannot create certificate: " + e.getLocalizedMessage();
             Log.writeLog(this, text);
@@ -77,34 +127,141 @@ public class ASAPStorageBasedCertificates extends InMemoCertificatesAndIdentityA
     }
 
     /**
-     * Reads asap message from storage, extracts certificates and stores in memory
+     * @return certificate - null if it is expired
+     * @throws ASAPSecurityException certificate was removed or is already in memory
+     */
+    private ASAPCertificate addDecodedCertificate2InMemo(ASAPCertificate asapCertificate,
+                                       Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap,
+                                       List<ASAPCertificate> expiredCertificates, Set<ByteBuffer> tombstones)
+            throws ASAPSecurityException {
+
+        if(CertificateTombstones.isRemoved(tombstones, asapCertificate)) {
+            throw new ASAPSecurityException("certificate was removed");
+        }
+
+        // expired
+        if(this.isExpired(asapCertificate)) {
+            // set on delete list - if any
+            if(expiredCertificates != null) expiredCertificates.add(asapCertificate);
+            return null;
+        }
+
+        // valid - keep in memory
+        PeerID ownerID = PeerID.of(asapCertificate.getSubjectID());
+        // add to in-memo structure
+        Set<ASAPCertificate> certSet = certificatesByOwnerIDMap.get(ownerID);
+
+        if (certSet == null) {
+            certSet = new HashSet<>();
+            certificatesByOwnerIDMap.put(ownerID, certSet);
+        } else {
+            // check if certificate already in there
+            for(ASAPCertificate cert : certSet) {
+                if(cert.isIdentical(asapCertificate)) {
+                    Log.writeLog(this, "found identical certificate - don't add new one");
+                    throw new ASAPSecurityException("certificate already exists");
+                }
+            }
+        }
+
+        certSet.add(asapCertificate);
+        return asapCertificate;
+    }
+
+    /**
+     * Reads asap message from storage, extracts certificates and stores in memory. Certificates are taken from
+     * index snapshot if there is a valid one. Only messages added after snapshot was taken are read from storage.
      * @param certificatesByOwnerIDMap Map that is filled by this method.
      */
-    protected void readCertificatesFromStorage(Map<CharSequence, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
+    protected void readCertificatesFromStorage(Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
         int era = this.asapStorage.getOldestEra();
         int thisEra = this.asapStorage.getEra();
         Log.writeLog(this, "readCertificatesFromStorage oldestEra/thisEra: " + era + " | " + thisEra);
+        this.storedDigests = null;
+        List<ASAPCertificate> expiredCertificates = new ArrayList<>();
+
+        List<CertificateIndexSnapshot.Entry> messages = new ArrayList<>();
+        int messagesToSkip = 0;
+        CertificateIndexSnapshot snapshot = this.readSnapshot(era, thisEra);
+        if(snapshot != null) {
+            Log.writeLog(this, "read certificates from index: " + snapshot.entries.size());
+            messages.addAll(snapshot.entries);
+            era = snapshot.lastEra;
+            messagesToSkip = snapshot.lastEraMessageCount;
+        }
+
+        int newMessages = this.readMessagesFromEras(era, thisEra, messagesToSkip, messages);
+
+        if(newMessages < 0) {
+            // snapshot does not fit to storage - read anything
+            Log.writeLog(this, "certificate index outdated - read whole storage");
+            messages.clear();
+            snapshot = null;
+            newMessages = this.readMessagesFromEras(this.asapStorage.getOldestEra(), thisEra, 0, messages);
+        }
+
+        int snapshotEntries = snapshot != null ? snapshot.entries.size() : 0;
+        int removedSnapshotEntries = this.addMessages2InMemo(
+                messages, snapshotEntries, certificatesByOwnerIDMap, expiredCertificates);
+
+       // remove expired certificates from asap memory
+        try {
+            this.removeCertificatesFromStorage(expiredCertificates);
+        } catch (IOException e) {
+            Log.writeLog(this, "cannot remove certificate: " + e.getLocalizedMessage());
+        }
+
+        if(snapshot == null || newMessages > 0 || removedSnapshotEntries > 0 || !expiredCertificates.isEmpty()) {
+            this.writeSnapshot(thisEra, certificatesByOwnerIDMap);
+        }
+
+        // read received certificates
+        this.readReceivedCertificatesFromExternalMemory(certificatesByOwnerIDMap);
+    }
+
+    /**
+     * @param messagesToSkip messages in first era which are already known
+     * @param messages messages are added to that list - in order of eras and messages
+     * @return number of read messages. -1 if first era has not as many messages as should be skipped.
+     */
+    private int readMessagesFromEras(int era, int thisEra, int messagesToSkip,
+                                     List<CertificateIndexSnapshot.Entry> messages) {
+        // compaction could drop and rewrite chunks meanwhile
+        synchronized(this.chunkLock) {
+            return this.readMessagesFromErasLocked(era, thisEra, messagesToSkip, messages);
+        }
+    }
+
+    private int readMessagesFromErasLocked(int era, int thisEra, int messagesToSkip,
+                                           List<CertificateIndexSnapshot.Entry> messages) {
         ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
         boolean lastRound = false;
-        List<ASAPCertificate> expiredCertificates = new ArrayList<>();
+        int readMessages = 0;
         do {
             lastRound = era == thisEra;
 
             try {
+                if(!chunkStorage.existsChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era)) {
+                    // nothing stored in this era or dropped by compaction
+                    if(messagesToSkip > 0) return -1;
+                    era = this.asapStorage.getNextEra(era);
+                    continue;
+                }
+
                 ASAPChunk chunk = chunkStorage.getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era);
                 Iterator<byte[]> messagesAsBytes = chunk.getMessages();
-                // create address
-                ASAPStorageAddressImpl asapStorageAddress = new ASAPStorageAddressImpl(era);
+
+                // already in snapshot
+                for(; messagesToSkip > 0; messagesToSkip--) {
+                    if(!messagesAsBytes.hasNext()) return -1;
+                    messagesAsBytes.next();
+                }
+
                 while(messagesAsBytes.hasNext()) {
-                    try {
-                        this.addCertificate2InMemo(
-                                messagesAsBytes.next(), asapStorageAddress,
-                                certificatesByOwnerIDMap, expiredCertificates);
-                    } catch (ASAPSecurityException e) {
-                        // certificate already exists - try next
-                    }
+                    readMessages++;
+                    messages.add(new CertificateIndexSnapshot.Entry(era, messagesAsBytes.next()));
                 }
-            } catch (IOException | ASAPException e) {
+            } catch (IOException e) {
                 Log.writeLog(this, "exception when read certificates from asap storage: "
                         + e.getLocalizedMessage());
             }
@@ -113,96 +270,372 @@ public class ASAPStorageBasedCertificates extends InMemoCertificatesAndIdentityA
             era = this.asapStorage.getNextEra(era);
         } while(!lastRound);
 
-       // remove expired certificates from asap memory
+        return readMessages;
+    }
+
+    /**
+     * Decode messages - possibly in parallel - and add certificates to memory in order of messages.
+     * @param snapshotEntries number of messages at the beginning of the list which are taken from index snapshot
+     * @return number of certificates in snapshot which were removed after snapshot was written
+     */
+    private int addMessages2InMemo(List<CertificateIndexSnapshot.Entry> messages, int snapshotEntries,
+                                   Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap,
+                                   List<ASAPCertificate> expiredCertificates) {
+
+        // one address per era - created before decoding threads use them
+        final Map<Integer, ASAPStorageAddress> addresses = new HashMap<>();
+        for(CertificateIndexSnapshot.Entry message : messages) {
+            if(!addresses.containsKey(message.era)) {
+                addresses.put(message.era, new ASAPStorageAddressImpl(message.era));
+            }
+        }
+
+        ASAPCertificate[] certificates = this.decoder.decode(messages, addresses::get);
+
+        Map<Integer, Set<ByteBuffer>> tombstonesByEra = new HashMap<>();
+        int removed = 0;
+        for(int i = 0; i < certificates.length; i++) {
+            if(certificates[i] == null) {
+                // could not be decoded - already logged
+                if(i < snapshotEntries) Log.writeLogErr(this, "certificate in index cannot be read");
+                continue;
+            }
+
+            int era = messages.get(i).era;
+            Set<ByteBuffer> tombstones = tombstonesByEra.get(era);
+            if(tombstones == null) {
+                tombstones = this.getTombstones(era);
+                tombstonesByEra.put(era, tombstones);
+            }
+
+            try {
+                this.addDecodedCertificate2InMemo(
+                        certificates[i], certificatesByOwnerIDMap, expiredCertificates, tombstones);
+            } catch (ASAPSecurityException e) {
+                // removed or already exists
+                if(i < snapshotEntries) removed++;
+            }
+        }
+
+        return removed;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                               index snapshot                                              //
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return snapshot file next to asap storage folder - null if storage is not file based
+     */
+    private File getSnapshotFile() {
+        if(!(this.asapStorage instanceof ASAPEngineFS)) return null;
+
+        File rootFolder = new File(((ASAPEngineFS) this.asapStorage).getRootFolder());
+        return new File(rootFolder.getPath() + CertificateIndexSnapshot.FILE_EXTENSION);
+    }
+
+    private CertificateIndexSnapshot readSnapshot(int oldestEra, int thisEra) {
+        CertificateIndexSnapshot snapshot = CertificateIndexSnapshot.read(this.getSnapshotFile());
+        if(snapshot == null) return null;
+
+        if(!PeerID.sameID(snapshot.ownerID, this.getOwnerID())) {
+            Log.writeLog(this, "certificate index written by another owner - ignore: " + snapshot.ownerID);
+            return null;
+        }
+
+        if(!ASAP.isEraInRange(snapshot.lastEra, oldestEra, thisEra)) {
+            Log.writeLog(this, "certificate index era out of range - ignore: " + snapshot.lastEra);
+            return null;
+        }
+
+        return snapshot;
+    }
+
+    private void writeSnapshot(int thisEra, Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
+        if(this.getSnapshotFile() == null) return;
+
         try {
-            this.removeCertificatesFromStorage(expiredCertificates);
+            ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
+            int lastEraMessageCount = 0;
+            if(chunkStorage.existsChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, thisEra)) {
+                lastEraMessageCount = chunkStorage.getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, thisEra)
+                        .getNumberMessage();
+            }
+
+            List<CertificateIndexSnapshot.Entry> entries = new ArrayList<>();
+            for(Set<ASAPCertificate> certificates : certificatesByOwnerIDMap.values()) {
+                for(ASAPCertificate certificate : certificates) {
+                    ASAPStorageAddress asapStorageAddress = certificate.getASAPStorageAddress();
+                    if(asapStorageAddress == null) continue; // not read from storage
+
+                    entries.add(new CertificateIndexSnapshot.Entry(
+                            asapStorageAddress.getEra(), certificate.asBytes()));
+                }
+            }
+
+            this.writeSnapshot(thisEra, lastEraMessageCount, entries);
         } catch (IOException e) {
-            Log.writeLog(this, "cannot remove certificate: " + e.getLocalizedMessage());
+            Log.writeLog(this, "cannot write certificate index: " + e.getLocalizedMessage());
         }
+    }
 
-        // read received certificates
-        this.readReceivedCertificatesFromExternalMemory(certificatesByOwnerIDMap);
+    private void writeSnapshot(int thisEra, int lastEraMessageCount, List<CertificateIndexSnapshot.Entry> entries)
+            throws IOException {
+
+        synchronized(this.chunkLock) {
+            new CertificateIndexSnapshot(this.getOwnerID(), thisEra, lastEraMessageCount, entries)
+                    .write(this.getSnapshotFile());
+        }
+
+        Log.writeLog(this, "wrote certificate index: " + entries.size());
     }
 
-    protected Collection<ASAPCertificate> readReceivedCertificatesFromExternalMemory(
-            Map<CharSequence, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
+    /**
+     * Snapshot describes storage as it was - it must not be used after any removal.
+     */
+    private void dropSnapshot() {
+        File snapshotFile = this.getSnapshotFile();
+        if(snapshotFile != null && snapshotFile.exists() && !snapshotFile.delete()) {
+            Log.writeLogErr(this, "cannot delete outdated certificate index: " + snapshotFile);
+        }
+    }
 
-        Log.writeLog(this, "readReceivedCertificates");
-        Collection<ASAPCertificate> asapCertificatesReceived = new ArrayList<>();
+    private Set<ByteBuffer> getStoredDigests(Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
+        if(this.storedDigests == null) {
+            // read by decoding threads of received certificates pipeline
+            Set<ByteBuffer> storedDigests = Collections.newSetFromMap(new ConcurrentHashMap<ByteBuffer, Boolean>());
+            for(Set<ASAPCertificate> certificates : certificatesByOwnerIDMap.values()) {
+                for(ASAPCertificate certificate : certificates) {
+                    storedDigests.add(CertificateTombstones.digest(certificate));
+                }
+            }
+            this.storedDigests = storedDigests;
+        }
+        return this.storedDigests;
+    }
 
-        Log.writeLog(this, "look for chunk storage...");
-        ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
-        Log.writeLog(this, "...got it: " + this.asapStorage);
+    /**
+     * Certificates received from a peer. Watermark is era of incoming storage and number of messages in its
+     * chunk of that era after last ingest - usually zero, messages are removed after they were copied. Incoming
+     * storage moves to era of each chunk it receives - chunk storage is taken again if era has changed.
+     */
+    private static class IncomingCertificates {
+        ASAPStorage incomingStorage;
+        ASAPChunkStorage chunkStorage;
+        int era;
+        int messages = 0;
+
+        IncomingCertificates(ASAPStorage incomingStorage) {
+            this.setIncomingStorage(incomingStorage);
+        }
 
-        try {
-            List<CharSequence> senderList = this.asapStorage.getSender();
-            Log.writeLog(this, "got sender list: " + senderList);
-            // at least one sender - get access to owner channel to copy messages to
-            this.asapStorage.createChannel(ASAPCertificate.ASAP_CERTIFICATE_URI);
-            ASAPChannel ownerCertificateChannel = null;
-            try {
-                 ownerCertificateChannel = this.asapStorage.getChannel(ASAPCertificate.ASAP_CERTIFICATE_URI);
+        void setIncomingStorage(ASAPStorage incomingStorage) {
+            this.incomingStorage = incomingStorage;
+            this.chunkStorage = incomingStorage.getChunkStorage();
+            this.era = incomingStorage.getEra();
+        }
+
+        /**
+         * @return number of messages in chunks of current era - read from chunk meta data, messages are not loaded
+         */
+        int countMessages() throws IOException {
+            int messages = 0;
+            for(String uri : ReceivedCertificatesPipeline.CERTIFICATE_URIS) {
+                if(this.chunkStorage.existsChunk(uri, this.era)) {
+                    messages += this.chunkStorage.getChunk(uri, this.era).getNumberMessage();
+                }
             }
-            catch(ASAPException e) {
-                // channel does not exist yet - set it up
+            return messages;
+        }
+    }
+
+    private final Map<PeerID, IncomingCertificates> incomingCertificates = new HashMap<>();
+    private ASAPChannel ownerCertificateChannel = null;
+
+    public static final int DEFAULT_INGEST_PARALLELISM = 1;
+    private int ingestParallelism = DEFAULT_INGEST_PARALLELISM;
+    private final CertificateIngestMetrics ingestMetrics = new CertificateIngestMetrics();
+
+    /**
+     * @return true if sender has sent certificates since last ingest - only memento of its incoming storage and
+     * meta data of its latest chunk are read
+     */
+    private boolean hasNewCertificates(CharSequence sender) throws IOException, ASAPException {
+        PeerID senderID = PeerID.of(sender);
+        // fresh storage - era of incoming storage changes with each encounter
+        ASAPStorage incomingStorage = this.asapStorage.getExistingIncomingStorage(sender);
+        IncomingCertificates incoming = this.incomingCertificates.get(senderID);
+        if(incoming == null) {
+            this.incomingCertificates.put(senderID, new IncomingCertificates(incomingStorage));
+            return true;
+        }
+
+        if(incoming.era != incomingStorage.getEra()) {
+            incoming.setIncomingStorage(incomingStorage);
+            return true;
+        }
+        incoming.incomingStorage = incomingStorage;
+        return incoming.countMessages() != incoming.messages;
+    }
+
+    private ASAPChannel getOwnerCertificateChannel() throws IOException, ASAPException {
+        if(this.ownerCertificateChannel == null) {
+            if(!this.asapStorage.channelExists(ASAPCertificate.ASAP_CERTIFICATE_URI)) {
                 this.asapStorage.createChannel(ASAPCertificate.ASAP_CERTIFICATE_URI);
-                ownerCertificateChannel = this.asapStorage.getChannel(ASAPCertificate.ASAP_CERTIFICATE_URI);
-                // exception can be thrown if creation is impossible - that's ok though
             }
-            Log.writeLog(this, "got ownerCertificateChannel");
-            ASAPStorageAddressImpl asapStorageAddress = new ASAPStorageAddressImpl(this.asapStorage.getEra());
-            Log.writeLog(this, "created address");
-
-            for(CharSequence sender : senderList) {
-                Log.writeLog(this, "read certificates received from " + sender);
-                ASAPStorage incomingStorage = this.asapStorage.getExistingIncomingStorage(sender);
-                Log.writeLog(this, "got existing asap storage " + sender);
-                ASAPChunkStorage incomingChunkStorage = incomingStorage.getChunkStorage();
-                Log.writeLog(this, "got chunk storage " + sender);
-                ASAPMessages incomingChunkCache =
-                        incomingChunkStorage.getASAPMessages(ASAPCertificate.ASAP_CERTIFICATE_URI,
-                                ASAP.INITIAL_ERA, ASAP.MAX_ERA);
-                        Log.writeLog(this, "got chunk cache from " + sender + " of "
-                              + ASAPCertificate.ASAP_CERTIFICATE_URI);
-
-                Iterator<byte[]> messages = incomingChunkCache.getMessages();
-                Log.writeLog(this, "iterate messages");
-                while(messages.hasNext()) {
-                    byte[] message = messages.next();
-                    // write into owners channel
-                    Log.writeLog(this, "copy message in owners channel");
-                    ownerCertificateChannel.addMessage(message);
-
-                    // deserialize
-                    Log.writeLog(this, "add to internal certificate list");
-
-                    // remember new certificates - don't collect expired certs - they will be removed anyway
-                    try {
-                        asapCertificatesReceived.add(
-                            this.addCertificate2InMemo(message, asapStorageAddress,
-                                    certificatesByOwnerIDMap, null));
-                    } catch (ASAPSecurityException e) {
-                        // cert already exists - try next
-                    }
-                }
+            this.ownerCertificateChannel = this.asapStorage.getChannel(ASAPCertificate.ASAP_CERTIFICATE_URI);
+        }
+        return this.ownerCertificateChannel;
+    }
+
+    public int getIngestParallelism() {
+        return this.ingestParallelism;
+    }
+
+    /**
+     * Received certificates are decoded by worker threads and added to memory by calling thread.
+     * @param parallelism number of threads decoding received certificates - 1: anything in calling thread (default)
+     */
+    public void setIngestParallelism(int parallelism) {
+        this.ingestParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return counters of all runs taking received certificates into storage
+     */
+    public CertificateIngestMetrics getIngestMetrics() {
+        return this.ingestMetrics;
+    }
+
+    /**
+     * Called with each request for new certificates. Senders without new messages are skipped - they cost
+     * a look into their incoming storage.
+     * <br/>
+     * Removing a certificate does not ban it. A received copy is stored in current era and taken like any
+     * other certificate - as it is in {@link RemovalMode#REWRITE_CHUNK} mode. There is one exception: A copy
+     * is not taken if it was removed from current era. Its tombstone would hide it with next load.
+     */
+    protected Collection<ASAPCertificate> readReceivedCertificatesFromExternalMemory(
+            Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
 
-                // delete
-                Log.writeLog(this, "remove channel in incoming storage");
-                incomingStorage.removeChannel(ASAPCertificate.ASAP_CERTIFICATE_URI);
+        List<CharSequence> sendersWithNews = new ArrayList<>();
+        try {
+            for(CharSequence sender : this.asapStorage.getSender()) {
+                if(this.hasNewCertificates(sender)) sendersWithNews.add(sender);
             }
         } catch (IOException | ASAPException e) {
             Log.writeLog(this, "exception when looking for received certificates - give up: "
                     + e.getLocalizedMessage());
-            e.printStackTrace();
+            return new ArrayList<>();
         }
 
+        Collection<ASAPCertificate> asapCertificatesReceived = new ArrayList<>();
+        if(sendersWithNews.isEmpty()) return asapCertificatesReceived;
+        Log.writeLog(this, "read certificates received from " + sendersWithNews);
+
+        // tombstones of older eras do not hide copies in current era - no need to look at them
+        Set<ByteBuffer> tombstones = this.getTombstones(this.asapStorage.getEra());
+        Set<ByteBuffer> storedDigests = this.getStoredDigests(certificatesByOwnerIDMap);
+
+        ReceivedCertificatesPipeline.Stages stages = new ReceivedCertificatesPipeline.Stages() {
+            @Override
+            public ASAPStorage getIncomingStorage(CharSequence sender) {
+                // taken when looking for new certificates
+                return ASAPStorageBasedCertificates.this.incomingCertificates.get(PeerID.of(sender)).incomingStorage;
+            }
+
+            @Override
+            public boolean isKnown(ByteBuffer digest) {
+                return storedDigests.contains(digest);
+            }
+
+            @Override
+            public boolean index(ByteBuffer digest, byte[] message, ASAPCertificate certificate) {
+                if(!storedDigests.add(digest)) return false; // more than one copy received
+
+                try {
+                    // don't collect expired certs - they will be removed anyway
+                    if(ASAPStorageBasedCertificates.this.addDecodedCertificate2InMemo(
+                            certificate, certificatesByOwnerIDMap, null, tombstones) == null) {
+                        return false;
+                    }
+                } catch (ASAPSecurityException e) {
+                    // cert already exists or was removed - don't copy
+                    return false;
+                }
+
+                try {
+                    ASAPStorageBasedCertificates.this.getOwnerCertificateChannel().addMessage(message);
+                } catch (IOException | ASAPException e) {
+                    Log.writeLogErr(ASAPStorageBasedCertificates.this,
+                            "cannot copy certificate into owners channel: " + e.getLocalizedMessage());
+                }
+                asapCertificatesReceived.add(certificate);
+                return true;
+            }
+
+            @Override
+            public void senderDone(CharSequence sender, ASAPStorage incomingStorage, int messages) {
+                IncomingCertificates incoming =
+                        ASAPStorageBasedCertificates.this.incomingCertificates.get(PeerID.of(sender));
+                try {
+                    for(String uri : ReceivedCertificatesPipeline.CERTIFICATE_URIS) {
+                        incomingStorage.removeChannel(uri);
+                    }
+                    incoming.messages = incoming.countMessages();
+                } catch (IOException e) {
+                    incoming.messages = messages;
+                    Log.writeLog(ASAPStorageBasedCertificates.this,
+                            "cannot remove received certificates of " + sender + ": " + e.getLocalizedMessage());
+                }
+            }
+        };
+
+        new ReceivedCertificatesPipeline(stages, new ASAPStorageAddressImpl(this.asapStorage.getEra()),
+                this.ingestParallelism, this.ingestMetrics).run(sendersWithNews);
+
+        this.verifyReceivedCertificates(asapCertificatesReceived, certificatesByOwnerIDMap);
+
         return asapCertificatesReceived;
     }
 
-    @Override
+    /**
+     * Verify received certificates with each known key of their issuer - at once and in parallel. Nothing is
+     * rejected here - identity assurance decides what a certificate is worth. It takes those results from
+     * verification cache instead of verifying one certificate after the other.
+     */
+    private void verifyReceivedCertificates(Collection<ASAPCertificate> receivedCertificates,
+                                            Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
+
+        List<CertificateVerification> verifications = new ArrayList<>();
+        for(ASAPCertificate certificate : receivedCertificates) {
+            Set<ASAPCertificate> issuerCertificates =
+                    certificatesByOwnerIDMap.get(PeerID.of(certificate.getIssuerID()));
+            if(issuerCertificates == null) continue; // issuer unknown - nothing to verify with
+
+            List<PublicKey> issuerKeys = new ArrayList<>(1); // usually one key per peer
+            for(ASAPCertificate issuerCertificate : issuerCertificates) {
+                PublicKey issuerKey = issuerCertificate.getPublicKey();
+                if(issuerKey == null || issuerKeys.contains(issuerKey)) continue;
+                issuerKeys.add(issuerKey);
+                verifications.add(new CertificateVerification(certificate, issuerKey));
+            }
+        }
+        if(verifications.isEmpty()) return;
+
+        this.verifyCertificates(verifications);
+
+        int verified = 0;
+        for(CertificateVerification verification : verifications) if(verification.isVerified()) verified++;
+        Log.writeLog(this, "verified received certificates: " + verified + " of " + verifications.size()
+                + " (certificate, issuer key) pairs");
+    }
+
     public ASAPStorageAddress storeCertificateInStorage(ASAPCertificate asapCertificate) throws IOException {
         Log.writeLog(this, "call asapStorage.add() to store certificate");
-        this.asapStorage.add(asapCertificate.ASAP_CERTIFICATE_URI, asapCertificate.asBytes());
+        byte[] serializedCertificate = asapCertificate.asBytes();
+        this.asapStorage.add(asapCertificate.ASAP_CERTIFICATE_URI, serializedCertificate);
+        if(this.storedDigests != null) this.storedDigests.add(CertificateTombstones.digest(serializedCertificate));
 
         Log.writeLog(this, "create asap certificate address object");
         ASAPStorageAddressImpl asapStorageAddress = new ASAPStorageAddressImpl(
@@ -220,16 +653,36 @@ public class ASAPStorageBasedCertificates extends InMemoCertificatesAndIdentityA
     }
 
     protected void removeCertificateFromStorage(ASAPCertificate cert2remove) throws IOException {
+        // can be received and stored again
+        if(this.storedDigests != null) this.storedDigests.remove(CertificateTombstones.digest(cert2remove));
+
+        synchronized(this.chunkLock) {
+            this.removals++;
+            this.removeCertificateFromChunk(cert2remove);
+        }
+    }
+
+    private void removeCertificateFromChunk(ASAPCertificate cert2remove) throws IOException {
         ASAPStorageAddress asapAddress = cert2remove.getASAPStorageAddress();
         if (asapAddress == null) {
             Log.writeLog(this, "asap address must not be null - cannot remove");
             return;
         }
+        // address can be older than a compaction
+        int era = this.resolveEra(asapAddress.getEra());
+
+        if(this.removalMode == RemovalMode.TOMBSTONE) {
+            // messages stay where they are - snapshot remains valid
+            this.tombstones.add(era, cert2remove);
+            return;
+        }
 
-        if(this.asapStorage.getChunkStorage().existsChunk(asapAddress.getUri(), asapAddress.getEra())) {
+        this.dropSnapshot();
+
+        if(this.asapStorage.getChunkStorage().existsChunk(asapAddress.getUri(), era)) {
             ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
 
-            ASAPChunk chunk = chunkStorage.getChunk(asapAddress.getUri(), asapAddress.getEra());
+            ASAPChunk chunk = chunkStorage.getChunk(asapAddress.getUri(), era);
             if(chunk.getNumberMessage() == 1) {
                 // just on certificate in there - it must be the one - remove whole chunk and we are done here
                 chunk.drop(); //
@@ -245,11 +698,11 @@ public class ASAPStorageBasedCertificates extends InMemoCertificatesAndIdentityA
                 try {
                     if(!found) {
                         ASAPCertificateImpl asapCertificate =
-                                ASAPCertificateImpl.produceCertificateFromByteArray(messageBytes, asapAddress);
+                                ASAPCertificateImpl.produceLazyCertificate(messageBytes, asapAddress);
 
                         // to be dropped?
-                        if (asapCertificate.getSubjectID() == cert2remove.getSubjectID()
-                                && asapCertificate.getIssuerID() == cert2remove.getIssuerID()) {
+                        if (PeerID.sameID(asapCertificate.getSubjectID(), cert2remove.getSubjectID())
+                                && PeerID.sameID(asapCertificate.getIssuerID(), cert2remove.getIssuerID())) {
                             found= true;
                             continue;
                         }
@@ -270,11 +723,265 @@ public class ASAPStorageBasedCertificates extends InMemoCertificatesAndIdentityA
 
             // drop and write remaining certs
             chunk.drop();
-            chunk = chunkStorage.getChunk(asapAddress.getUri(), asapAddress.getEra());
+            chunk = chunkStorage.getChunk(asapAddress.getUri(), era);
 
             for(byte[] message : tempCopy) {
                 chunk.addMessage(message);
             }
         }
     }
+
+    /**
+     * Must be called with chunk lock.
+     * @return era which holds certificates stored in that era - compaction could have moved them
+     */
+    private int resolveEra(int era) throws IOException {
+        ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
+        // each merge moves certificates into a newer era - no loops unless era numbers are reused
+        for(int i = 0; i < this.movedEras.size(); i++) {
+            Integer newEra = this.movedEras.get(era);
+            if(newEra == null || chunkStorage.existsChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era)) break;
+            era = newEra;
+        }
+        return era;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                                compaction                                                 //
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Remove dead entries from certificate chunks: certificates with a tombstone, expired certificates, copies
+     * of certificates which are already stored and messages that cannot be read.
+     * <br/>
+     * An era is written again if its share of dead entries exceeds a threshold. Old eras with few certificates
+     * are merged into the newest of them - peers which
+     * got those eras before are not sent their certificates again. Current era is never changed - new certificates are added to it.
+     * <br/>
+     * It can run in parallel to anything else but is expensive. Use a {@link CertificateCompactionService}.
+     *
+     * @param deadEntryThreshold era is rewritten if dead entries / all entries exceeds this value (0..1)
+     * @param sparseEraSize eras with less certificates are merged
+     * @param keepRecentEras number of most recent eras which are never merged
+     * @return what was done
+     */
+    public CertificateCompactionReport compact(float deadEntryThreshold, int sparseEraSize, int keepRecentEras) {
+        long start = System.currentTimeMillis();
+        CertificateCompactionReport report = new CertificateCompactionReport();
+
+        int thisEra = this.asapStorage.getEra();
+        List<Integer> eras = new ArrayList<>();
+        for(int era = this.asapStorage.getOldestEra(); era != thisEra; era = this.asapStorage.getNextEra(era)) {
+            eras.add(era);
+        }
+
+        Set<ByteBuffer> liveDigests = new HashSet<>();
+        Map<Integer, List<byte[]>> liveMessagesByEra = new HashMap<>();
+        ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
+        long removals;
+        synchronized(this.chunkLock) {
+            removals = this.removals;
+        }
+
+        try {
+            // past eras: remove dead entries
+            for(int era : eras) {
+                synchronized(this.chunkLock) {
+                    if(!chunkStorage.existsChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era)) continue;
+                    report.checkedEras++;
+
+                    ASAPChunk chunk = chunkStorage.getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era);
+                    List<byte[]> liveMessages = new ArrayList<>();
+                    int messages = 0;
+                    long deadBytes = 0;
+                    Set<ByteBuffer> tombstones = this.getTombstones(era);
+                    Iterator<byte[]> messagesAsBytes = chunk.getMessages();
+                    while(messagesAsBytes.hasNext()) {
+                        byte[] message = messagesAsBytes.next();
+                        messages++;
+                        if(this.isLiveMessage(message, tombstones, liveDigests)) {
+                            liveMessages.add(message);
+                        } else {
+                            deadBytes += message.length;
+                        }
+                    }
+                    liveMessagesByEra.put(era, liveMessages);
+
+                    int deadMessages = messages - liveMessages.size();
+                    if(deadMessages > 0 && (float) deadMessages / messages > deadEntryThreshold) {
+                        this.rewriteChunk(era, liveMessages);
+                        report.rewrittenEras++;
+                        report.removedMessages += deadMessages;
+                        report.reclaimedBytes += deadBytes;
+                    }
+                }
+            }
+
+            // old and sparse eras: move certificates into newest one - older eras could be delivered already
+            int target = -1;
+            List<Integer> sparseEras = new ArrayList<>();
+            for(int i = 0; i < eras.size() - keepRecentEras; i++) {
+                int era = eras.get(i);
+                List<byte[]> liveMessages = liveMessagesByEra.get(era);
+                if(liveMessages == null || liveMessages.size() >= sparseEraSize) continue;
+
+                sparseEras.add(era);
+                if(!liveMessages.isEmpty()) target = era;
+            }
+
+            // empty sparse eras after target stay - nothing to move
+            List<Integer> mergedEras = new ArrayList<>();
+            List<byte[]> targetMessages = new ArrayList<>();
+            for(int i = 0; target >= 0 && sparseEras.get(i) != target; i++) {
+                int era = sparseEras.get(i);
+                targetMessages.addAll(liveMessagesByEra.remove(era));
+                mergedEras.add(era);
+            }
+
+            if(!mergedEras.isEmpty()) {
+                targetMessages.addAll(liveMessagesByEra.get(target));
+                synchronized(this.chunkLock) {
+                    // certificates could have been removed since eras were read - read them again
+                    List<Integer> sourceEras = new ArrayList<>(mergedEras);
+                    sourceEras.add(target);
+                    targetMessages = this.readMergedMessages(sourceEras, targetMessages);
+                    liveMessagesByEra.put(target, targetMessages);
+
+                    // write target first - a crash leaves copies (removed by next compaction) but loses nothing
+                    this.rewriteChunk(target, targetMessages);
+                    for(int era : mergedEras) {
+                        chunkStorage.getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era).drop();
+                        if(this.tombstones != null) this.tombstones.drop(era);
+                        // certificates in memory still refer to this era
+                        this.movedEras.put(era, target);
+                        report.mergedEras++;
+                    }
+                }
+            }
+
+            if(report.changedStorage()) {
+                this.writeSnapshotAfterCompaction(thisEra, liveMessagesByEra, liveDigests, removals);
+            }
+        } catch (IOException e) {
+            Log.writeLogErr(this, "compaction failed: " + e.getLocalizedMessage());
+        }
+
+        if(report.getMergedEras() > 0) {
+            // certificates in memory refer to eras which do not exist any longer - rebuilt by next reader
+            this.markInMemoStale();
+        }
+
+        report.durationInMillis = System.currentTimeMillis() - start;
+        Log.writeLog(this, "compaction: " + report);
+        return report;
+    }
+
+    /**
+     * Must be called with chunk lock.
+     * @param liveMessages messages of those eras found alive before - nothing else is taken
+     * @return messages of those eras which are still alive - in order of eras and messages
+     */
+    private List<byte[]> readMergedMessages(List<Integer> eras, List<byte[]> liveMessages) throws IOException {
+        Set<ByteBuffer> wasAlive = new HashSet<>();
+        for(byte[] message : liveMessages) wasAlive.add(CertificateTombstones.digest(message));
+
+        List<byte[]> messages = new ArrayList<>();
+        Set<ByteBuffer> digests = new HashSet<>();
+        ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
+        for(int era : eras) {
+            if(!chunkStorage.existsChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era)) continue;
+
+            Set<ByteBuffer> tombstones = this.getTombstones(era);
+            Iterator<byte[]> messagesAsBytes =
+                    chunkStorage.getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era).getMessages();
+            while(messagesAsBytes.hasNext()) {
+                byte[] message = messagesAsBytes.next();
+                if(wasAlive.contains(CertificateTombstones.digest(message))
+                        && this.isLiveMessage(message, tombstones, digests)) {
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @param liveDigests digests of certificates found so far - extended with this one if it is alive
+     */
+    private boolean isLiveMessage(byte[] message, Set<ByteBuffer> tombstones, Set<ByteBuffer> liveDigests) {
+        ASAPCertificate certificate;
+        try {
+            certificate = ASAPCertificateImpl.produceLazyCertificate(message, null);
+        } catch (IOException e) {
+            Log.writeLog(this, "drop unreadable message: " + e.getLocalizedMessage());
+            return false;
+        }
+
+        if(this.isExpired(certificate)) return false;
+
+        ByteBuffer digest = CertificateTombstones.digest(certificate);
+        if(tombstones.contains(digest)) return false;
+
+        // first copy survives
+        return liveDigests.add(digest);
+    }
+
+    private void rewriteChunk(int era, List<byte[]> messages) throws IOException {
+        // snapshot could contain certificates whose tombstones are dropped now
+        this.dropSnapshot();
+
+        ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
+        chunkStorage.getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era).drop();
+        if(this.tombstones != null) this.tombstones.drop(era);
+
+        if(messages.isEmpty()) return;
+
+        ASAPChunk chunk = chunkStorage.getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, era);
+        for(byte[] message : messages) {
+            chunk.addMessage(message);
+        }
+    }
+
+    /**
+     * Compaction has read anything but current era. Read it as well and write a snapshot. Next load does not
+     * need to read whole storage.
+     */
+    private void writeSnapshotAfterCompaction(int thisEra, Map<Integer, List<byte[]>> liveMessagesByEra,
+                                              Set<ByteBuffer> liveDigests, long removals) throws IOException {
+        if(this.getSnapshotFile() == null) return;
+
+        synchronized(this.chunkLock) {
+            // live messages could contain removed certificates - next load reads storage
+            if(removals != this.removals) return;
+            this.writeSnapshotAfterCompactionLocked(thisEra, liveMessagesByEra, liveDigests);
+        }
+    }
+
+    private void writeSnapshotAfterCompactionLocked(int thisEra, Map<Integer, List<byte[]>> liveMessagesByEra,
+                                                    Set<ByteBuffer> liveDigests) throws IOException {
+
+        List<CertificateIndexSnapshot.Entry> entries = new ArrayList<>();
+        for(Map.Entry<Integer, List<byte[]>> eraMessages : liveMessagesByEra.entrySet()) {
+            for(byte[] message : eraMessages.getValue()) {
+                entries.add(new CertificateIndexSnapshot.Entry(eraMessages.getKey(), message));
+            }
+        }
+
+        int messages = 0;
+        ASAPChunkStorage chunkStorage = this.asapStorage.getChunkStorage();
+        if(chunkStorage.existsChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, thisEra)) {
+            Set<ByteBuffer> tombstones = this.getTombstones(thisEra);
+            Iterator<byte[]> messagesAsBytes =
+                    chunkStorage.getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, thisEra).getMessages();
+            while(messagesAsBytes.hasNext()) {
+                byte[] message = messagesAsBytes.next();
+                messages++;
+                if(this.isLiveMessage(message, tombstones, liveDigests)) {
+                    entries.add(new CertificateIndexSnapshot.Entry(thisEra, message));
+                }
+            }
+        }
+
+        this.writeSnapshot(thisEra, messages, entries);
+    }
 }
@@ -0,0 +1,146 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.pki.CredentialMessage;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Issues certificates for a number of credential messages - in parallel if there are enough of them. Each signature
+ * is created with its own signature object. Signing has no side effects - certificates are neither stored nor sent.
+ */
+public class CertificateBatchSigner {
+    // less credentials are signed in calling thread
+    static final int BATCH_SIZE = 4;
+
+    private final int parallelism;
+    private ForkJoinPool pool = null;
+
+    /**
+     * @param parallelism number of threads - 1 means: sign in calling thread
+     */
+    public CertificateBatchSigner(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * @return a certificate for each credential message - same order
+     * @throws ASAPSecurityException a certificate could not be signed - no certificate is returned
+     * @see ASAPCertificateImpl#produceCertificate(CharSequence, CharSequence, PrivateKey, CharSequence, CharSequence,
+     * java.security.PublicKey, long, CharSequence, net.sharksystem.asap.ASAPEncounterConnectionType)
+     */
+    public List<ASAPCertificate> sign(CharSequence issuerID, CharSequence issuerName, PrivateKey privateKey,
+                                      CharSequence signingAlgorithm, List<CredentialMessage> credentialMessages)
+            throws ASAPSecurityException {
+
+        SignTask task = new SignTask(new Issuer(issuerID, issuerName, privateKey, signingAlgorithm),
+                credentialMessages, new ASAPCertificate[credentialMessages.size()], new Exception[1],
+                0, credentialMessages.size());
+
+        if(this.parallelism == 1 || credentialMessages.size() <= BATCH_SIZE) {
+            task.signNow();
+        } else {
+            this.getPool().invoke(task);
+        }
+
+        if(task.failure[0] != null) {
+            throw new ASAPSecurityException("cannot create certificate: " + task.failure[0].getLocalizedMessage());
+        }
+        return new ArrayList<>(Arrays.asList(task.certificates));
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if(this.pool == null) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        return this.pool;
+    }
+
+    /**
+     * Release threads - signer can still be used, threads are created again.
+     */
+    public synchronized void shutdown() {
+        if(this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+    }
+
+    private static class Issuer {
+        final CharSequence issuerID;
+        final CharSequence issuerName;
+        final PrivateKey privateKey;
+        final CharSequence signingAlgorithm;
+
+        Issuer(CharSequence issuerID, CharSequence issuerName, PrivateKey privateKey, CharSequence signingAlgorithm) {
+            this.issuerID = issuerID;
+            this.issuerName = issuerName;
+            this.privateKey = privateKey;
+            this.signingAlgorithm = signingAlgorithm;
+        }
+    }
+
+    private static class SignTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Issuer issuer;
+        private final List<CredentialMessage> credentialMessages;
+        private final ASAPCertificate[] certificates;
+        private final Exception[] failure; // first exception of any task
+        private final int from;
+        private final int to;
+
+        SignTask(Issuer issuer, List<CredentialMessage> credentialMessages, ASAPCertificate[] certificates,
+                 Exception[] failure, int from, int to) {
+            this.issuer = issuer;
+            this.credentialMessages = credentialMessages;
+            this.certificates = certificates;
+            this.failure = failure;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.to - this.from <= BATCH_SIZE) {
+                this.signNow();
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(
+                new SignTask(this.issuer, this.credentialMessages, this.certificates, this.failure, this.from, middle),
+                new SignTask(this.issuer, this.credentialMessages, this.certificates, this.failure, middle, this.to));
+        }
+
+        void signNow() {
+            for(int i = this.from; i < this.to; i++) {
+                CredentialMessage credentialMessage = this.credentialMessages.get(i);
+                try {
+                    this.certificates[i] = ASAPCertificateImpl.produceCertificate(
+                            this.issuer.issuerID, this.issuer.issuerName, this.issuer.privateKey,
+                            credentialMessage.getSubjectID(), credentialMessage.getSubjectName(),
+                            credentialMessage.getPublicKey(), credentialMessage.getValidSince(),
+                            this.issuer.signingAlgorithm, credentialMessage.getConnectionTypeCredentialReceived());
+                } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+                    synchronized(this.failure) {
+                        if(this.failure[0] == null) this.failure[0] = e;
+                    }
+                    return; // same issuer key fails with any credential
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package net.sharksystem.asap.pki;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifies a number of certificates - in parallel if there are enough of them. Verification has no side effects
+ * but filling the verification cache. Certificates already verified with the same key are taken from that cache.
+ */
+class CertificateBatchVerifier {
+    // less certificates are verified in calling thread - verifying a signature costs much more than decoding
+    static final int BATCH_SIZE = 8;
+
+    private final CertificateVerificationCache verificationCache;
+    private final int parallelism;
+    private ForkJoinPool pool = null;
+
+    /**
+     * @param parallelism number of threads - 1 means: verify in calling thread
+     */
+    CertificateBatchVerifier(CertificateVerificationCache verificationCache, int parallelism) {
+        this.verificationCache = verificationCache;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * Results are set in each verification object.
+     */
+    void verify(List<CertificateVerification> verifications) {
+        if(this.parallelism == 1 || verifications.size() <= BATCH_SIZE) {
+            this.verify(verifications, 0, verifications.size());
+        } else {
+            this.getPool().invoke(new VerifyTask(verifications, 0, verifications.size()));
+        }
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if(this.pool == null) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        return this.pool;
+    }
+
+    /**
+     * Release threads - verifier can still be used, threads are created again.
+     */
+    synchronized void shutdown() {
+        if(this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+    }
+
+    private void verify(List<CertificateVerification> verifications, int from, int to) {
+        for(int i = from; i < to; i++) {
+            CertificateVerification verification = verifications.get(i);
+            try {
+                verification.setResult(this.verificationCache.verify(
+                        verification.getCertificate(), verification.getPublicKey()), null);
+            } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+                verification.setResult(false, e);
+            }
+        }
+    }
+
+    private class VerifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<CertificateVerification> verifications;
+        private final int from;
+        private final int to;
+
+        VerifyTask(List<CertificateVerification> verifications, int from, int to) {
+            this.verifications = verifications;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.to - this.from <= BATCH_SIZE) {
+                CertificateBatchVerifier.this.verify(this.verifications, this.from, this.to);
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new VerifyTask(this.verifications, this.from, middle),
+                    new VerifyTask(this.verifications, middle, this.to));
+        }
+    }
+}
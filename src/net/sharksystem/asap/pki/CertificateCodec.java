@@ -0,0 +1,237 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.PublicKey;
+
+/**
+ * Serialization of certificates into byte buffers - same format as ASAPSerialization and DataOutputStream
+ * produce:
+ * <ul>
+ *     <li>issuer id, issuer name, subject id, subject name: length (int) and bytes in platform charset -
+ *     nothing at all for empty strings (ASAPSerialization does it that way)</li>
+ *     <li>valid since, valid until: long</li>
+ *     <li>signing algorithm: like names</li>
+ *     <li>encounter type: byte</li>
+ *     <li>public key: algorithm (modified UTF-8 like DataOutputStream.writeUTF), length (int), encoded key</li>
+ *     <li>signature: length (int), bytes</li>
+ * </ul>
+ * All numbers are big endian. There are no streams in between: fields are encoded once, written into a buffer
+ * supplied by caller and read from any buffer - a slice of a mapped chunk file works as well.
+ */
+class CertificateCodec {
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final byte[] issuerID;
+    private final byte[] issuerName;
+    private final byte[] subjectID;
+    private final byte[] subjectName;
+    private final long validSince;
+    private final long validUntil;
+    private final byte[] signingAlgorithm;
+    private final byte encounterType;
+    private final byte[] keyAlgorithm;
+    private final byte[] encodedKey;
+    private final byte[] signature;
+
+    CertificateCodec(CharSequence issuerID, CharSequence issuerName, CharSequence subjectID,
+                     CharSequence subjectName, long validSince, long validUntil, CharSequence signingAlgorithm,
+                     ASAPEncounterConnectionType encounterType, PublicKey publicKey, byte[] signature) {
+        this.issuerID = encode(issuerID);
+        this.issuerName = encode(issuerName);
+        this.subjectID = encode(subjectID);
+        this.subjectName = encode(subjectName);
+        this.validSince = validSince;
+        this.validUntil = validUntil;
+        this.signingAlgorithm = encode(signingAlgorithm);
+        this.encounterType = encounterType2Byte(encounterType);
+        this.keyAlgorithm = encodeUTF(publicKey.getAlgorithm());
+        this.encodedKey = publicKey.getEncoded();
+        this.signature = signature;
+    }
+
+    /**
+     * @param withSignature false: anything that is signed
+     */
+    int length(boolean withSignature) {
+        int length = length(this.issuerID) + length(this.issuerName) + length(this.subjectID)
+                + length(this.subjectName) + 8 + 8 + length(this.signingAlgorithm) + 1
+                + 2 + this.keyAlgorithm.length + 4 + this.encodedKey.length;
+
+        if(withSignature) length += 4 + this.signature.length;
+        return length;
+    }
+
+    /**
+     * Write at buffer position. Buffer is not touched if there is not enough space.
+     * @throws BufferOverflowException buffer has less than {@link #length(boolean)} bytes remaining
+     */
+    void writeTo(ByteBuffer buffer, boolean withSignature) {
+        if(buffer.remaining() < this.length(withSignature)) throw new BufferOverflowException();
+
+        put(buffer, this.issuerID);
+        put(buffer, this.issuerName);
+        put(buffer, this.subjectID);
+        put(buffer, this.subjectName);
+        buffer.putLong(this.validSince);
+        buffer.putLong(this.validUntil);
+        put(buffer, this.signingAlgorithm);
+        buffer.put(this.encounterType);
+        buffer.putShort((short) this.keyAlgorithm.length);
+        buffer.put(this.keyAlgorithm);
+        buffer.putInt(this.encodedKey.length);
+        buffer.put(this.encodedKey);
+
+        if(withSignature) {
+            buffer.putInt(this.signature.length);
+            buffer.put(this.signature);
+        }
+    }
+
+    byte[] toByteArray(boolean withSignature) {
+        byte[] bytes = new byte[this.length(withSignature)];
+        this.writeTo(ByteBuffer.wrap(bytes), withSignature);
+        return bytes;
+    }
+
+    private static byte[] encode(CharSequence charSequence) {
+        if(charSequence == null || charSequence.length() < 1) return null;
+        return charSequence.toString().getBytes(CHARSET);
+    }
+
+    private static int length(byte[] encodedCharSequence) {
+        return encodedCharSequence == null ? 0 : 4 + encodedCharSequence.length;
+    }
+
+    private static void put(ByteBuffer buffer, byte[] encodedCharSequence) {
+        if(encodedCharSequence == null) return;
+        buffer.putInt(encodedCharSequence.length);
+        buffer.put(encodedCharSequence);
+    }
+
+    private static byte encounterType2Byte(ASAPEncounterConnectionType encounterType) {
+        switch(encounterType) {
+            case ASAP_HUB: return 1;
+            case AD_HOC_LAYER_2_NETWORK: return 2;
+            case ONION_NETWORK: return 3;
+            case INTERNET: return 4;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Same as DataOutputStream.writeUTF without length
+     */
+    private static byte[] encodeUTF(String s) {
+        int length = 0;
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+
+        byte[] bytes = new byte[length];
+        int index = 0;
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c >= 0x0001 && c <= 0x007F) {
+                bytes[index++] = (byte) c;
+            } else if(c <= 0x07FF) {
+                bytes[index++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+                bytes[index++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                bytes[index++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+                bytes[index++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[index++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return bytes;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                                  decoding                                                 //
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @throws IOException length field beyond end of buffer
+     */
+    static int getLength(ByteBuffer buffer) throws IOException {
+        if(buffer.remaining() < 4) throw new IOException("certificate truncated");
+        int length = buffer.getInt();
+        if(length < 0 || length > buffer.remaining()) {
+            throw new IOException("certificate corrupted or truncated - length: " + length);
+        }
+        return length;
+    }
+
+    static String getCharSequence(ByteBuffer buffer) throws IOException {
+        int length = getLength(buffer);
+        if(buffer.hasArray()) {
+            String s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, CHARSET);
+            buffer.position(buffer.position() + length);
+            return s;
+        }
+        return new String(getBytes(buffer, length), CHARSET);
+    }
+
+    static long getLong(ByteBuffer buffer) throws IOException {
+        if(buffer.remaining() < 8) throw new IOException("certificate truncated");
+        return buffer.getLong();
+    }
+
+    static ASAPEncounterConnectionType getEncounterType(ByteBuffer buffer) throws IOException {
+        if(!buffer.hasRemaining()) throw new IOException("certificate truncated");
+        switch(buffer.get()) {
+            case 1: return ASAPEncounterConnectionType.ASAP_HUB;
+            case 2: return ASAPEncounterConnectionType.AD_HOC_LAYER_2_NETWORK;
+            case 3: return ASAPEncounterConnectionType.ONION_NETWORK;
+            case 4: return ASAPEncounterConnectionType.INTERNET;
+            default: return ASAPEncounterConnectionType.UNKNOWN;
+        }
+    }
+
+    /**
+     * Same as DataInputStream.readUTF
+     */
+    static String getUTF(ByteBuffer buffer) throws IOException {
+        if(buffer.remaining() < 2) throw new IOException("certificate truncated");
+        int length = buffer.getShort() & 0xFFFF;
+        if(length > buffer.remaining()) throw new IOException("certificate truncated");
+
+        StringBuilder sb = new StringBuilder(length);
+        int end = buffer.position() + length;
+        while(buffer.position() < end) {
+            int c = buffer.get() & 0xFF;
+            if(c < 0x80) {
+                sb.append((char) c);
+            } else if((c & 0xE0) == 0xC0 && buffer.position() < end) {
+                sb.append((char) (((c & 0x1F) << 6) | (buffer.get() & 0x3F)));
+            } else if((c & 0xF0) == 0xE0 && buffer.position() + 1 < end) {
+                sb.append((char) (((c & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F)));
+            } else {
+                throw new UTFDataFormatException("malformed key algorithm");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Move position behind length (int) prefixed bytes.
+     * @return number of skipped bytes without length field
+     */
+    static int skipBytes(ByteBuffer buffer) throws IOException {
+        int length = getLength(buffer);
+        buffer.position(buffer.position() + length);
+        return length;
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,70 @@
+package net.sharksystem.asap.pki;
+
+/**
+ * Result of a compaction of certificate chunks.
+ * @see ASAPStorageBasedCertificates#compact(float, int, int)
+ */
+public class CertificateCompactionReport {
+    int checkedEras = 0;
+    int rewrittenEras = 0;
+    int mergedEras = 0;
+    int removedMessages = 0;
+    long reclaimedBytes = 0;
+    long durationInMillis = 0;
+
+    /**
+     * @return number of eras which were checked for dead entries
+     */
+    public int getCheckedEras() {
+        return this.checkedEras;
+    }
+
+    /**
+     * @return number of eras which were written again without dead entries
+     */
+    public int getRewrittenEras() {
+        return this.rewrittenEras;
+    }
+
+    /**
+     * @return number of old and sparse eras whose certificates were moved to another era
+     */
+    public int getMergedEras() {
+        return this.mergedEras;
+    }
+
+    /**
+     * @return number of removed messages: removed, expired, duplicated or unreadable certificates
+     */
+    public int getRemovedMessages() {
+        return this.removedMessages;
+    }
+
+    /**
+     * @return size of all removed messages
+     */
+    public long getReclaimedBytes() {
+        return this.reclaimedBytes;
+    }
+
+    public long getDurationInMillis() {
+        return this.durationInMillis;
+    }
+
+    /**
+     * @return true if anything was changed in asap storage
+     */
+    public boolean changedStorage() {
+        return this.rewrittenEras > 0 || this.mergedEras > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "checked eras: " + this.checkedEras
+                + " | rewritten eras: " + this.rewrittenEras
+                + " | merged eras: " + this.mergedEras
+                + " | removed messages: " + this.removedMessages
+                + " | reclaimed bytes: " + this.reclaimedBytes
+                + " | duration (ms): " + this.durationInMillis;
+    }
+}
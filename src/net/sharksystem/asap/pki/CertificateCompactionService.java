@@ -0,0 +1,84 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.utils.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs compaction of an asap based certificate storage in background. Compaction reads and possibly writes
+ * all past eras. It should not delay start of a peer or an encounter.
+ * <br/>
+ * There is a single background thread. Compactions run one after another.
+ */
+public class CertificateCompactionService {
+    public static final float DEFAULT_DEAD_ENTRY_THRESHOLD = 0.3f;
+    public static final int DEFAULT_SPARSE_ERA_SIZE = 10;
+    public static final int DEFAULT_KEEP_RECENT_ERAS = 3;
+
+    private final ASAPStorageBasedCertificates certificateStorage;
+    private final ExecutorService executor;
+
+    private float deadEntryThreshold = DEFAULT_DEAD_ENTRY_THRESHOLD;
+    private int sparseEraSize = DEFAULT_SPARSE_ERA_SIZE;
+    private int keepRecentEras = DEFAULT_KEEP_RECENT_ERAS;
+
+    public CertificateCompactionService(ASAPStorageBasedCertificates certificateStorage) {
+        this.certificateStorage = certificateStorage;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "certificate compaction");
+            // never keep a peer alive
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param deadEntryThreshold era is rewritten if dead entries / all entries exceeds this value (0..1)
+     */
+    public void setDeadEntryThreshold(float deadEntryThreshold) {
+        this.deadEntryThreshold = deadEntryThreshold;
+    }
+
+    /**
+     * @param sparseEraSize old eras with less certificates are merged
+     */
+    public void setSparseEraSize(int sparseEraSize) {
+        this.sparseEraSize = sparseEraSize;
+    }
+
+    /**
+     * @param keepRecentEras number of most recent eras which are never merged
+     */
+    public void setKeepRecentEras(int keepRecentEras) {
+        this.keepRecentEras = keepRecentEras;
+    }
+
+    /**
+     * Start a compaction in background.
+     */
+    public Future<CertificateCompactionReport> compact() {
+        return this.executor.submit(this::compactNow);
+    }
+
+    /**
+     * Compact in calling thread.
+     */
+    public CertificateCompactionReport compactNow() {
+        CertificateCompactionReport report =
+                this.certificateStorage.compact(this.deadEntryThreshold, this.sparseEraSize, this.keepRecentEras);
+
+        if(report.changedStorage()) {
+            Log.writeLog(this, "certificate storage compacted: " + report);
+        }
+        return report;
+    }
+
+    /**
+     * Running compaction is finished. No further compaction is started.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+}
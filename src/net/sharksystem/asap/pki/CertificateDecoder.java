@@ -0,0 +1,113 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+
+/**
+ * Decodes serialized certificates. Public keys are decoded with first use - certificates were checked when
+ * they were stored. Decoding has no side effects. Messages can be decoded in
+ * parallel. Results keep the order of the messages - they are merged into in memory structures in the
+ * same order as a sequential load would do.
+ */
+class CertificateDecoder {
+    // less messages are decoded in calling thread
+    static final int BATCH_SIZE = 32;
+
+    private final int parallelism;
+    private ForkJoinPool pool = null;
+
+    /**
+     * @param parallelism number of threads - 1 means: decode in calling thread
+     */
+    CertificateDecoder(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * @param addresses storage address of each era - called from several threads
+     * @return decoded certificates at position of their message - null if a message cannot be decoded
+     */
+    ASAPCertificate[] decode(List<CertificateIndexSnapshot.Entry> messages,
+                             IntFunction<ASAPStorageAddress> addresses) {
+        ASAPCertificate[] certificates = new ASAPCertificate[messages.size()];
+
+        if(this.parallelism == 1 || messages.size() <= BATCH_SIZE) {
+            decode(messages, addresses, certificates, 0, messages.size());
+        } else {
+            this.getPool().invoke(new DecodeTask(messages, addresses, certificates, 0, messages.size()));
+        }
+
+        return certificates;
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if(this.pool == null) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        return this.pool;
+    }
+
+    /**
+     * Release threads - decoder can still be used, threads are created again.
+     */
+    synchronized void shutdown() {
+        if(this.pool != null) {
+            this.pool.shutdown();
+            this.pool = null;
+        }
+    }
+
+    private static void decode(List<CertificateIndexSnapshot.Entry> messages,
+                               IntFunction<ASAPStorageAddress> addresses, ASAPCertificate[] certificates,
+                               int from, int to) {
+        for(int i = from; i < to; i++) {
+            CertificateIndexSnapshot.Entry message = messages.get(i);
+            try {
+                certificates[i] = ASAPCertificateImpl.produceLazyCertificate(
+                        message.certificateBytes, addresses.apply(message.era));
+            } catch (IOException e) {
+                Log.writeLog(CertificateDecoder.class, "cannot create certificate: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private static class DecodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<CertificateIndexSnapshot.Entry> messages;
+        private final IntFunction<ASAPStorageAddress> addresses;
+        private final ASAPCertificate[] certificates;
+        private final int from;
+        private final int to;
+
+        DecodeTask(List<CertificateIndexSnapshot.Entry> messages, IntFunction<ASAPStorageAddress> addresses,
+                   ASAPCertificate[] certificates, int from, int to) {
+            this.messages = messages;
+            this.addresses = addresses;
+            this.certificates = certificates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(this.to - this.from <= BATCH_SIZE) {
+                decode(this.messages, this.addresses, this.certificates, this.from, this.to);
+                return;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            invokeAll(new DecodeTask(this.messages, this.addresses, this.certificates, this.from, middle),
+                    new DecodeTask(this.messages, this.addresses, this.certificates, middle, this.to));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.utils.Log;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Serialized certificates of an asap based certificate storage. It is written after certificates were read
+ * from asap storage and read again when the storage is opened the next time. Only messages added after
+ * the snapshot must be read from asap storage.
+ * <br/>
+ * ASAP storage only grows by appending messages to the current era. Last indexed era and the number of
+ * messages already seen in that era are sufficient to find new messages. Any other change (removal of a
+ * certificate) invalidates the snapshot.
+ * <br/>
+ * Format: magic, version, checksum (CRC32) of the content, length of the content, content. Content: owner id,
+ * last indexed era, number of messages in last indexed era, number of certificates, each certificate as era and
+ * serialized certificate.
+ */
+class CertificateIndexSnapshot {
+    static final String FILE_EXTENSION = ".certificateIndex";
+
+    private static final int MAGIC = 0x41434958;
+    static final int VERSION = 1;
+
+    final String ownerID;
+    final int lastEra;
+    final int lastEraMessageCount;
+    final List<Entry> entries;
+
+    static class Entry {
+        final int era;
+        final byte[] certificateBytes;
+
+        Entry(int era, byte[] certificateBytes) {
+            this.era = era;
+            this.certificateBytes = certificateBytes;
+        }
+    }
+
+    CertificateIndexSnapshot(CharSequence ownerID, int lastEra, int lastEraMessageCount, List<Entry> entries) {
+        this.ownerID = ownerID.toString();
+        this.lastEra = lastEra;
+        this.lastEraMessageCount = lastEraMessageCount;
+        this.entries = entries;
+    }
+
+    /**
+     * @return snapshot or null if there is no snapshot or it is corrupted or written by another version
+     */
+    static CertificateIndexSnapshot read(File file) {
+        if(file == null || !file.exists()) return null;
+
+        try(DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if(dis.readInt() != MAGIC) {
+                Log.writeLog(CertificateIndexSnapshot.class, "not a certificate index: " + file);
+                return null;
+            }
+            int version = dis.readInt();
+            if(version != VERSION) {
+                Log.writeLog(CertificateIndexSnapshot.class, "unknown certificate index version: " + version);
+                return null;
+            }
+            long checksum = dis.readLong();
+            int length = dis.readInt();
+            if(length < 0 || length > file.length()) {
+                Log.writeLog(CertificateIndexSnapshot.class, "certificate index corrupted: " + file);
+                return null;
+            }
+
+            byte[] content = new byte[length];
+            dis.readFully(content);
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(content);
+            if(crc32.getValue() != checksum) {
+                Log.writeLog(CertificateIndexSnapshot.class, "certificate index checksum mismatch: " + file);
+                return null;
+            }
+
+            return fromContent(content);
+        } catch (IOException e) {
+            Log.writeLog(CertificateIndexSnapshot.class, "cannot read certificate index: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private static CertificateIndexSnapshot fromContent(byte[] content) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(content));
+        String ownerID = dis.readUTF();
+        int lastEra = dis.readInt();
+        int lastEraMessageCount = dis.readInt();
+        int number = dis.readInt();
+
+        List<Entry> entries = new ArrayList<>(number);
+        for(int i = 0; i < number; i++) {
+            int era = dis.readInt();
+            byte[] certificateBytes = new byte[dis.readInt()];
+            dis.readFully(certificateBytes);
+            entries.add(new Entry(era, certificateBytes));
+        }
+
+        return new CertificateIndexSnapshot(ownerID, lastEra, lastEraMessageCount, entries);
+    }
+
+    /**
+     * Write into a temporary file first which replaces an existing snapshot. A crash never leaves a half
+     * written snapshot.
+     */
+    void write(File file) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream contentStream = new DataOutputStream(baos);
+        contentStream.writeUTF(this.ownerID);
+        contentStream.writeInt(this.lastEra);
+        contentStream.writeInt(this.lastEraMessageCount);
+        contentStream.writeInt(this.entries.size());
+        for(Entry entry : this.entries) {
+            contentStream.writeInt(entry.era);
+            contentStream.writeInt(entry.certificateBytes.length);
+            contentStream.write(entry.certificateBytes);
+        }
+        byte[] content = baos.toByteArray();
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(content);
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try(DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(crc32.getValue());
+            dos.writeInt(content.length);
+            dos.write(content);
+        }
+
+        if(file.exists() && !file.delete()) {
+            tmpFile.delete();
+            throw new IOException("cannot replace certificate index: " + file);
+        }
+        if(!tmpFile.renameTo(file)) {
+            throw new IOException("cannot write certificate index: " + file);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package net.sharksystem.asap.pki;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the stages certificates pass when received certificates are taken into certificate storage:
+ * read from incoming storage, decode, index. Values are summed up over all runs. Time is in nanoseconds;
+ * decoding time is summed up over all worker threads.
+ */
+public class CertificateIngestMetrics {
+    final AtomicLong runs = new AtomicLong();
+    final AtomicLong runNanos = new AtomicLong();
+
+    final AtomicLong readSenders = new AtomicLong();
+    final AtomicLong readMessages = new AtomicLong();
+    final AtomicLong readNanos = new AtomicLong();
+
+    final AtomicLong decodedMessages = new AtomicLong();
+    final AtomicLong knownMessages = new AtomicLong();
+    final AtomicLong failedMessages = new AtomicLong();
+    final AtomicLong decodeNanos = new AtomicLong();
+
+    final AtomicLong indexedCertificates = new AtomicLong();
+    final AtomicLong rejectedCertificates = new AtomicLong();
+    final AtomicLong indexNanos = new AtomicLong();
+
+    public long getRuns() {
+        return this.runs.get();
+    }
+
+    public long getRunNanos() {
+        return this.runNanos.get();
+    }
+
+    /**
+     * @return number of senders whose incoming storage was read
+     */
+    public long getReadSenders() {
+        return this.readSenders.get();
+    }
+
+    /**
+     * @return certificates read from incoming storage - each certificate of a batch message is counted
+     */
+    public long getReadMessages() {
+        return this.readMessages.get();
+    }
+
+    public long getReadNanos() {
+        return this.readNanos.get();
+    }
+
+    public long getDecodedMessages() {
+        return this.decodedMessages.get();
+    }
+
+    /**
+     * @return messages already in storage - not decoded at all
+     */
+    public long getKnownMessages() {
+        return this.knownMessages.get();
+    }
+
+    /**
+     * @return messages which could not be decoded
+     */
+    public long getFailedMessages() {
+        return this.failedMessages.get();
+    }
+
+    public long getDecodeNanos() {
+        return this.decodeNanos.get();
+    }
+
+    /**
+     * @return new certificates - added to memory and owners channel
+     */
+    public long getIndexedCertificates() {
+        return this.indexedCertificates.get();
+    }
+
+    /**
+     * @return certificates which are expired, removed or already in memory
+     */
+    public long getRejectedCertificates() {
+        return this.rejectedCertificates.get();
+    }
+
+    public long getIndexNanos() {
+        return this.indexNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return "runs: " + this.runs + " (" + this.runNanos.get() / 1000 / 1000 + " ms)"
+                + " | read: " + this.readSenders + " senders, " + this.readMessages + " messages ("
+                    + this.readNanos.get() / 1000 / 1000 + " ms)"
+                + " | decode: " + this.decodedMessages + " decoded, " + this.knownMessages + " known, "
+                    + this.failedMessages + " failed (" + this.decodeNanos.get() / 1000 / 1000 + " ms)"
+                + " | index: " + this.indexedCertificates + " new, " + this.rejectedCertificates + " rejected ("
+                    + this.indexNanos.get() / 1000 / 1000 + " ms)";
+    }
+}
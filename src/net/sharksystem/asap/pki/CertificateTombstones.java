@@ -0,0 +1,99 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.utils.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Removed certificates of an asap based certificate storage. Removing a message from an asap chunk means
+ * rewriting the whole chunk. A tombstone is appended instead. Certificates with a tombstone are ignored when
+ * certificates are read from storage.
+ * <br/>
+ * There is a file for each era. It contains a digest of each removed certificate of that era. A tombstone
+ * hides any copy of the certificate in that era.
+ */
+class CertificateTombstones {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int DIGEST_LENGTH = 32;
+
+    private final File folder;
+
+    CertificateTombstones(File folder) {
+        this.folder = folder;
+    }
+
+    static ByteBuffer digest(ASAPCertificate certificate) {
+        return digest(certificate.asBytes());
+    }
+
+    /**
+     * @param serializedCertificate certificate as stored in asap storage - same digest as the certificate
+     */
+    static ByteBuffer digest(byte[] serializedCertificate) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance(DIGEST_ALGORITHM).digest(serializedCertificate));
+        } catch (NoSuchAlgorithmException e) {
+            // each java platform must support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    static boolean isRemoved(Set<ByteBuffer> tombstones, ASAPCertificate certificate) {
+        return !tombstones.isEmpty() && tombstones.contains(digest(certificate));
+    }
+
+    private File getFile(int era) {
+        return new File(this.folder, Integer.toString(era));
+    }
+
+    /**
+     * @return digests of certificates removed from this era - empty set if nothing was removed
+     */
+    Set<ByteBuffer> getTombstones(int era) {
+        File file = this.getFile(era);
+        if(!file.exists()) return Collections.emptySet();
+
+        Set<ByteBuffer> tombstones = new HashSet<>();
+        try(DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long number = file.length() / DIGEST_LENGTH; // ignore a partly written last record
+            for(long i = 0; i < number; i++) {
+                byte[] digest = new byte[DIGEST_LENGTH];
+                dis.readFully(digest);
+                tombstones.add(ByteBuffer.wrap(digest));
+            }
+        } catch (IOException e) {
+            Log.writeLogErr(this, "cannot read tombstones of era " + era + ": " + e.getLocalizedMessage());
+        }
+
+        return tombstones;
+    }
+
+    /**
+     * Append a tombstone for a certificate stored in this era.
+     */
+    synchronized void add(int era, ASAPCertificate certificate) throws IOException {
+        if(!this.folder.exists() && !this.folder.mkdirs()) {
+            throw new IOException("cannot create tombstone folder: " + this.folder);
+        }
+
+        try(FileOutputStream fos = new FileOutputStream(this.getFile(era), true)) {
+            fos.write(digest(certificate).array());
+        }
+    }
+
+    /**
+     * Remove tombstones of an era - to be called after removed certificates were dropped from that era.
+     */
+    synchronized void drop(int era) {
+        File file = this.getFile(era);
+        if(file.exists() && !file.delete()) {
+            Log.writeLogErr(this, "cannot delete tombstones of era " + era);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package net.sharksystem.asap.pki;
+
+import java.security.PublicKey;
+
+/**
+ * A certificate and the public key it is to be verified with - and the result after verification.
+ * @see ASAPCertificateStorage#verifyCertificates(java.util.List)
+ */
+public class CertificateVerification {
+    private final ASAPCertificate certificate;
+    private final PublicKey publicKey;
+    private boolean verified = false;
+    private Exception exception = null;
+
+    /**
+     * @param publicKey public key of issuer
+     */
+    public CertificateVerification(ASAPCertificate certificate, PublicKey publicKey) {
+        this.certificate = certificate;
+        this.publicKey = publicKey;
+    }
+
+    public ASAPCertificate getCertificate() {
+        return this.certificate;
+    }
+
+    public PublicKey getPublicKey() {
+        return this.publicKey;
+    }
+
+    /**
+     * @return true if certificate could be verified with public key - false before verification
+     */
+    public boolean isVerified() {
+        return this.verified;
+    }
+
+    /**
+     * @return exception thrown by verification - certificate or key is broken. null if there was none.
+     * @see ASAPCertificate#verify(PublicKey)
+     */
+    public Exception getException() {
+        return this.exception;
+    }
+
+    void setResult(boolean verified, Exception exception) {
+        this.verified = verified;
+        this.exception = exception;
+    }
+
+    @Override
+    public String toString() {
+        return "issuer: " + this.certificate.getIssuerID() + " | subject: " + this.certificate.getSubjectID()
+                + " | verified: " + this.verified
+                + (this.exception == null ? "" : " | exception: " + this.exception.getLocalizedMessage());
+    }
+}
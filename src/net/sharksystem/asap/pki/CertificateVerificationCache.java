@@ -0,0 +1,126 @@
+package net.sharksystem.asap.pki;
+
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers results of certificate verification. Verifying a signature is expensive. Identity assurance
+ * verifies the same certificates with the same keys again whenever it is recalculated.
+ * <br/>
+ * Entries are keyed by a digest of the serialized certificate (including its signature) and a digest of the
+ * encoded public key. A result can never become wrong - a changed certificate or key has another digest.
+ * Number of entries is limited. Least recently used entries are dropped first.
+ */
+public class CertificateVerificationCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final Map<Key, Boolean> results;
+    private long hits = 0;
+    private long misses = 0;
+
+    public CertificateVerificationCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public CertificateVerificationCache(final int maxEntries) {
+        this.results = new LinkedHashMap<Key, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+                return this.size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Verify certificate with a public key - only if this was not done before.
+     * @see ASAPCertificate#verify(PublicKey)
+     */
+    public boolean verify(ASAPCertificate certificate, PublicKey publicKey)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+
+        byte[] certificateBytes = certificate.asBytes();
+        if(publicKey == null || certificateBytes == null) {
+            // nothing to identify this pair
+            return certificate.verify(publicKey);
+        }
+
+        Key key = new Key(certificateBytes, publicKey);
+        synchronized(this) {
+            Boolean result = this.results.get(key);
+            if(result != null) {
+                this.hits++;
+                return result;
+            }
+            this.misses++;
+        }
+
+        // verify outside the lock - exceptions are not cached
+        boolean verified = certificate.verify(publicKey);
+
+        synchronized(this) {
+            this.results.put(key, verified);
+        }
+
+        return verified;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized int size() {
+        return this.results.size();
+    }
+
+    public synchronized void clear() {
+        this.results.clear();
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "verification cache: entries: " + this.results.size()
+                + " | hits: " + this.hits + " | misses: " + this.misses;
+    }
+
+    private static class Key {
+        private final byte[] certificateDigest;
+        private final byte[] publicKeyDigest;
+        private final int hashCode;
+
+        Key(byte[] certificateBytes, PublicKey publicKey) throws NoSuchAlgorithmException {
+            MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            this.certificateDigest = messageDigest.digest(certificateBytes);
+            // digest() resets message digest
+            this.publicKeyDigest = messageDigest.digest(publicKey.getEncoded());
+            this.hashCode = 31 * Arrays.hashCode(this.certificateDigest) + Arrays.hashCode(this.publicKeyDigest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return this.hashCode == other.hashCode
+                    && Arrays.equals(this.certificateDigest, other.certificateDigest)
+                    && Arrays.equals(this.publicKeyDigest, other.publicKeyDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
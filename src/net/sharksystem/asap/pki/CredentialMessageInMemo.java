@@ -13,10 +13,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
-import java.security.spec.X509EncodedKeySpec;
 import java.util.Random;
 
 public class CredentialMessageInMemo implements CredentialMessage {
@@ -117,10 +115,8 @@ public class CredentialMessageInMemo implements CredentialMessage {
         //byte[] publicKeyBytes = new byte[length];
         //dis.read(publicKeyBytes); // read public key bytes
 
-        KeyFactory keyFactory = null;
         try {
-            keyFactory = KeyFactory.getInstance(algorithm);
-            this.publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publicKeyBytes));
+            this.publicKey = KeyHelper.decodePublicKey(algorithm, publicKeyBytes);
         } catch (Exception e) {
             throw new ASAPSecurityException(e.getLocalizedMessage());
         }
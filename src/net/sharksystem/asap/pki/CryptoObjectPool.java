@@ -0,0 +1,68 @@
+package net.sharksystem.asap.pki;
+
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps key factories and signature objects for reuse. getInstance() looks for a provider with each call -
+ * that costs more than decoding a key or hashing a certificate.
+ * <br/>
+ * Objects are borrowed and released - there are no thread locals. Any number of threads can use a pool;
+ * there are never more idle objects than the pool size. Objects are created for any algorithm
+ * string - unknown algorithms fail like getInstance() does.
+ * <br/>
+ * Release an object only if it was used without an exception. Signature objects keep the key they were
+ * initialized with - don't release objects initialized for signing.
+ */
+class CryptoObjectPool<T> {
+    static final int DEFAULT_MAX_IDLE = 16;
+
+    static final CryptoObjectPool<KeyFactory> KEY_FACTORIES = new CryptoObjectPool<>(KeyFactory::getInstance);
+    static final CryptoObjectPool<Signature> SIGNATURES = new CryptoObjectPool<>(Signature::getInstance);
+
+    interface Factory<T> {
+        T create(String algorithm) throws NoSuchAlgorithmException;
+    }
+
+    private final Factory<T> factory;
+    private final int maxIdle;
+    private final ConcurrentMap<String, BlockingQueue<T>> idleObjects = new ConcurrentHashMap<>();
+
+    CryptoObjectPool(Factory<T> factory) {
+        this(factory, DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param maxIdle maximum number of idle objects for each algorithm
+     */
+    CryptoObjectPool(Factory<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    T borrow(String algorithm) throws NoSuchAlgorithmException {
+        BlockingQueue<T> idle = this.idleObjects.get(algorithm);
+        T object = idle == null ? null : idle.poll();
+        return object != null ? object : this.factory.create(algorithm);
+    }
+
+    void release(String algorithm, T object) {
+        BlockingQueue<T> idle = this.idleObjects.get(algorithm);
+        if(idle == null) {
+            // first object of that algorithm - borrow() succeeded, algorithm is known
+            idle = this.idleObjects.computeIfAbsent(algorithm, a -> new ArrayBlockingQueue<>(this.maxIdle));
+        }
+        // pool is full - drop it
+        idle.offer(object);
+    }
+
+    int idle(String algorithm) {
+        BlockingQueue<T> idle = this.idleObjects.get(algorithm);
+        return idle == null ? 0 : idle.size();
+    }
+}
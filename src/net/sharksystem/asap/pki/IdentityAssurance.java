@@ -0,0 +1,38 @@
+package net.sharksystem.asap.pki;
+
+import java.util.List;
+
+/**
+ * Identity assurance of a peer from owners perspective: a value and the certification path it is based on.
+ */
+class IdentityAssurance {
+    private int value = -1;
+    final List<CharSequence> path;
+    float floatValue;
+
+    IdentityAssurance(int value, List<CharSequence> path) {
+        this.value = value;
+        this.path = path;
+    }
+
+    IdentityAssurance(float floatValue, List<CharSequence> path) {
+        this.floatValue = floatValue;
+        this.path = path;
+    }
+
+    int getValue() {
+        if(this.value < 0) {
+            if(this.floatValue >= 0) {
+                // scale, round and return
+                float identityAssuranceFloat = this.floatValue;
+                identityAssuranceFloat *= 10; //scale
+                this.value = (int) identityAssuranceFloat; // cut
+                if( (identityAssuranceFloat - this.value) >= 0.5) {
+                    this.value++; // round
+                };
+            }
+        }
+
+        return this.value;
+    }
+}
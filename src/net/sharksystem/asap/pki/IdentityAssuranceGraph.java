@@ -0,0 +1,225 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPKeyStore;
+import net.sharksystem.asap.persons.OtherPerson;
+import net.sharksystem.asap.persons.PersonInformationStore;
+import net.sharksystem.utils.Log;
+
+import java.security.PublicKey;
+import java.util.*;
+
+/**
+ * Calculates identity assurance of each peer that can be reached from owner by a chain of certificates.
+ * <br/>
+ * Nodes are certificates. There is an edge from certificate A to certificate B if B was issued by
+ * subject of A and B can be verified with public key in A. Certificates issued by owner are starting points.
+ * <br/>
+ * Identity assurance of a chain is the product of (1 - failure rate) of all issuers except owner. Best chain has
+ * the highest product. That is the shortest path if each edge is weighted with -log(1 - failure rate of issuer).
+ * All weights are non-negative. Dijkstra finds best chain for each subject in a single pass. A certificate
+ * is verified at most once with each key of its issuer. Certificates issued by the same peer are verified as a
+ * batch. Results of earlier calculations are taken from verification cache.
+ */
+class IdentityAssuranceGraph {
+    private final CharSequence ownerID;
+    private final ASAPCertificateStorage certificateStorage;
+    private final ASAPKeyStore keyStore;
+    private final PersonInformationStore personInformationStore;
+
+    // results
+    private final Map<PeerID, IdentityAssurance> identityAssurances = new HashMap<>();
+    private final Set<PeerID> unverifiableDirectCertificateSubjects = new HashSet<>();
+    private final List<ASAPCertificate> brokenCertificates = new ArrayList<>();
+
+    // graph state
+    private final Map<ASAPCertificate, Node> nodes = new IdentityHashMap<>();
+    private final Map<PeerID, Float> successProbabilities = new HashMap<>();
+    private final Map<PeerID, List<PublicKey>> expandedKeys = new HashMap<>();
+
+    private class Node implements Comparable<Node> {
+        final ASAPCertificate certificate;
+        final Node predecessor; // certificate of issuer - null if issued by owner
+        final double distance;
+
+        Node(ASAPCertificate certificate, Node predecessor, double distance) {
+            this.certificate = certificate;
+            this.predecessor = predecessor;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            return Double.compare(this.distance, other.distance);
+        }
+    }
+
+    IdentityAssuranceGraph(CharSequence ownerID, ASAPCertificateStorage certificateStorage,
+                           ASAPKeyStore keyStore, PersonInformationStore personInformationStore) {
+        this.ownerID = ownerID;
+        this.certificateStorage = certificateStorage;
+        this.keyStore = keyStore;
+        this.personInformationStore = personInformationStore;
+    }
+
+    /**
+     * @return identity assurance of each reachable peer. Peers not in this map cannot be reached from owner.
+     * @throws ASAPSecurityException owners public key not available
+     */
+    Map<PeerID, IdentityAssurance> calculate() throws ASAPSecurityException {
+        PriorityQueue<Node> queue = new PriorityQueue<>();
+
+        this.addCertificatesIssuedByOwner(queue);
+
+        while(!queue.isEmpty()) {
+            Node node = queue.poll();
+            if(this.nodes.get(node.certificate) != node) continue; // outdated entry - better path already found
+
+            CharSequence subjectID = node.certificate.getSubjectID();
+            PeerID subject = PeerID.of(subjectID);
+
+            // first certificate taken from queue has best path to its subject
+            if(!this.identityAssurances.containsKey(subject)) {
+                this.identityAssurances.put(subject, this.createIdentityAssurance(node));
+            }
+
+            float successProbability = this.getSuccessProbability(subject);
+            if(successProbability <= 0) continue; // anything signed by this peer is worthless
+
+            PublicKey publicKey = node.certificate.getPublicKey();
+            // same subject and key reached on a better path before - would verify same certificates
+            if(!this.markExpanded(subject, publicKey)) continue;
+
+            double distance = node.distance - Math.log(successProbability);
+
+            List<CertificateVerification> verifications = new ArrayList<>();
+            for(ASAPCertificate certificate : this.certificateStorage.getCertificatesByIssuerID(subjectID)) {
+                if(PeerID.sameID(certificate.getSubjectID(), this.ownerID)) continue;
+
+                Node known = this.nodes.get(certificate);
+                if(known != null && known.distance <= distance) continue;
+
+                verifications.add(new CertificateVerification(certificate, publicKey));
+            }
+            // a peer can have issued lots of certificates - verify them at once
+            this.certificateStorage.verifyCertificates(verifications);
+
+            for(CertificateVerification verification : verifications) {
+                if(verification.getException() != null) {
+                    Log.writeLogErr(this,"cannot verify certificate: "
+                            + verification.getException().getLocalizedMessage());
+                }
+                if(!verification.isVerified()) continue;
+
+                Node next = new Node(verification.getCertificate(), node, distance);
+                this.nodes.put(verification.getCertificate(), next);
+                queue.add(next);
+            }
+        }
+
+        return this.identityAssurances;
+    }
+
+    /**
+     * @return subjects with a certificate issued by owner which could not be verified - that's serious
+     */
+    Set<PeerID> getUnverifiableDirectCertificateSubjects() {
+        return this.unverifiableDirectCertificateSubjects;
+    }
+
+    /**
+     * @return certificates issued by owner which caused an exception during verification - should be removed
+     */
+    List<ASAPCertificate> getBrokenCertificates() {
+        return this.brokenCertificates;
+    }
+
+    private void addCertificatesIssuedByOwner(PriorityQueue<Node> queue) throws ASAPSecurityException {
+        Collection<ASAPCertificate> directCertificates = this.certificateStorage.getCertificatesByIssuerID(this.ownerID);
+        if(directCertificates.isEmpty()) return;
+
+        PublicKey ownerPublicKey = this.keyStore.getPublicKey();
+
+        List<CertificateVerification> verifications = new ArrayList<>();
+        for(ASAPCertificate certificate : directCertificates) {
+            if(PeerID.sameID(certificate.getSubjectID(), this.ownerID)) continue;
+            verifications.add(new CertificateVerification(certificate, ownerPublicKey));
+        }
+        this.certificateStorage.verifyCertificates(verifications);
+
+        for(CertificateVerification verification : verifications) {
+            ASAPCertificate certificate = verification.getCertificate();
+            PeerID subject = PeerID.of(certificate.getSubjectID());
+
+            if(verification.isVerified()) {
+                Node node = new Node(certificate, null, 0);
+                this.nodes.put(certificate, node);
+                queue.add(node);
+
+                this.unverifiableDirectCertificateSubjects.remove(subject);
+                ArrayList<CharSequence> directPath = new ArrayList<>();
+                directPath.add(this.ownerID);
+                this.identityAssurances.put(subject,
+                        new IdentityAssurance(OtherPerson.HIGHEST_IDENTITY_ASSURANCE_LEVEL, directPath));
+                continue;
+            }
+
+            if(verification.getException() != null) {
+                Log.writeLogErr(this, "cannot verify a direct certificate - remove it: "
+                        + verification.getException().getLocalizedMessage());
+                this.brokenCertificates.add(certificate);
+            }
+
+            if(!this.identityAssurances.containsKey(subject)) {
+                this.unverifiableDirectCertificateSubjects.add(subject);
+            }
+        }
+    }
+
+    private boolean markExpanded(PeerID subject, PublicKey publicKey) {
+        List<PublicKey> keys = this.expandedKeys.get(subject);
+        if(keys == null) {
+            keys = new ArrayList<>(1); // usually one key per peer
+            this.expandedKeys.put(subject, keys);
+        } else if(keys.contains(publicKey)) {
+            return false;
+        }
+        keys.add(publicKey);
+        return true;
+    }
+
+    private float getSuccessProbability(PeerID peerID) {
+        Float successProbability = this.successProbabilities.get(peerID);
+        if(successProbability == null) {
+            // convert failure rate number to failure probability something between 0 and 1.
+            float failureProbability = ((float) this.personInformationStore.getSigningFailureRate(peerID)) / 10;
+            successProbability = 1 - failureProbability;
+            this.successProbabilities.put(peerID, successProbability);
+        }
+        return successProbability;
+    }
+
+    /**
+     * Path starts with peer in question and ends with peer whose certificate is issued by owner - owner is not
+     * part of it. Probability is multiplied in same order.
+     */
+    private IdentityAssurance createIdentityAssurance(Node node) {
+        List<CharSequence> path = new ArrayList<>();
+        path.add(node.certificate.getSubjectID());
+
+        float accumulatedIdentityProbability = -1;
+        for(Node issuerNode = node.predecessor; issuerNode != null; issuerNode = issuerNode.predecessor) {
+            CharSequence issuerID = issuerNode.certificate.getSubjectID();
+            path.add(issuerID);
+
+            float successProbability = this.getSuccessProbability(PeerID.of(issuerID));
+            if(accumulatedIdentityProbability < 0) {
+                accumulatedIdentityProbability = successProbability;
+            } else {
+                accumulatedIdentityProbability *= successProbability;
+            }
+        }
+
+        return new IdentityAssurance(accumulatedIdentityProbability, path);
+    }
+}
@@ -6,7 +6,7 @@ import java.io.IOException;
 import java.util.*;
 
 public class InMemoCertificates extends InMemoCertificatesAndIdentityAssurance {
-    Map<CharSequence, Set<ASAPCertificate>> certificatesByOwnerIDMap = new HashMap<>();
+    Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap = new HashMap<>();
 
     public InMemoCertificates(CharSequence ownerID, CharSequence ownerName) {
         super(ownerID, ownerName);
@@ -14,15 +14,23 @@ public class InMemoCertificates extends InMemoCertificatesAndIdentityAssurance {
 
     @Override
     protected ASAPStorageAddress storeCertificateInStorage(ASAPCertificate cert2store) throws IOException {
-        CharSequence ownerID = cert2store.getSubjectID();
+        PeerID ownerID = PeerID.of(cert2store.getSubjectID());
         Set<ASAPCertificate> certificates = this.certificatesByOwnerIDMap.get(ownerID);
         if(certificates == null) {
             certificates = new HashSet<>();
             this.certificatesByOwnerIDMap.put(ownerID, certificates);
         }
 
+        for(ASAPCertificate cert : certificates) {
+            if(cert.isIdentical(cert2store)) return this.getAddress(); // already in there
+        }
+
         certificates.add(cert2store);
 
+        return this.getAddress();
+    }
+
+    private ASAPStorageAddress getAddress() {
         return new ASAPStorageAddressImpl(
                 ASAPCertificateStorage.PKI_APP_NAME,
                 ASAPCertificate.ASAP_CERTIFICATE_URI,
@@ -31,24 +39,30 @@ public class InMemoCertificates extends InMemoCertificatesAndIdentityAssurance {
 
     @Override
     protected void removeCertificateFromStorage(ASAPCertificate cert2remove) throws IOException {
-        CharSequence ownerID = cert2remove.getSubjectID();
+        PeerID ownerID = PeerID.of(cert2remove.getSubjectID());
         Set<ASAPCertificate> certificates = this.certificatesByOwnerIDMap.get(ownerID);
         if(certificates != null) {
-            certificates.remove(cert2remove);
+            Iterator<ASAPCertificate> certIter = certificates.iterator();
+            while(certIter.hasNext()) {
+                ASAPCertificate cert = certIter.next();
+                if(cert == cert2remove || cert.isIdentical(cert2remove)) {
+                    certIter.remove();
+                }
+            }
         }
     }
 
     @Override
-    protected void readCertificatesFromStorage(Map<CharSequence, Set<ASAPCertificate>> map2Fill) {
-        // make a copy
-        for(CharSequence ownerName : this.certificatesByOwnerIDMap.keySet()) {
-            map2Fill.put(ownerName, this.certificatesByOwnerIDMap.get(ownerName));
+    protected void readCertificatesFromStorage(Map<PeerID, Set<ASAPCertificate>> map2Fill) {
+        // make a copy - sets included, in memory structures are changed independently
+        for(PeerID ownerName : this.certificatesByOwnerIDMap.keySet()) {
+            map2Fill.put(ownerName, new HashSet<>(this.certificatesByOwnerIDMap.get(ownerName)));
         }
     }
 
     @Override
     protected Collection<ASAPCertificate> readReceivedCertificatesFromExternalMemory(
-            Map<CharSequence, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
+            Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap) {
         return new ArrayList<>();
     }
 
@@ -13,13 +13,20 @@ import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.SignatureException;
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 
 public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCertificateStorage {
     private final CharSequence ownerID;
     private final CharSequence ownerName;
 
-    private Map<CharSequence, Set<ASAPCertificate>> certificatesBySubjectIDMap = null;
+    private Map<PeerID, Set<ASAPCertificate>> certificatesBySubjectIDMap = null;
+
+    // secondary indexes - kept in sync with subject map
+    // issuer id -> certificates
+    private Map<PeerID, Set<ASAPCertificate>> certificatesByIssuerIDMap = null;
+    // (issuer id, subject id) -> certificate
+    private Map<IssuerSubjectKey, ASAPCertificate> certificateByIssuerAndSubjectMap = null;
 
     public InMemoCertificatesAndIdentityAssurance(CharSequence ownerID, CharSequence ownerName) {
         this.ownerID = ownerID;
@@ -37,52 +44,246 @@ public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCert
     }
 
     boolean isExpired(ASAPCertificate cert) {
-        return System.currentTimeMillis() > cert.getValidUntil().getTimeInMillis();
+        return System.currentTimeMillis() > cert.getValidUntilMillis();
     }
 
     public void syncIdentityAssurance() {
         this.userIdentityAssurance = null;
+        this.changeCounter++;
     }
 
+    @Override
+    public long getChangeCounter() {
+        return this.changeCounter;
+    }
+
+    /**
+     * In memory structures are kept in sync with any store or remove operation. There is no need to call this
+     * method after writing. It is a recovery operation: Everything is re-read from storage with next access.
+     */
     public void dropInMemoCache() {
         Log.writeLog(this, this.ownerName.toString(), "drop in memo cache");
         this.certificatesBySubjectIDMap = null;
+        this.certificatesByIssuerIDMap = null;
+        this.certificateByIssuerAndSubjectMap = null;
         this.syncIdentityAssurance();
     }
 
+    // set by background threads - in memory structures are not thread safe, they are dropped by next reader
+    private volatile boolean inMemoStale = false;
+
+    /**
+     * Same as {@link #dropInMemoCache()} but can be called from any thread, e.g. by compaction. In memory
+     * structures are not touched here. They are dropped and read again with next access.
+     */
+    protected void markInMemoStale() {
+        this.inMemoStale = true;
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //                                       getter on certificate map                                         //
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private Map<CharSequence, Set<ASAPCertificate>> getCertificatesMap() {
+    private Map<PeerID, Set<ASAPCertificate>> getCertificatesMap() {
+        if(this.inMemoStale) {
+            this.inMemoStale = false;
+            this.dropInMemoCache();
+        }
+
         if(this.certificatesBySubjectIDMap == null) {
             this.certificatesBySubjectIDMap = new HashMap<>();
             this.readCertificatesFromStorage(this.certificatesBySubjectIDMap);
+
+            // build secondary indexes
+            this.certificatesByIssuerIDMap = new HashMap<>();
+            this.certificateByIssuerAndSubjectMap = new HashMap<>();
+            for(Set<ASAPCertificate> certSet : this.certificatesBySubjectIDMap.values()) {
+                this.addToSecondaryIndexes(certSet);
+            }
         }
 
         return this.certificatesBySubjectIDMap;
     }
 
+    private static class IssuerSubjectKey {
+        private final PeerID issuerID;
+        private final PeerID subjectID;
+        private final int hashCode;
+
+        IssuerSubjectKey(CharSequence issuerID, CharSequence subjectID) {
+            this.issuerID = PeerID.of(issuerID);
+            this.subjectID = PeerID.of(subjectID);
+            this.hashCode = 31 * this.issuerID.hashCode() + this.subjectID.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof IssuerSubjectKey)) return false;
+            IssuerSubjectKey other = (IssuerSubjectKey) o;
+            // interned
+            return this.issuerID == other.issuerID && this.subjectID == other.subjectID;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+    /**
+     * Add a certificate to the in memory structures - if they are already set up. Nothing happens otherwise.
+     * They will be read from storage with next access.
+     */
+    private void addToInMemo(ASAPCertificate cert) {
+        if(this.certificatesBySubjectIDMap == null) return;
+
+        PeerID subjectID = PeerID.of(cert.getSubjectID());
+        Set<ASAPCertificate> certSet = this.certificatesBySubjectIDMap.get(subjectID);
+        if(certSet == null) {
+            certSet = new HashSet<>();
+            this.certificatesBySubjectIDMap.put(subjectID, certSet);
+        } else {
+            for(ASAPCertificate c : certSet) {
+                if(c == cert || c.isIdentical(cert)) return; // already in there
+            }
+        }
+
+        certSet.add(cert);
+        this.addToSecondaryIndexes(Collections.singletonList(cert));
+    }
+
+    private void removeFromInMemo(ASAPCertificate cert) {
+        if(this.certificatesBySubjectIDMap == null) return;
+
+        PeerID subjectID = PeerID.of(cert.getSubjectID());
+        Set<ASAPCertificate> certSet = this.certificatesBySubjectIDMap.get(subjectID);
+        if(certSet == null) return;
+
+        // find object in memory - could be another object describing the same certificate
+        ASAPCertificate inMemoCert = null;
+        for(ASAPCertificate c : certSet) {
+            if(c == cert || c.isIdentical(cert)) {
+                inMemoCert = c;
+                break;
+            }
+        }
+        if(inMemoCert == null) return;
+
+        certSet.remove(inMemoCert);
+        if(certSet.isEmpty()) this.certificatesBySubjectIDMap.remove(subjectID);
+
+        PeerID key = PeerID.of(inMemoCert.getIssuerID());
+        Set<ASAPCertificate> issuerSet = this.certificatesByIssuerIDMap.get(key);
+        if(issuerSet != null) {
+            issuerSet.remove(inMemoCert);
+            if(issuerSet.isEmpty()) this.certificatesByIssuerIDMap.remove(key);
+        }
+
+        IssuerSubjectKey issuerSubjectKey = new IssuerSubjectKey(inMemoCert.getIssuerID(), inMemoCert.getSubjectID());
+        if(this.certificateByIssuerAndSubjectMap.get(issuerSubjectKey) == inMemoCert) {
+            this.certificateByIssuerAndSubjectMap.remove(issuerSubjectKey);
+            // there could be another certificate of this issuer for this subject
+            for(ASAPCertificate c : certSet) {
+                if(new IssuerSubjectKey(c.getIssuerID(), c.getSubjectID()).equals(issuerSubjectKey)) {
+                    this.certificateByIssuerAndSubjectMap.put(issuerSubjectKey, c);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void addToSecondaryIndexes(Collection<ASAPCertificate> certificates) {
+        for(ASAPCertificate cert : certificates) {
+            PeerID key = PeerID.of(cert.getIssuerID());
+            Set<ASAPCertificate> certSet = this.certificatesByIssuerIDMap.get(key);
+            if(certSet == null) {
+                certSet = new HashSet<>();
+                this.certificatesByIssuerIDMap.put(key, certSet);
+            }
+            certSet.add(cert);
+
+            // keep first one if there are more certificates of an issuer for the same subject
+            IssuerSubjectKey issuerSubjectKey = new IssuerSubjectKey(cert.getIssuerID(), cert.getSubjectID());
+            if(!this.certificateByIssuerAndSubjectMap.containsKey(issuerSubjectKey)) {
+                this.certificateByIssuerAndSubjectMap.put(issuerSubjectKey, cert);
+            }
+        }
+    }
+
     public PublicKey getPublicKey(CharSequence peerID) throws SharkException {
+        // cannot be calculated without key store - take what is known
+        Map<PeerID, IdentityAssurance> identityAssurances = this.userIdentityAssurance;
+        return this.selectPublicKey(peerID, issuerID -> {
+            IdentityAssurance identityAssurance =
+                    identityAssurances == null ? null : identityAssurances.get(PeerID.of(issuerID));
+            return identityAssurance != null
+                    ? identityAssurance.getValue() : OtherPerson.LOWEST_IDENTITY_ASSURANCE_LEVEL;
+        });
+    }
+
+    public PublicKey getPublicKey(CharSequence peerID, ASAPKeyStore keyStore,
+                                  PersonInformationStore personInformationStore) throws ASAPSecurityException {
+        return this.selectPublicKey(peerID, issuerID -> {
+            try {
+                return this.getIdentityAssurances(issuerID, keyStore, personInformationStore);
+            } catch (ASAPSecurityException e) {
+                return OtherPerson.LOWEST_IDENTITY_ASSURANCE_LEVEL;
+            }
+        });
+    }
+
+    private PublicKey selectPublicKey(CharSequence peerID, ToIntFunction<CharSequence> issuerIdentityAssurance)
+            throws ASAPSecurityException {
+
+        ASAPCertificate bestCertificate = null;
+        int bestIdentityAssurance = OtherPerson.LOWEST_IDENTITY_ASSURANCE_LEVEL - 1;
+
         Collection<ASAPCertificate> certs = this.getCertificatesBySubjectID(peerID);
-        if(certs == null || certs.isEmpty())
-            throw new SharkException("no certificate issued for this peer found: " + peerID);
+        if(certs != null) {
+            for(ASAPCertificate cert : certs) {
+                // a key that cannot be decoded is worth nothing
+                if(cert.getPublicKey() == null) continue;
+
+                int identityAssurance = PeerID.sameID(cert.getIssuerID(), this.ownerID)
+                        ? OtherPerson.HIGHEST_IDENTITY_ASSURANCE_LEVEL
+                        : issuerIdentityAssurance.applyAsInt(cert.getIssuerID());
+
+                if(bestCertificate == null || identityAssurance > bestIdentityAssurance
+                    || (identityAssurance == bestIdentityAssurance && isPreferred(cert, bestCertificate))) {
+                    bestCertificate = cert;
+                    bestIdentityAssurance = identityAssurance;
+                }
+            }
+        }
+
+        if(bestCertificate == null) {
+            throw new ASAPSecurityException("no certificate with a usable key issued for this peer found: "
+                    + peerID);
+        }
+        return bestCertificate.getPublicKey();
+    }
 
-        if(certs.size() > 1)
-            Log.writeLog(this,
-                    "more than one certificate issued for a peer, took randomly first one: " + peerID);
+    /**
+     * @return true if certificate is newer than other one or was issued by peer with smaller id
+     */
+    private static boolean isPreferred(ASAPCertificate cert, ASAPCertificate other) {
+        long validSince = cert.getValidSinceMillis();
+        long otherValidSince = other.getValidSinceMillis();
+        if(validSince != otherValidSince) return validSince > otherValidSince;
 
-        return certs.iterator().next().getPublicKey();
+        return cert.getIssuerID().toString().compareTo(other.getIssuerID().toString()) < 0;
     }
 
     @Override
     public Collection<ASAPCertificate> getCertificatesBySubjectID(CharSequence subjectID) {
         this.getCertificatesMap();
-        Set<ASAPCertificate> asapCertificates = this.getCertificatesMap().get(subjectID);
+        Set<ASAPCertificate> asapCertificates = this.getCertificatesMap().get(PeerID.of(subjectID));
         if(asapCertificates == null) {
-            asapCertificates = new HashSet<>();
+            return new HashSet<>();
         }
-        return asapCertificates;
+        // a copy - in memory structures change with each store and remove
+        return new HashSet<>(asapCertificates);
     }
 
     @Override
@@ -93,16 +294,13 @@ public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCert
     @Override
     public Collection<ASAPCertificate> getCertificatesByIssuerID(CharSequence issuerID) {
         this.getCertificatesMap();
-        Set<ASAPCertificate> certSetIssuer = new HashSet<>();
-        for(Set<ASAPCertificate> certSet : this.getCertificatesMap().values()) {
-            for(ASAPCertificate cert : certSet) {
-                if(cert.getIssuerID().toString().equalsIgnoreCase(issuerID.toString())) {
-                    certSetIssuer.add(cert);
-                }
-            }
+        Set<ASAPCertificate> certSetIssuer = this.certificatesByIssuerIDMap.get(PeerID.of(issuerID));
+        if(certSetIssuer == null) {
+            return new HashSet<>();
         }
 
-        return certSetIssuer;
+        // a copy - callers must not change the index
+        return new HashSet<>(certSetIssuer);
     }
 
     public Set<ASAPCertificate> getAllCertificates() {
@@ -125,20 +323,34 @@ public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCert
     public ASAPCertificate getCertificateByIssuerAndSubjectID(
             CharSequence issuerID, CharSequence subjectID) throws ASAPSecurityException {
 
-        Collection<ASAPCertificate> certificateBySubject = this.getCertificatesBySubjectID(subjectID);
+        this.getCertificatesMap();
+        ASAPCertificate certificate =
+                this.certificateByIssuerAndSubjectMap.get(new IssuerSubjectKey(issuerID, subjectID));
 
-        if(certificateBySubject == null || certificateBySubject.size() < 1) {
+        if(certificate == null) {
             throw new ASAPSecurityException("no certificate found");
         }
 
-        for(ASAPCertificate c : certificateBySubject) {
-            if(c.getIssuerID().equals(issuerID)) {
-                // got it
-                return c;
+        return certificate;
+    }
+
+    @Override
+    public Map<CharSequence, ASAPCertificate> getCertificatesByIssuersAndSubjectID(
+            Collection<CharSequence> issuerIDs, CharSequence subjectID) {
+
+        this.getCertificatesMap();
+        Map<CharSequence, ASAPCertificate> certificatesByIssuer = new HashMap<>();
+        if(issuerIDs == null) return certificatesByIssuer;
+
+        for(CharSequence issuerID : issuerIDs) {
+            ASAPCertificate certificate =
+                    this.certificateByIssuerAndSubjectMap.get(new IssuerSubjectKey(issuerID, subjectID));
+            if(certificate != null) {
+                certificatesByIssuer.put(issuerID, certificate);
             }
         }
 
-        throw new ASAPSecurityException("no certificate found");
+        return certificatesByIssuer;
     }
 
 
@@ -149,8 +361,9 @@ public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCert
         Collection<ASAPCertificate> newCerts =
                 this.readReceivedCertificatesFromExternalMemory(this.getCertificatesMap());
         if(!newCerts.isEmpty()) {
+            this.addToSecondaryIndexes(newCerts);
             // reset identity assurance - is most likely changed
-            this.userIdentityAssurance = null;
+            this.syncIdentityAssurance();
         }
 
         return newCerts;
@@ -168,24 +381,46 @@ public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCert
     }
 
     public void removeCertificate(Collection<ASAPCertificate> certs2remove) throws IOException {
-        // drop caches
-        this.certificatesBySubjectIDMap = null;
-        this.userIdentityAssurance = null;
+        if(certs2remove == null) return;
 
         try {
             this.removeCertificatesFromStorage(certs2remove);
         } catch (IOException e) {
             Log.writeLog(this, "cannot remove certificate: " + e.getLocalizedMessage());
         }
+
+        // keep in memory structures in sync
+        for(ASAPCertificate cert2remove : certs2remove) {
+            this.removeFromInMemo(cert2remove);
+        }
+        this.syncIdentityAssurance();
     }
 
     @Override
     public ASAPStorageAddress storeCertificate(ASAPCertificate asapCertificate) throws IOException {
-        // drop cache
-        this.certificatesBySubjectIDMap = null;
-        this.userIdentityAssurance = null;
+        ASAPStorageAddress asapStorageAddress = this.storeCertificateInStorage(asapCertificate);
+
+        // keep in memory structures in sync
+        this.addToInMemo(asapCertificate);
+        this.syncIdentityAssurance();
+
+        return asapStorageAddress;
+    }
+
+    @Override
+    public List<ASAPStorageAddress> storeCertificates(Collection<ASAPCertificate> asapCertificates)
+            throws IOException {
+        List<ASAPStorageAddress> asapStorageAddresses = new ArrayList<>();
+        try {
+            for(ASAPCertificate asapCertificate : asapCertificates) {
+                asapStorageAddresses.add(this.storeCertificateInStorage(asapCertificate));
+                this.addToInMemo(asapCertificate);
+            }
+        } finally {
+            this.syncIdentityAssurance();
+        }
 
-        return storeCertificateInStorage(asapCertificate);
+        return asapStorageAddresses;
     }
 
     protected abstract ASAPStorageAddress storeCertificateInStorage(ASAPCertificate cert2store)
@@ -201,57 +436,59 @@ public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCert
 
     protected abstract void removeCertificateFromStorage(ASAPCertificate cert2remove) throws IOException;
 
-    protected abstract void readCertificatesFromStorage(Map<CharSequence, Set<ASAPCertificate>> certificatesByOwnerIDMap);
+    protected abstract void readCertificatesFromStorage(Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap);
 
     protected abstract Collection<ASAPCertificate>
-    readReceivedCertificatesFromExternalMemory(Map<CharSequence, Set<ASAPCertificate>> certificatesByOwnerIDMap);
+    readReceivedCertificatesFromExternalMemory(Map<PeerID, Set<ASAPCertificate>> certificatesByOwnerIDMap);
 
     //////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //                                            identity assurance                                            //
     //////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
-    private class IdentityAssurance {
-        private int value = -1;
-        final List<CharSequence> path;
-        float floatValue;
+    private IdentityAssurance worstIdentityAssurance =
+            new IdentityAssurance(OtherPerson.LOWEST_IDENTITY_ASSURANCE_LEVEL, new ArrayList<>());
 
-        IdentityAssurance(int value, List<CharSequence> path) {
-            this.value = value;
-            this.path = path;
-        }
+    private Map<PeerID, IdentityAssurance> userIdentityAssurance; // cache
+    private volatile long changeCounter = 0;
+    private Set<PeerID> unverifiableDirectCertificateSubjects;
 
-        IdentityAssurance(float floatValue, List<CharSequence> path) {
-            this.floatValue = floatValue;
-            this.path = path;
-        }
+    private final CertificateVerificationCache verificationCache = new CertificateVerificationCache();
 
-        int getValue() {
-            if(this.value < 0) {
-                if(this.floatValue >= 0) {
-                    // scale, round and return
-                    float identityAssuranceFloat = this.floatValue;
-                    identityAssuranceFloat *= 10; //scale
-                    this.value = (int) identityAssuranceFloat; // cut
-                    if( (identityAssuranceFloat - this.value) >= 0.5) {
-                        this.value++; // round
-                    };
-                }
-            }
+    @Override
+    public CertificateVerificationCache getVerificationCache() {
+        return this.verificationCache;
+    }
 
-            return this.value;
-        }
+    public static final int DEFAULT_VERIFY_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private CertificateBatchVerifier batchVerifier =
+            new CertificateBatchVerifier(this.verificationCache, DEFAULT_VERIFY_PARALLELISM);
+
+    @Override
+    public void verifyCertificates(List<CertificateVerification> verifications) {
+        this.batchVerifier.verify(verifications);
     }
 
-    private IdentityAssurance worstIdentityAssurance =
-            new IdentityAssurance(OtherPerson.LOWEST_IDENTITY_ASSURANCE_LEVEL, new ArrayList<>());
+    public int getVerifyParallelism() {
+        return this.batchVerifier.getParallelism();
+    }
 
-    private Map<CharSequence, IdentityAssurance> userIdentityAssurance; // cache
+    /**
+     * A batch of certificates is verified in parallel - received certificates and certificates issued by a
+     * peer during identity assurance calculation.
+     * @param parallelism number of threads verifying certificates - 1: verify in calling thread.
+     *                    Default: number of processors
+     */
+    public void setVerifyParallelism(int parallelism) {
+        if(parallelism == this.batchVerifier.getParallelism()) return;
+        this.batchVerifier.shutdown();
+        this.batchVerifier = new CertificateBatchVerifier(this.verificationCache, parallelism);
+    }
 
     public boolean verify(ASAPCertificate cert, PublicKey publicKey) {
         if(cert == null) return false;
 
         try {
-            if(cert.verify(publicKey)) {
+            if(this.verificationCache.verify(cert, publicKey)) {
                 return true;
             }
 
@@ -270,20 +507,18 @@ public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCert
             throws ASAPSecurityException {
         // general setup?
         if(this.userIdentityAssurance == null) {
-            this.userIdentityAssurance = new HashMap<>();
-            this.setupIdentityAssurance(userID, asapKeyStore, personInformationStore);
+            this.setupIdentityAssurance(asapKeyStore, personInformationStore);
         }
 
-        IdentityAssurance identityAssurance = this.userIdentityAssurance.get(userID);
-        // setup individual user?
-        if(identityAssurance == null) {
-            // setup
-            this.setupIdentityAssurance(userID, asapKeyStore, personInformationStore);
-            // try again
-            identityAssurance = this.userIdentityAssurance.get(userID);
+        PeerID peerID = PeerID.of(userID);
+        if(this.unverifiableDirectCertificateSubjects.contains(peerID)) {
+            throw new ASAPSecurityException
+                    ("there is a certificate signed by owner but cannot be verified - that's serious");
         }
 
-        return identityAssurance;
+        IdentityAssurance identityAssurance = this.userIdentityAssurance.get(peerID);
+        // no certificate or no chain from owner to this user
+        return identityAssurance != null ? identityAssurance : this.worstIdentityAssurance;
     }
 
     @Override
@@ -300,186 +535,30 @@ public abstract class InMemoCertificatesAndIdentityAssurance implements ASAPCert
         return this.getIdentityAssurance(userID, asapPKI, personInformationStore).getValue();
     }
 
-    private void setupIdentityAssurance(
-        CharSequence userID, ASAPKeyStore asapKeyStore, PersonInformationStore personInformationStore)
-            throws ASAPSecurityException {
-
-        Collection<ASAPCertificate> certificates = this.getCertificatesBySubjectID(userID);
-        if (certificates == null || certificates.isEmpty()) {
-            // we don't know anything about this person
-            this.userIdentityAssurance.put(userID, this.worstIdentityAssurance);
-            return;
-        }
-        else {
-            // do we have a certificate signed by owner?
-            boolean found = false;
-            for(ASAPCertificate certificate : certificates) {
-                if (certificate.getIssuerID().toString().equalsIgnoreCase(this.ownerID.toString())) {
-                    // verify certificate
-                    found = true;
-                    try {
-                        if(certificate.verify(asapKeyStore.getPublicKey())) {
-                            ArrayList<CharSequence> directPath = new ArrayList<>();
-                            directPath.add(this.ownerID);
-                            this.userIdentityAssurance.put(userID,
-                                    new IdentityAssurance(OtherPerson.HIGHEST_IDENTITY_ASSURANCE_LEVEL, directPath));
-
-                            return; // there is only one direct certificate
-                        }
-                    } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
-                        Log.writeLogErr(this, "cannot verify a direct certificate - remove it: "
-                                + e.getLocalizedMessage());
-                        try {
-                            this.removeCertificate(certificate);
-                        } catch (IOException ex) {
-                            Log.writeLog(this, "cannot remove certificate: " + ex.getLocalizedMessage());
-                        }
-                    }
-                }
-            }
-            if(found) {
-                throw new ASAPSecurityException
-                        ("there is a certificate signed by owner but cannot be verified - that's serious");
-            }
-        }
-
-        IdentityAssurance bestIa = null;
-
-        // no direct cert from owner:
-        // iterate again
-        for(ASAPCertificate certificate : certificates) {
-            // we have certificates but nothing issued by owner - we look for a certificated way from owner to userID
-
-            // find a path and calculate best failure rate of it
-            IdentityAssurance tmpIa = this.calculateIdentityAssurance(new ArrayList<>(), // init chain
-                    userID, certificate, -1, asapKeyStore, personInformationStore);
-
-            if(bestIa == null) bestIa = tmpIa; // first round
-            else {
-                bestIa = bestIa.floatValue < tmpIa.floatValue ? // tmp is more likely than best - switch
-                        tmpIa : bestIa;
-            }
-        }
-
-        this.userIdentityAssurance.put(userID, bestIa);
-    }
-
     /**
-     * Follow chain backward. If it reaches owner.. there will be an assurance level better than
-     * worst. If it does not end at owner or even goes in circles - it worst level.
-     *
-     * @param idPath                     already visited ids
-     * @param currentPersonID             current id
-     * @param accumulatedIdentityProbability current failure rate so far (value between 0 and 1)
-     * @return what we lool for:
-     * YOU - Person A - Person B - ...- current Person - ... - Person in question
-     * <p>
-     * We go backward in chain to - hopefully reach you
+     * Calculate identity assurance of all users at once. Results are kept until certificates or failure rates
+     * change.
+     * @see IdentityAssuranceGraph
      */
-    private IdentityAssurance calculateIdentityAssurance(
-            List<CharSequence> idPath, CharSequence currentPersonID,
-            ASAPCertificate currentCertificate, float accumulatedIdentityProbability,
-            ASAPKeyStore keyStore, PersonInformationStore personInformationStore)
-    {
-        // are we in a circle?
-        if (idPath.contains(currentPersonID)) return this.worstIdentityAssurance; // escape circle
-
-        // remember this step
-        idPath.add(currentPersonID);
-
-        // if we have a certificate that is signed by app owner - we are done here.
-        if (currentCertificate.getIssuerID().toString().equalsIgnoreCase(this.getOwnerID().toString())) {
-            // we should be able to verify currentCertificate with owners public key
-            PublicKey publicKey = null;
-            try {
-                publicKey = keyStore.getPublicKey();
-                if(!this.verify(currentCertificate, publicKey)) {
-                    return this.worstIdentityAssurance;
-                }
-            } catch (ASAPSecurityException e) {
-                return this.worstIdentityAssurance; // no key at all
-            }
-
-            // could be verified
-            if(accumulatedIdentityProbability < 0) {
-                // not yet set
-                return new IdentityAssurance(0, idPath); // not yet set
-            } else {
-                return new IdentityAssurance(accumulatedIdentityProbability, idPath);
-            }
-        }
-
-        // not finished
-
-        // is there a next step towards owner? Yes, if there is a certificate owner by the current signer
-        CharSequence proceedingPersonID = currentCertificate.getIssuerID();
-        Collection<ASAPCertificate> proceedingCertificates =
-                this.getCertificatesBySubjectID(proceedingPersonID);
-
-        if(proceedingCertificates == null || proceedingCertificates.isEmpty())
-            // no certificate - cannot verify current certificate.
-            return this.worstIdentityAssurance;
-
-        // next step in depth-first search
-        IdentityAssurance bestIa = null;
-        for(ASAPCertificate proceedingCertificate : proceedingCertificates) {
-            // we must be able to verify current certificate (if any)
-            if(!this.verify(currentCertificate, proceedingCertificate.getPublicKey())) continue;
-
-            // make a idPath copy
-            List<CharSequence> copyIDPath = new ArrayList<>();
-            copyIDPath.addAll(idPath);
-
-            // convert failure rate number to failure probability something between 0 and 1.
-            float failureProbability = ((float) personInformationStore.getSigningFailureRate(proceedingPersonID)) / 10;
-
-            // OK. We have information about this personInformationStore. Calculate assuranceLevel
-            /*
-            Only the owner is expected to make no failure when signing certificates. (That's an illusion but
-            we take it.) Any other personInformationStore makes failure and associates public key with the wrong personInformationStore.
-
-            The probability of doing so is failureProbability.
-
-            We have a chain of signers here. Each has signed a certificate of an owner who is signer in the
-            next step. Failure accumulate. Assuming four steps. O - A - B - C. O is the owner. O has met A. We assume
-            a failureProb of 0 (it is the owner). O has set a failure prob for A (e.g. pA = 30% = 0,3).
-
-            70% (0,7) of As' certificates are presumably right, 30% (0,3 wrong). A has also signed a certificate for
-            B. That certificate is right with 70% (0,7). Now, B has also signed a certificate for C and als B makes
-            failure, let's assume 40% (0,4). Thus, 60% are right.
-
-            How does it look from Owners perspective? O wants to know how sure it can be of Cs' identity.
-            It can calculate beginning from the end of the chain: 60% of certificates signed by B are right.
-            6 out of 10  are right. 4 out of 10 are wrong.
-            O cannot verify Bs' certificate, though. It only has certificate from A. With a probability of 30%,
-            A has signed a wrong certificate for B. O can calculate. Nearly any third certificate signed by A is
-            wrong. Statistically, a third of those right 6 certificates of B are wrong due to A. O can say:
-
-            4 out of 10 certificates in that signing queue are falsified. O can be sure of Cs' identity with 60%.
+    private void setupIdentityAssurance(ASAPKeyStore asapKeyStore, PersonInformationStore personInformationStore)
+            throws ASAPSecurityException {
 
-            identityAssurance(C) = (1-failure(C) * (1-failure(B))
-             */
-            if (accumulatedIdentityProbability < 0) {
-                // haven't yet calculated any assurance prob. Set initial value
-                accumulatedIdentityProbability = 1 - failureProbability;
-            } else {
-                accumulatedIdentityProbability *= (1 - failureProbability);
-            }
+        IdentityAssuranceGraph graph =
+                new IdentityAssuranceGraph(this.ownerID, this, asapKeyStore, personInformationStore);
 
-            IdentityAssurance tmpIa = this.calculateIdentityAssurance(copyIDPath,
-                    proceedingCertificate.getSubjectID(),
-                    proceedingCertificate,
-                    accumulatedIdentityProbability,
-                    keyStore, personInformationStore);
+        Map<PeerID, IdentityAssurance> identityAssurances = graph.calculate();
+        Log.writeLog(this, "identity assurance calculated: " + this.verificationCache);
 
-            if(bestIa == null) bestIa = tmpIa;
-            else {
-                bestIa = bestIa.floatValue < tmpIa.floatValue ? // tmp is more likely than best - switch
-                        tmpIa : bestIa;
+        if(!graph.getBrokenCertificates().isEmpty()) {
+            try {
+                this.removeCertificate(graph.getBrokenCertificates());
+            } catch (IOException ex) {
+                Log.writeLog(this, "cannot remove certificate: " + ex.getLocalizedMessage());
             }
         }
 
-        return bestIa;
+        this.unverifiableDirectCertificateSubjects = graph.getUnverifiableDirectCertificateSubjects();
+        this.userIdentityAssurance = identityAssurances;
     }
 
     public ASAPStorageAddress getASAPStorageAddress(byte[] serializedAddress) throws IOException {
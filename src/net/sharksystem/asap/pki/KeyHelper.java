@@ -4,10 +4,64 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.security.*;
+import java.security.spec.ECGenParameterSpec;
 import java.security.spec.InvalidKeySpecException;
-import java.security.spec.X509EncodedKeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
 
 public class KeyHelper {
+    // process wide - same keys show up in certificates and credential messages of any component
+    private static final PublicKeyCache publicKeyCache = new PublicKeyCache();
+
+    public static PublicKeyCache getPublicKeyCache() {
+        return publicKeyCache;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //                                       key pairs and signing algorithms                                 //
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    public static final String KEY_ALGORITHM_RSA = "RSA";
+    public static final String KEY_ALGORITHM_EC = "EC";
+    /** needs Java 15 or later */
+    public static final String KEY_ALGORITHM_ED25519 = "Ed25519";
+    // algorithm name of Ed25519 keys
+    private static final String KEY_ALGORITHM_EDDSA = "EdDSA";
+
+    public static final int RSA_KEY_SIZE = 2048;
+    public static final String EC_CURVE = "secp256r1"; // NIST P-256
+
+    /**
+     * @param keyAlgorithm RSA (2048 bit), EC (curve P-256) or Ed25519
+     * @throws NoSuchAlgorithmException unknown key algorithm or not supported by this Java runtime
+     */
+    public static KeyPair generateKeyPair(String keyAlgorithm) throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(keyAlgorithm);
+        try {
+            if(KEY_ALGORITHM_RSA.equalsIgnoreCase(keyAlgorithm)) {
+                generator.initialize(RSA_KEY_SIZE);
+            } else if(KEY_ALGORITHM_EC.equalsIgnoreCase(keyAlgorithm)) {
+                generator.initialize(new ECGenParameterSpec(EC_CURVE));
+            }
+            // Ed25519: nothing to choose
+        } catch (InvalidAlgorithmParameterException e) {
+            throw new NoSuchAlgorithmException(keyAlgorithm + " with " + EC_CURVE + ": " + e.getLocalizedMessage());
+        }
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * @return signing algorithm for keys of that kind: SHA256withRSA, SHA256withECDSA or Ed25519
+     * @throws NoSuchAlgorithmException no signing algorithm known for that key
+     */
+    public static String getSigningAlgorithm(Key key) throws NoSuchAlgorithmException {
+        String keyAlgorithm = key.getAlgorithm();
+        if(KEY_ALGORITHM_RSA.equalsIgnoreCase(keyAlgorithm)) return ASAPCertificateImpl.SIGNATURE_METHOD_RSA;
+        if(KEY_ALGORITHM_EC.equalsIgnoreCase(keyAlgorithm)) return ASAPCertificateImpl.SIGNATURE_METHOD_ECDSA;
+        if(KEY_ALGORITHM_EDDSA.equalsIgnoreCase(keyAlgorithm) || KEY_ALGORITHM_ED25519.equalsIgnoreCase(keyAlgorithm)) {
+            return ASAPCertificateImpl.SIGNATURE_METHOD_ED25519;
+        }
+        throw new NoSuchAlgorithmException("no signing algorithm for " + keyAlgorithm + " keys");
+    }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////
     //                                          key serialization                                             //
@@ -46,14 +100,27 @@ public class KeyHelper {
         String algorithm = dis.readUTF();
         int length = dis.readInt();
         byte[] keyBytes = new byte[length];
-        dis.read(keyBytes);
+        dis.readFully(keyBytes);
+
+        if(createPublicKey) return decodePublicKey(algorithm, keyBytes);
 
-        // decode public key
-        KeyFactory keyFactory = null;
-        keyFactory = KeyFactory.getInstance(algorithm);
-        X509EncodedKeySpec x509EncodedKeySpec = new X509EncodedKeySpec(keyBytes);
+        // decode private key - encoded as PKCS#8, not X.509 like public keys
+        KeyFactory keyFactory = CryptoObjectPool.KEY_FACTORIES.borrow(algorithm);
+        PrivateKey privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(keyBytes));
+        CryptoObjectPool.KEY_FACTORIES.release(algorithm, keyFactory);
+        return privateKey;
+    }
+
+    /**
+     * @return decoded key - same object for same encoded key as long as it is in public key cache
+     */
+    public static PublicKey decodePublicKey(String algorithm, byte[] encodedKey)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        return publicKeyCache.decode(algorithm, encodedKey);
+    }
 
-        return createPublicKey ?
-                keyFactory.generatePublic(x509EncodedKeySpec) : keyFactory.generatePrivate(x509EncodedKeySpec);
+    public static PublicKey decodePublicKey(String algorithm, byte[] encoded, int offset, int length)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        return publicKeyCache.decode(algorithm, encoded, offset, length);
     }
 }
@@ -0,0 +1,175 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.utils.Log;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Keeps a few key pairs ready. Generating an RSA key pair takes hundreds of milliseconds on small devices - it
+ * should neither delay start of a peer nor a key rotation.
+ * <br/>
+ * Pool is filled on request only - usually if a key pair is about to expire. A single background thread generates
+ * key pairs until pool is full. Each key pair is handed out only once. If pool is empty, a caller waits for the
+ * key pair being generated. A key pair is generated in calling thread if there is no generation running.
+ */
+public class KeyPairPool {
+    public static final int DEFAULT_SIZE = 2;
+
+    private static KeyPairPool defaultPool = null;
+
+    /**
+     * @return process wide pool of RSA key pairs - key stores of all components take their pairs from it
+     */
+    public static synchronized KeyPairPool getDefault() {
+        if(defaultPool == null) {
+            defaultPool = new KeyPairPool(KeyHelper.KEY_ALGORITHM_RSA, DEFAULT_SIZE);
+        }
+        return defaultPool;
+    }
+
+    private final String keyAlgorithm;
+    private final BlockingQueue<KeyPair> readyKeyPairs;
+    private final ExecutorService executor;
+    private boolean refilling = false;
+    private long taken = 0;
+    private long generatedInCaller = 0;
+
+    /**
+     * @param keyAlgorithm algorithm of generated key pairs
+     * @see KeyHelper#generateKeyPair(String)
+     */
+    public KeyPairPool(String keyAlgorithm, int size) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.readyKeyPairs = new ArrayBlockingQueue<>(Math.max(1, size));
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "key pair pool");
+            // never keep a peer alive
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public String getKeyAlgorithm() {
+        return this.keyAlgorithm;
+    }
+
+    /**
+     * Start filling pool in background - nothing happens if pool is full or being filled.
+     */
+    public synchronized void fill() {
+        if(this.refilling || this.readyKeyPairs.remainingCapacity() == 0) return;
+        try {
+            this.executor.execute(this::refill);
+            this.refilling = true;
+        } catch (RejectedExecutionException e) {
+            Log.writeLog(this, "pool is shut down - not filled");
+        }
+    }
+
+    /**
+     * @return a ready key pair - it waits for a key pair being generated. A key pair is generated now if pool is
+     * empty and not being filled. Pool is not filled again.
+     * @throws NoSuchAlgorithmException key algorithm not supported
+     */
+    public KeyPair take() throws NoSuchAlgorithmException {
+        KeyPair keyPair;
+        synchronized(this) {
+            this.taken++;
+            keyPair = this.readyKeyPairs.poll();
+            // don't generate a second key pair at the same time
+            while(keyPair == null && this.refilling) {
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                keyPair = this.readyKeyPairs.poll();
+            }
+            if(keyPair == null) this.generatedInCaller++;
+        }
+
+        if(keyPair == null) {
+            Log.writeLog(this, "no key pair ready - generate one now");
+            keyPair = KeyHelper.generateKeyPair(this.keyAlgorithm);
+        }
+        return keyPair;
+    }
+
+    /**
+     * @return number of key pairs ready to be taken
+     */
+    public int available() {
+        return this.readyKeyPairs.size();
+    }
+
+    public synchronized long getTaken() {
+        return this.taken;
+    }
+
+    /**
+     * @return number of key pairs generated by a caller of {@link #take()} - pool was empty
+     */
+    public synchronized long getGeneratedInCaller() {
+        return this.generatedInCaller;
+    }
+
+    /**
+     * Wait until pool is no longer filled - returns at once if there is no generation running.
+     * @return number of key pairs ready to be taken
+     * @throws InterruptedException interrupted while waiting
+     */
+    public synchronized int awaitFilled() throws InterruptedException {
+        while(this.refilling) this.wait();
+        return this.readyKeyPairs.size();
+    }
+
+    /**
+     * Running key generation is finished. Pool is not filled any longer, ready key pairs can still be taken.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private void refill() {
+        try {
+            for(;;) {
+                synchronized(this) {
+                    // checked and ended at once - a fill() can't get lost in between
+                    if(this.readyKeyPairs.remainingCapacity() == 0) {
+                        this.refillingDone();
+                        return;
+                    }
+                }
+                KeyPair keyPair = KeyHelper.generateKeyPair(this.keyAlgorithm);
+                synchronized(this) {
+                    this.readyKeyPairs.offer(keyPair);
+                    this.notifyAll();
+                }
+            }
+        } catch (NoSuchAlgorithmException | RuntimeException e) {
+            Log.writeLogErr(this, "cannot generate key pair: " + e.getLocalizedMessage());
+            synchronized(this) {
+                // waiting callers generate key pairs on their own
+                this.refillingDone();
+            }
+        }
+    }
+
+    private void refillingDone() {
+        this.refilling = false;
+        this.notifyAll();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "key pair pool (" + this.keyAlgorithm + "): ready: " + this.readyKeyPairs.size()
+                + " | taken: " + this.taken + " | generated in caller: " + this.generatedInCaller;
+    }
+}
@@ -0,0 +1,122 @@
+package net.sharksystem.asap.pki;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical representation of a peer id. Peer ids are not case sensitive. They reach this library as any kind of
+ * CharSequence, though. A String key and a StringBuilder key would never match in a map.
+ * <br/>
+ * Objects of this class are interned: There is exactly one object for each id (ignoring case). Its hash value is
+ * calculated once. Use it as key in any map that is indexed by peer ids.
+ * <br/>
+ * The pool is never cleaned up. Number of peer ids is limited by number of known certificates and persons, though.
+ */
+public final class PeerID implements CharSequence {
+    private static final ConcurrentHashMap<PeerID, PeerID> POOL = new ConcurrentHashMap<>();
+
+    private final CharSequence id;
+    private final int hashCode;
+
+    private PeerID(CharSequence id, int hashCode) {
+        this.id = id;
+        this.hashCode = hashCode;
+    }
+
+    /**
+     * @param id any peer id
+     * @return canonical object of this id. Same object is returned for any id that only differs in case.
+     */
+    public static PeerID of(CharSequence id) {
+        if(id instanceof PeerID) return (PeerID) id;
+        if(id == null) throw new NullPointerException("peer id must not be null");
+
+        int hashCode = caseInsensitiveHashCode(id);
+
+        // probe - a char sequence is not copied for look up
+        PeerID peerID = POOL.get(new PeerID(id, hashCode));
+        if(peerID != null) return peerID;
+
+        // new - keep an immutable copy
+        PeerID newPeerID = new PeerID(id.toString(), hashCode);
+        peerID = POOL.putIfAbsent(newPeerID, newPeerID);
+
+        return peerID != null ? peerID : newPeerID;
+    }
+
+    /**
+     * Compare two ids without creating any object.
+     * @return true if both ids only differ in case
+     */
+    public static boolean sameID(CharSequence idA, CharSequence idB) {
+        if(idA == idB) return true;
+        if(idA == null || idB == null) return false;
+        if(idA instanceof PeerID && idB instanceof PeerID) return false; // interned - different objects
+
+        int length = idA.length();
+        if(length != idB.length()) return false;
+
+        for(int i = 0; i < length; i++) {
+            if(!sameChar(idA.charAt(i), idB.charAt(i))) return false;
+        }
+
+        return true;
+    }
+
+    private static boolean sameChar(char a, char b) {
+        // same rules as String.equalsIgnoreCase
+        if(a == b) return true;
+        char upperA = Character.toUpperCase(a);
+        char upperB = Character.toUpperCase(b);
+        if(upperA == upperB) return true;
+        return Character.toLowerCase(upperA) == Character.toLowerCase(upperB);
+    }
+
+    private static int caseInsensitiveHashCode(CharSequence id) {
+        int hashCode = 0;
+        for(int i = 0; i < id.length(); i++) {
+            hashCode = 31 * hashCode + Character.toLowerCase(Character.toUpperCase(id.charAt(i)));
+        }
+        return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof PeerID)) return false;
+        PeerID other = (PeerID) o;
+        if(this.hashCode != other.hashCode) return false;
+
+        // at least one is a probe
+        int length = this.id.length();
+        if(length != other.id.length()) return false;
+        for(int i = 0; i < length; i++) {
+            if(!sameChar(this.id.charAt(i), other.id.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    @Override
+    public int length() {
+        return this.id.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return this.id.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.id.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return this.id.toString();
+    }
+}
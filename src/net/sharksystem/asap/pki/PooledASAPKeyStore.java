@@ -0,0 +1,114 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.SharkException;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import net.sharksystem.fs.ExtraData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+
+/**
+ * Key store which takes new key pairs from a {@link KeyPairPool} instead of generating them in calling thread.
+ * Pool is filled when a restored key pair is about to expire - a key rotation takes a ready key pair.
+ * <br/>
+ * Anything else is done by the in memory key store. A key pair is set like a restored memento and written to the
+ * memento target like a generated one.
+ */
+public class PooledASAPKeyStore extends InMemoASAPKeyStore {
+    /** pool is filled if key pair expires within this period */
+    public static final long DEFAULT_RENEWAL_PERIOD_IN_MILLIS = 30L * 24 * 60 * 60 * 1000; // 30 days
+
+    /** key of memento in memento target - same as in memory key store */
+    static final String MEMENTO_KEY = "asapKeyStoreMemento";
+
+    private final KeyPairPool keyPairPool;
+    private ExtraData mementoTarget = null;
+
+    public PooledASAPKeyStore(CharSequence ownerID) throws ASAPSecurityException {
+        this(ownerID, KeyPairPool.getDefault());
+    }
+
+    /**
+     * @param keyPairPool pool of key pairs - in memory key store encrypts with RSA keys only
+     */
+    public PooledASAPKeyStore(CharSequence ownerID, KeyPairPool keyPairPool) throws ASAPSecurityException {
+        super(ownerID);
+        this.keyPairPool = keyPairPool;
+    }
+
+    @Override
+    public void generateKeyPair() throws ASAPSecurityException {
+        KeyPair keyPair;
+        try {
+            keyPair = this.keyPairPool.take();
+            // set keys and creation time
+            this.restoreMemento(produceMemento(this.getOwner(), keyPair, System.currentTimeMillis()));
+        } catch (NoSuchAlgorithmException | IOException | ASAPException e) {
+            throw new ASAPSecurityException("cannot take key pair from pool: " + e.getLocalizedMessage());
+        }
+        this.setKeyPair(keyPair);
+        this.writeMemento();
+    }
+
+    /**
+     * In memory key store writes its memento only with a generated key pair - do it with a pooled one.
+     */
+    private void writeMemento() throws ASAPSecurityException {
+        if(this.mementoTarget == null) return;
+        try {
+            this.mementoTarget.putExtra(MEMENTO_KEY, this.getMemento());
+        } catch (IOException | SharkException e) {
+            throw new ASAPSecurityException("cannot write memento: " + e.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public void setMementoTarget(ExtraData mementoTarget) {
+        // set before - in memory key store generates a key pair if there is no memento yet
+        this.mementoTarget = mementoTarget;
+        super.setMementoTarget(mementoTarget);
+
+        if(this.isToBeRenewed(DEFAULT_RENEWAL_PERIOD_IN_MILLIS)) {
+            // restored key pair expires soon - have a new one ready
+            this.keyPairPool.fill();
+        }
+    }
+
+    /**
+     * @return true if key pair expires within renewal period
+     */
+    public boolean isToBeRenewed(long renewalPeriodInMillis) {
+        long creationTime;
+        try {
+            creationTime = this.getKeysCreationTime();
+        } catch (ASAPSecurityException e) {
+            return true;
+        }
+        Calendar expiration = ASAPCertificateImpl.long2Calendar(creationTime);
+        expiration.add(Calendar.YEAR, ASAPCertificate.DEFAULT_CERTIFICATE_VALIDITY_IN_YEARS);
+        return expiration.getTimeInMillis() - renewalPeriodInMillis < System.currentTimeMillis();
+    }
+
+    /**
+     * @return memento as it is read by {@link #restoreMemento(byte[])}
+     */
+    private static byte[] produceMemento(CharSequence ownerID, KeyPair keyPair, long creationTime)
+            throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ASAPSerialization.writeByteArray(keyPair.getPrivate().getEncoded(), baos);
+        ASAPSerialization.writeCharSequenceParameter(keyPair.getPrivate().getAlgorithm(), baos);
+        ASAPSerialization.writeCharSequenceParameter(keyPair.getPrivate().getFormat(), baos);
+        ASAPSerialization.writeByteArray(keyPair.getPublic().getEncoded(), baos);
+        ASAPSerialization.writeCharSequenceParameter(keyPair.getPublic().getAlgorithm(), baos);
+        ASAPSerialization.writeCharSequenceParameter(keyPair.getPublic().getFormat(), baos);
+        ASAPSerialization.writeLongParameter(creationTime, baos);
+        ASAPSerialization.writeCharSequenceParameter(ownerID, baos);
+        return baos.toByteArray();
+    }
+}
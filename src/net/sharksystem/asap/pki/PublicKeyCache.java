@@ -0,0 +1,139 @@
+package net.sharksystem.asap.pki;
+
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decodes public keys - each encoded key only once. A subject key is part of any certificate issued for that
+ * subject and of its credential messages. Without this cache each copy would run through a key factory and
+ * would be kept as its own object.
+ * <br/>
+ * Entries are keyed by algorithm and encoded key. Public keys are immutable, a cached key can be handed out to
+ * anybody. Number of entries is limited. Least recently used entries are dropped first.
+ */
+public class PublicKeyCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final Map<Key, PublicKey> keys;
+    private long hits = 0;
+    private long misses = 0;
+
+    public PublicKeyCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public PublicKeyCache(final int maxEntries) {
+        this.keys = new LinkedHashMap<Key, PublicKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PublicKey> eldest) {
+                return this.size() > maxEntries;
+            }
+        };
+    }
+
+    public PublicKey decode(String algorithm, byte[] encodedKey)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+        return this.decode(algorithm, encodedKey, 0, encodedKey.length);
+    }
+
+    /**
+     * @param encoded array containing an X.509 encoded key at offset - array is not kept
+     */
+    public PublicKey decode(String algorithm, byte[] encoded, int offset, int length)
+            throws NoSuchAlgorithmException, InvalidKeySpecException {
+
+        // look up without copying key bytes
+        Key lookup = new Key(algorithm, encoded, offset, length);
+        synchronized(this) {
+            PublicKey publicKey = this.keys.get(lookup);
+            if(publicKey != null) {
+                this.hits++;
+                return publicKey;
+            }
+            this.misses++;
+        }
+
+        // decode outside the lock
+        byte[] keyBytes = Arrays.copyOfRange(encoded, offset, offset + length);
+        KeyFactory keyFactory = CryptoObjectPool.KEY_FACTORIES.borrow(algorithm);
+        PublicKey publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(keyBytes));
+        CryptoObjectPool.KEY_FACTORIES.release(algorithm, keyFactory);
+
+        synchronized(this) {
+            // another thread could have been faster - there should be only one object
+            PublicKey other = this.keys.get(lookup);
+            if(other != null) return other;
+            this.keys.put(new Key(algorithm, keyBytes, 0, keyBytes.length), publicKey);
+        }
+
+        return publicKey;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized int size() {
+        return this.keys.size();
+    }
+
+    public synchronized void clear() {
+        this.keys.clear();
+        this.hits = 0;
+        this.misses = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "public key cache: entries: " + this.keys.size()
+                + " | hits: " + this.hits + " | misses: " + this.misses;
+    }
+
+    private static class Key {
+        private final String algorithm;
+        private final byte[] encoded;
+        private final int offset;
+        private final int length;
+        private final int hashCode;
+
+        Key(String algorithm, byte[] encoded, int offset, int length) {
+            this.algorithm = algorithm;
+            this.encoded = encoded;
+            this.offset = offset;
+            this.length = length;
+
+            int hashCode = algorithm.hashCode();
+            for(int i = offset; i < offset + length; i++) hashCode = 31 * hashCode + encoded[i];
+            this.hashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            if(this.hashCode != other.hashCode || this.length != other.length
+                    || !this.algorithm.equals(other.algorithm)) return false;
+
+            for(int i = 0; i < this.length; i++) {
+                if(this.encoded[this.offset + i] != other.encoded[other.offset + i]) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+}
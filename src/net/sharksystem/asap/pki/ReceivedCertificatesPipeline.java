@@ -0,0 +1,309 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAP;
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPStorage;
+import net.sharksystem.utils.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Takes received certificates from incoming storages of several senders into certificate storage. There are three
+ * stages:
+ * <ol>
+ *     <li>read: messages are read from incoming storage of each sender - one reader thread</li>
+ *     <li>decode: digest is calculated, known certificates are skipped, others are decoded - worker threads</li>
+ *     <li>index: certificates are checked against memory, copied into owners channel and added to memory - calling
+ *     thread. In memory structures are never touched by another thread.</li>
+ * </ol>
+ * Certificates are received one per message or many in a batch message. A batch is taken apart by reader.
+ * Stages are connected by bounded queues. Index stage takes certificates in same order as they were read.
+ * Incoming messages of a sender are removed after all its certificates are indexed.
+ * <br/>
+ * Signatures are not verified here. Issuers public key is often not known yet. Certificates are verified when
+ * identity assurance is calculated.
+ * <br/>
+ * With parallelism 1 all stages run one after another in calling thread.
+ */
+class ReceivedCertificatesPipeline {
+    static final int QUEUE_CAPACITY = 256;
+    /** channels with received certificates */
+    static final String[] CERTIFICATE_URIS = {
+            ASAPCertificate.ASAP_CERTIFICATE_URI, ASAPCertificate.ASAP_CERTIFICATE_BATCH_URI};
+
+    /**
+     * Anything pipeline needs from certificate storage.
+     */
+    interface Stages {
+        /**
+         * @return fresh incoming storage of that sender - reader thread
+         */
+        ASAPStorage getIncomingStorage(CharSequence sender) throws IOException, ASAPException;
+
+        /**
+         * @return true if certificate is already stored - called by worker threads
+         */
+        boolean isKnown(ByteBuffer digest);
+
+        /**
+         * @return true if certificate was new - calling thread
+         */
+        boolean index(ByteBuffer digest, byte[] message, ASAPCertificate certificate);
+
+        /**
+         * All messages of that sender are indexed - calling thread
+         */
+        void senderDone(CharSequence sender, ASAPStorage incomingStorage, int messages);
+    }
+
+    private static class Item {
+        final long sequence;
+        final CharSequence sender;
+        final ASAPStorage incomingStorage;
+        final byte[] message; // null: last item of sender
+        final int messages; // number of asap messages of sender - set with last item
+        ByteBuffer digest = null;
+        ASAPCertificate certificate = null;
+
+        Item(long sequence, CharSequence sender, ASAPStorage incomingStorage, byte[] message, int messages) {
+            this.sequence = sequence;
+            this.sender = sender;
+            this.incomingStorage = incomingStorage;
+            this.message = message;
+            this.messages = messages;
+        }
+    }
+
+    // no more items from a worker
+    private static final Item END = new Item(-1, null, null, null, 0);
+
+    private final Stages stages;
+    private final ASAPStorageAddress address;
+    private final int parallelism;
+    private final CertificateIngestMetrics metrics;
+
+    /**
+     * @param address address of received certificates - current era of owners storage
+     */
+    ReceivedCertificatesPipeline(Stages stages, ASAPStorageAddress address, int parallelism,
+                                 CertificateIngestMetrics metrics) {
+        this.stages = stages;
+        this.address = address;
+        this.parallelism = Math.max(1, parallelism);
+        this.metrics = metrics;
+    }
+
+    void run(List<CharSequence> senders) {
+        long start = System.nanoTime();
+        if(this.parallelism == 1) {
+            this.runSequential(senders);
+        } else {
+            this.runConcurrent(senders);
+        }
+        this.metrics.runs.incrementAndGet();
+        this.metrics.runNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private void runSequential(List<CharSequence> senders) {
+        for(CharSequence sender : senders) {
+            final List<Item> items = new ArrayList<>();
+            this.read(sender, 0, items::add);
+            for(Item item : items) {
+                this.decode(item);
+                this.index(item);
+            }
+        }
+    }
+
+    /**
+     * Each stage sends END when it stops - even after an exception. First exception of a read or decode thread
+     * is thrown in calling thread. Certificates indexed till then are kept. Senders not done keep their messages.
+     */
+    private void runConcurrent(List<CharSequence> senders) {
+        BlockingQueue<Item> decodeQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Item> indexQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.parallelism + 1, runnable -> {
+            Thread thread = new Thread(runnable, "certificate ingest");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            // read
+            executor.execute(() -> {
+                try {
+                    long sequence = 0;
+                    for(CharSequence sender : senders) {
+                        sequence = this.read(sender, sequence, item -> {
+                            try {
+                                decodeQueue.put(item);
+                            } catch (InterruptedException e) {
+                                throw new CancellationException();
+                            }
+                        });
+                    }
+                } catch (CancellationException e) {
+                    // index stage gave up
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    for(int i = 0; i < this.parallelism; i++) putEnd(decodeQueue);
+                }
+            });
+
+            // decode
+            for(int i = 0; i < this.parallelism; i++) {
+                executor.execute(() -> {
+                    try {
+                        for(Item item = decodeQueue.take(); item != END; item = decodeQueue.take()) {
+                            this.decode(item);
+                            indexQueue.put(item);
+                        }
+                    } catch (InterruptedException e) {
+                        // index stage gave up
+                    } catch (RuntimeException | Error e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        putEnd(indexQueue);
+                    }
+                });
+            }
+
+            // index - in order of reading
+            Map<Long, Item> waiting = new HashMap<>();
+            long next = 0;
+            int runningWorkers = this.parallelism;
+            while(runningWorkers > 0) {
+                Item item = indexQueue.take();
+                if(item == END) {
+                    // an item is missing after a failure - nothing after it can be indexed
+                    if(failure.get() != null) break;
+                    runningWorkers--;
+                    continue;
+                }
+                waiting.put(item.sequence, item);
+                for(item = waiting.remove(next); item != null; item = waiting.remove(next)) {
+                    this.index(item);
+                    next++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.writeLogErr(this, "interrupted while taking received certificates");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Throwable t = failure.get();
+        if(t != null) {
+            Log.writeLogErr(this, "failed to take received certificates: " + t.getLocalizedMessage());
+            if(t instanceof Error) throw (Error) t;
+            throw (RuntimeException) t;
+        }
+    }
+
+    private static void putEnd(BlockingQueue<Item> queue) {
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // index stage gave up - nobody waits for it
+        }
+    }
+
+    /**
+     * @return next sequence number
+     */
+    private long read(CharSequence sender, long sequence, Consumer<Item> consumer) {
+        long start = System.nanoTime();
+        int messages = 0;
+        ASAPStorage incomingStorage = null;
+        try {
+            incomingStorage = this.stages.getIncomingStorage(sender);
+            for(String uri : CERTIFICATE_URIS) {
+                Iterator<byte[]> messageIterator = incomingStorage.getChunkStorage().getASAPMessages(
+                        uri, ASAP.INITIAL_ERA, ASAP.MAX_ERA).getMessages();
+
+                while(messageIterator.hasNext()) {
+                    byte[] message = messageIterator.next();
+                    messages++;
+                    for(byte[] certificate : this.takeApart(uri, message)) {
+                        this.metrics.readMessages.incrementAndGet();
+                        // don't count waiting for next stage
+                        this.metrics.readNanos.addAndGet(System.nanoTime() - start);
+                        consumer.accept(new Item(sequence++, sender, incomingStorage, certificate, 0));
+                        start = System.nanoTime();
+                    }
+                }
+            }
+        } catch (IOException | ASAPException e) {
+            Log.writeLog(this, "cannot read certificates received from " + sender + ": "
+                    + e.getLocalizedMessage());
+            // keep messages - try again next time
+            incomingStorage = null;
+        }
+        this.metrics.readSenders.incrementAndGet();
+        this.metrics.readNanos.addAndGet(System.nanoTime() - start);
+
+        consumer.accept(new Item(sequence++, sender, incomingStorage, null, messages));
+        return sequence;
+    }
+
+    /**
+     * @return certificates in that message - a broken batch is dropped like a message which cannot be decoded
+     */
+    private List<byte[]> takeApart(String uri, byte[] message) {
+        if(!ASAPCertificate.ASAP_CERTIFICATE_BATCH_URI.equals(uri)) return Collections.singletonList(message);
+
+        try {
+            return ASAPCertificateImpl.splitBatch(message);
+        } catch (IOException e) {
+            Log.writeLog(this, "drop broken batch of certificates: " + e.getLocalizedMessage());
+            this.metrics.failedMessages.incrementAndGet();
+            return Collections.emptyList();
+        }
+    }
+
+    private void decode(Item item) {
+        if(item.message == null) return;
+
+        long start = System.nanoTime();
+        item.digest = CertificateTombstones.digest(item.message);
+        if(this.stages.isKnown(item.digest)) {
+            // each encounter delivers certificates again - don't even decode known ones
+            this.metrics.knownMessages.incrementAndGet();
+        } else {
+            try {
+                item.certificate = ASAPCertificateImpl.produceCertificateFromByteArray(item.message, this.address);
+                this.metrics.decodedMessages.incrementAndGet();
+            } catch (IOException | NoSuchAlgorithmException | InvalidKeySpecException | ASAPException e) {
+                Log.writeLog(this, "cannot create certificate: " + e.getLocalizedMessage());
+                this.metrics.failedMessages.incrementAndGet();
+            }
+        }
+        this.metrics.decodeNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private void index(Item item) {
+        long start = System.nanoTime();
+        if(item.message == null) {
+            if(item.incomingStorage != null) {
+                this.stages.senderDone(item.sender, item.incomingStorage, item.messages);
+            }
+        } else if(item.certificate != null) {
+            if(this.stages.index(item.digest, item.message, item.certificate)) {
+                this.metrics.indexedCertificates.incrementAndGet();
+            } else {
+                this.metrics.rejectedCertificates.incrementAndGet();
+            }
+        }
+        this.metrics.indexNanos.addAndGet(System.nanoTime() - start);
+    }
+}
@@ -13,6 +13,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface SharkPKIFacade {
@@ -85,6 +86,14 @@ public interface SharkPKIFacade {
             PublicKey publicKey, long validSince,
             ASAPEncounterConnectionType encounterType) throws ASAPSecurityException, IOException;
 
+    /**
+     * Same as {@link #addAndSignPerson(CharSequence, CharSequence, PublicKey, long, ASAPEncounterConnectionType)}
+     * for a number of credential messages at once. Certificates are signed in parallel and stored in one go.
+     * @return created certificates - one for each subject
+     */
+    List<ASAPCertificate> addAndSignPersons(Collection<CredentialMessage> credentialMessages)
+            throws ASAPSecurityException, IOException;
+
     void setSigningFailureRate(CharSequence personID, int failureRate) throws ASAPSecurityException;
 
     int getSigningFailureRate(CharSequence personID);
@@ -101,12 +110,20 @@ public interface SharkPKIFacade {
 
     Collection<ASAPCertificate> getCertificatesBySubject(CharSequence subjectID) throws ASAPSecurityException;
 
+    /**
+     * @return counter that is increased with each change of certificates or identity assurance
+     */
+    long getCertificatesChangeCounter();
+
     Set<ASAPCertificate> getAllCertificates();
 
     Collection<ASAPCertificate> getCertificatesByIssuer(CharSequence issuerID) throws ASAPSecurityException;
 
     ASAPCertificate getCertificateByIssuerAndSubject(CharSequence issuerID, CharSequence subjectID) throws ASAPSecurityException;
 
+    Map<CharSequence, ASAPCertificate> getCertificatesByIssuersAndSubject(
+            Collection<CharSequence> issuerIDs, CharSequence subjectID);
+
     /**
      * Add a certificate. Usually, app developers will not need it since this component creates and disseminates
      * certificates. Anyway, if there is a reason to introduce a certificate from the outside world into the Shark
@@ -1,23 +1,52 @@
 package net.sharksystem.pki;
 
 import net.sharksystem.SharkException;
+import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
 import net.sharksystem.asap.crypto.ASAPKeyStore;
+import net.sharksystem.asap.pki.KeyHelper;
+import net.sharksystem.asap.pki.PeerID;
 import net.sharksystem.asap.pki.SharkPKIFacade;
+import net.sharksystem.asap.utils.ASAPSerialization;
 import net.sharksystem.asap.utils.PeerIDHelper;
 import net.sharksystem.fs.ExtraData;
 
+import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Key store of a shark pki component. Public keys of other peers are taken from certificates. A resolved key
+ * is kept until certificates or identity assurance change - encrypting or verifying messages of a peer does not
+ * look up its certificates again.
+ * <br/>
+ * If there are several certificates of a peer, certificate storage takes the key from the one issued by the peer
+ * with the best identity assurance. The same key is chosen each time.
+ * <br/>
+ * Content for several peers can be encrypted in one envelope - see
+ * {@link #produceEncryptedEnvelope(byte[], Collection)}.
+ */
 class ASAPKeyStoreWrapper implements ASAPKeyStore {
     private final ASAPKeyStore asapKeyStore;
     private final SharkPKIFacade sharkPKIFacade;
 
+    private final Map<PeerID, PublicKey> publicKeys = new HashMap<>();
+    private long publicKeysChangeCounter;
+
     public ASAPKeyStoreWrapper(ASAPKeyStore asapKeyStore, SharkPKIFacade sharkPKIFacade) {
         this.asapKeyStore = asapKeyStore;
         this.sharkPKIFacade = sharkPKIFacade;
+        this.publicKeysChangeCounter = sharkPKIFacade.getCertificatesChangeCounter();
     }
 
     @Override
@@ -25,10 +54,114 @@ class ASAPKeyStoreWrapper implements ASAPKeyStore {
         if(PeerIDHelper.sameID(peerID, this.getOwner())) {
             return this.getPublicKey();
         }
+
+        // certificates are not thread safe anyway - resolve keys one by one
+        synchronized(this.publicKeys) {
+            long changeCounter = this.sharkPKIFacade.getCertificatesChangeCounter();
+            if(changeCounter != this.publicKeysChangeCounter) {
+                this.publicKeys.clear();
+                this.publicKeysChangeCounter = changeCounter;
+            }
+
+            PeerID id = PeerID.of(peerID);
+            PublicKey publicKey = this.publicKeys.get(id);
+            if(publicKey == null) {
+                publicKey = this.resolvePublicKey(peerID);
+                this.publicKeys.put(id, publicKey);
+            }
+            return publicKey;
+        }
+    }
+
+    /**
+     * Certificate storage chooses the key - see {@link SharkPKIFacade#getPublicKey(CharSequence)}.
+     */
+    private PublicKey resolvePublicKey(CharSequence peerID) throws ASAPSecurityException {
         try {
             return this.sharkPKIFacade.getPublicKey(peerID);
+        } catch (ASAPSecurityException e) {
+            throw e;
         } catch (SharkException e) {
-            throw new ASAPSecurityException(e);
+            throw new ASAPSecurityException("no public key of this peer: " + peerID, e);
+        }
+    }
+
+    /**
+     * Encrypt content for a number of recipients. Content is encrypted only once with a new symmetric key. Only
+     * that key is encrypted with public key of each recipient. Costs per recipient do not depend on content size.
+     * <br/>
+     * Envelope: number of recipients, (recipient id, encrypted symmetric key) for each recipient, encrypted content
+     * @param recipients recipient ids - duplicates are ignored; owner can be a recipient
+     * @throws ASAPSecurityException no public key of a recipient, no RSA key of a recipient or encryption failed
+     * @see #decryptEnvelope(byte[])
+     */
+    byte[] produceEncryptedEnvelope(byte[] content, Collection<? extends CharSequence> recipients)
+            throws ASAPSecurityException {
+
+        Map<PeerID, CharSequence> recipientIDs = new LinkedHashMap<>();
+        for(CharSequence recipient : recipients) recipientIDs.putIfAbsent(PeerID.of(recipient), recipient);
+        if(recipientIDs.isEmpty()) throw new ASAPSecurityException("no recipient");
+
+        // symmetric key is wrapped with RSA - check any recipient before anything is encrypted
+        Map<CharSequence, PublicKey> recipientKeys = new LinkedHashMap<>();
+        for(CharSequence recipient : recipientIDs.values()) {
+            PublicKey publicKey = this.getPublicKey(recipient);
+            if(!KeyHelper.KEY_ALGORITHM_RSA.equalsIgnoreCase(publicKey.getAlgorithm())) {
+                throw new ASAPSecurityException("cannot encrypt for " + recipient + " - public key is no "
+                        + KeyHelper.KEY_ALGORITHM_RSA + " key: " + publicKey.getAlgorithm());
+            }
+            recipientKeys.put(recipient, publicKey);
+        }
+
+        SecretKey secretKey = this.generateSymmetricKey();
+        byte[] encodedSecretKey = secretKey.getEncoded();
+
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ASAPSerialization.writeIntegerParameter(recipientKeys.size(), baos);
+
+            Cipher cipher = Cipher.getInstance(this.getAsymmetricEncryptionAlgorithm());
+            for(Map.Entry<CharSequence, PublicKey> recipientKey : recipientKeys.entrySet()) {
+                cipher.init(Cipher.ENCRYPT_MODE, recipientKey.getValue());
+                ASAPSerialization.writeCharSequenceParameter(recipientKey.getKey(), baos);
+                ASAPSerialization.writeByteArray(cipher.doFinal(encodedSecretKey), baos);
+            }
+
+            ASAPSerialization.writeByteArray(ASAPCryptoAlgorithms.encryptSymmetric(content, secretKey, this), baos);
+            return baos.toByteArray();
+        } catch (GeneralSecurityException | IOException e) {
+            throw new ASAPSecurityException("problems when encrypting envelope", e);
+        }
+    }
+
+    /**
+     * @return content of an envelope produced with {@link #produceEncryptedEnvelope(byte[], Collection)}
+     * @throws ASAPSecurityException owner is no recipient, malformed envelope or decryption failed
+     */
+    byte[] decryptEnvelope(byte[] envelope) throws ASAPSecurityException {
+        try {
+            ByteArrayInputStream bais = new ByteArrayInputStream(envelope);
+            int numberRecipients = ASAPSerialization.readIntegerParameter(bais);
+
+            byte[] encryptedSecretKey = null;
+            for(int i = 0; i < numberRecipients; i++) {
+                CharSequence recipient = ASAPSerialization.readCharSequenceParameter(bais);
+                byte[] encryptedKey = ASAPSerialization.readByteArray(bais);
+                if(encryptedSecretKey == null && PeerIDHelper.sameID(recipient, this.getOwner())) {
+                    encryptedSecretKey = encryptedKey;
+                }
+            }
+            if(encryptedSecretKey == null) {
+                throw new ASAPSecurityException("not a recipient of this envelope: " + this.getOwner());
+            }
+
+            SecretKey secretKey = ASAPCryptoAlgorithms.createSymmetricKey(
+                    ASAPCryptoAlgorithms.decryptAsymmetric(encryptedSecretKey, this), this);
+            return ASAPCryptoAlgorithms.decryptSymmetric(ASAPSerialization.readByteArray(bais), secretKey, this);
+        } catch (ASAPSecurityException e) {
+            throw e;
+        } catch (IOException | ASAPException e) {
+            throw new ASAPSecurityException("malformed envelope", e);
         }
     }
 
@@ -16,6 +16,7 @@ import java.io.IOException;
 import java.security.*;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -94,6 +95,26 @@ public interface SharkPKIComponent extends SharkComponent {
      */
     ASAPKeyStore getASAPKeyStore();
 
+    /**
+     * Encrypt content for a number of peers. Content is encrypted once with a new symmetric key. Only this key
+     * is encrypted with the public key of each recipient - adding a recipient costs the same with any content size.
+     * Use it instead of producing an encrypted message package for each recipient.
+     *
+     * @param content content to be encrypted
+     * @param recipients peer ids of recipients - a certificate must be present for each of them
+     * @return envelope - any recipient can decrypt it with {@link #decryptEnvelope(byte[])}
+     * @throws ASAPSecurityException no public key of a recipient or encryption failed
+     */
+    byte[] produceEncryptedEnvelope(byte[] content, Collection<? extends CharSequence> recipients)
+            throws ASAPSecurityException;
+
+    /**
+     * @param envelope envelope produced with {@link #produceEncryptedEnvelope(byte[], Collection)}
+     * @return decrypted content
+     * @throws ASAPSecurityException this peer is no recipient or decryption failed
+     */
+    byte[] decryptEnvelope(byte[] envelope) throws ASAPSecurityException;
+
     /**
      * Use this method to issue a new certificate based on a received message.
      * Users (human users! under no, repeated: under no, circumstances a machine) must ensure the identity of the
@@ -111,6 +132,20 @@ public interface SharkPKIComponent extends SharkComponent {
      */
     ASAPCertificate acceptAndSignCredential(CredentialMessage credentialMessage) throws IOException, ASAPSecurityException;
 
+    /**
+     * Same as {@link #acceptAndSignCredential(CredentialMessage)} for a number of credential messages - meant for
+     * applications that accept a lot of credentials at once, e.g. after a meeting. The very same care must be taken
+     * with each message. Certificates are signed in parallel and stored in one go. If there are several messages of
+     * a subject, the last one wins.
+     *
+     * @param credentialMessages credential messages to be certified
+     * @return created certificates - one for each subject. Certificates are exchanged automatically.
+     * @throws ASAPSecurityException
+     * @throws IOException
+     */
+    List<ASAPCertificate> acceptAndSignCredentials(Collection<CredentialMessage> credentialMessages)
+            throws IOException, ASAPSecurityException;
+
     /**
      * Create a new key pair. Old one is removed
      */
@@ -235,6 +270,15 @@ public interface SharkPKIComponent extends SharkComponent {
     ASAPCertificate getCertificateByIssuerAndSubject(CharSequence issuerID, CharSequence subjectID)
             throws ASAPSecurityException;
 
+    /**
+     * Bulk variant of getCertificateByIssuerAndSubject - e.g. to check a whole list of online peers at once.
+     * @param issuerIDs
+     * @param subjectID
+     * @return map issuerID -> certificate issued for subject. Issuers without such a certificate are not in this map.
+     */
+    Map<CharSequence, ASAPCertificate> getCertificatesByIssuersAndSubject(
+            Collection<CharSequence> issuerIDs, CharSequence subjectID);
+
     /**
      * Gets all certificates
      * @return
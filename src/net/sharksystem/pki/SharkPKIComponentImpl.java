@@ -63,7 +63,29 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
 
     @Override
     public ASAPKeyStore getASAPKeyStore() {
-        return new ASAPKeyStoreWrapper(this.sharkPKIFacade.getASAPKeyStore(), this.sharkPKIFacade);
+        return this.getASAPKeyStoreWrapper();
+    }
+
+    private ASAPKeyStoreWrapper getASAPKeyStoreWrapper() {
+        // one wrapper - it keeps resolved public keys
+        if(this.asapKeyStoreWrapper == null) {
+            this.asapKeyStoreWrapper =
+                    new ASAPKeyStoreWrapper(this.sharkPKIFacade.getASAPKeyStore(), this.sharkPKIFacade);
+        }
+        return this.asapKeyStoreWrapper;
+    }
+
+    @Override
+    public byte[] produceEncryptedEnvelope(byte[] content, Collection<? extends CharSequence> recipients)
+            throws ASAPSecurityException {
+        this.checkStatus();
+        return this.getASAPKeyStoreWrapper().produceEncryptedEnvelope(content, recipients);
+    }
+
+    @Override
+    public byte[] decryptEnvelope(byte[] envelope) throws ASAPSecurityException {
+        this.checkStatus();
+        return this.getASAPKeyStoreWrapper().decryptEnvelope(envelope);
     }
 
     /////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -103,9 +125,9 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
     }
 
     private void certificateReceived(ASAPMessages asapMessages) throws IOException {
-        Log.writeLog(this, "certificate received - sync in memo certificate storage with asap storage");
-        this.asapCertificateStorage.dropInMemoCache();
-        // should we sync identity assurance??
+        Log.writeLog(this, "certificate received - sync in memo certificate storage with next access");
+        // received certificates are incorporated with next access - see checkStatus()
+        this.certificateExpected = true;
     }
 
     private void credentialReceived(ASAPMessages asapMessages,
@@ -141,15 +163,12 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
 
         if(onlinePeerList == null || onlinePeerList.isEmpty()) return;
 
-        // is there a peer that has not yet signed our public key?
+        // is there a peer that has not yet signed our public key? - look up all in one go
+        Map<CharSequence, ASAPCertificate> certificatesByOnlinePeers =
+                this.getCertificatesByIssuersAndSubject(onlinePeerList, this.getOwnerID());
+
         for (CharSequence peerID : onlinePeerList) {
-            boolean found = false;
-            try {
-                ASAPCertificate cert = this.getCertificateByIssuerAndSubject(peerID, this.getOwnerID());
-                if (cert != null) found = true;
-            } catch (ASAPSecurityException e) {
-                // no certificate
-            }
+            boolean found = certificatesByOnlinePeers.containsKey(peerID);
 
             if(found) Log.writeLog(this, this.asapPeer.getPeerID().toString(),
                     "found a certificate issued by == " + peerID);
@@ -183,8 +202,10 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
     public static final String SHARK_PKI_DATA_KEY = "sharkPKIData";
     private SharkPKIFacade sharkPKIFacade = null;
     private ASAPStorageBasedCertificates asapCertificateStorage;
+    private CertificateCompactionService compactionService;
     private ASAPPeer asapPeer = null;
     private InMemoASAPKeyStore asapKeyStore;
+    private ASAPKeyStoreWrapper asapKeyStoreWrapper = null;
 
     /**
      * For debugging - get access to sub-component
@@ -207,8 +228,8 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
         try {
             ////// set up pki complete with its subcomponents
 
-            // key management
-            this.asapKeyStore = new InMemoASAPKeyStore(asapPeer.getPeerID());
+            // key management - pool is filled in background if key pair is about to expire
+            this.asapKeyStore = new PooledASAPKeyStore(asapPeer.getPeerID());
             this.asapKeyStore.setMementoTarget(this.owner.getSharkPeerExtraData());
 
             // hold messages - serialized certificates
@@ -219,8 +240,14 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
             this.asapCertificateStorage =
                 new ASAPStorageBasedCertificates(asapStorage, asapPeer.getPeerID(), peerName);
 
+            // remove dead entries left by removed and expired certificates - in background
+            if(this.compactionService != null) this.compactionService.shutdown();
+            this.compactionService = new CertificateCompactionService(this.asapCertificateStorage);
+            this.compactionService.compact();
+
             // bind components together and add person values support
             this.sharkPKIFacade = new SharkPKIFacadeImpl(this.asapCertificateStorage, this.asapKeyStore);
+            this.asapKeyStoreWrapper = null;
 
             // Set memento with shark peer (not asap peer) - should trigger a restore from memento
             this.sharkPKIFacade.setMementoTarget(this.owner.getSharkPeerExtraData());
@@ -257,8 +284,8 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
 
         if(this.certificateExpected) {
             this.certificateExpected = false;
-            // good chance that something was received
-            this.asapCertificateStorage.dropInMemoCache();
+            // good chance that something was received - add it to in memo structures
+            this.asapCertificateStorage.getNewReceivedCertificates();
             //this.asapPKIStorage.incorporateReceivedCertificates();
         }
     }
@@ -380,8 +407,6 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
                 credentialMessage.getValidSince(),
                 credentialMessage.getConnectionTypeCredentialReceived());
 
-        this.asapCertificateStorage.dropInMemoCache();
-
         // spread the news - we have got a new certificate
         try {
             this.asapPeer.sendASAPMessage(ASAPCertificateStorage.PKI_APP_NAME,
@@ -394,6 +419,29 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
         return asapCertificate;
     }
 
+    @Override
+    public List<ASAPCertificate> acceptAndSignCredentials(Collection<CredentialMessage> credentialMessages)
+            throws IOException, ASAPSecurityException {
+
+        this.checkStatus();
+        List<ASAPCertificate> asapCertificates = this.sharkPKIFacade.addAndSignPersons(credentialMessages);
+        Log.writeLog(this, "accepted and signed credentials: " + asapCertificates.size());
+
+        // spread the news - we have got new certificates, all in one message
+        if(!asapCertificates.isEmpty()) {
+            try {
+                this.asapPeer.sendASAPMessage(ASAPCertificateStorage.PKI_APP_NAME,
+                        ASAPCertificate.ASAP_CERTIFICATE_BATCH_URI, ASAPCertificateImpl.produceBatch(asapCertificates));
+
+            } catch (ASAPException e) {
+                Log.writeLog(this, "could not send certificates to online peers (ignored): "
+                        + e.getLocalizedMessage());
+            }
+        }
+
+        return asapCertificates;
+    }
+
     /*
     public ASAPCertificate addAndSignPerson(CharSequence userID, CharSequence userName, PublicKey publicKey, long validSince) throws ASAPSecurityException, IOException {
         this.checkStatus();
@@ -481,6 +529,13 @@ class SharkPKIComponentImpl extends AbstractSharkComponent
         return this.sharkPKIFacade.getCertificateByIssuerAndSubject(issuerID, subjectID);
     }
 
+    @Override
+    public Map<CharSequence, ASAPCertificate> getCertificatesByIssuersAndSubject(
+            Collection<CharSequence> issuerIDs, CharSequence subjectID) {
+        this.checkStatus();
+        return this.sharkPKIFacade.getCertificatesByIssuersAndSubject(issuerIDs, subjectID);
+    }
+
     @Override
     public void addCertificate(ASAPCertificate asapCertificate) throws IOException, ASAPException {
         this.checkStatus();
@@ -0,0 +1,314 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+import net.sharksystem.asap.utils.ASAPSerialization;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ASAPCertificateSerializationTests {
+    static KeyPair createKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    static ASAPCertificateImpl createCertificate(KeyPair issuerKeys, String subject,
+                                                 ASAPEncounterConnectionType encounterType) throws Exception {
+        return ASAPCertificateImpl.produceCertificate(
+                "Bob_ID", "Bob", issuerKeys.getPrivate(),
+                subject + "_ID", subject, createKeyPair().getPublic(),
+                System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD, encounterType);
+    }
+
+    /**
+     * Serialization as it was done with streams
+     */
+    static byte[] legacyBytes(ASAPCertificate certificate, byte[] signature) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        ASAPSerialization.writeCharSequenceParameter(certificate.getIssuerID(), dos);
+        ASAPSerialization.writeCharSequenceParameter(certificate.getIssuerName(), dos);
+        ASAPSerialization.writeCharSequenceParameter(certificate.getSubjectID(), dos);
+        ASAPSerialization.writeCharSequenceParameter(certificate.getSubjectName(), dos);
+        ASAPSerialization.writeLongParameter(certificate.getValidSince().getTimeInMillis(), dos);
+        ASAPSerialization.writeLongParameter(certificate.getValidUntil().getTimeInMillis(), dos);
+        ASAPSerialization.writeCharSequenceParameter(ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD, dos);
+        ASAPSerialization.writeEncounterConnectionType(certificate.getConnectionTypeCredentialsReceived(), dos);
+        KeyHelper.writePublicKeyToStream(certificate.getPublicKey(), dos);
+        dos.writeInt(signature.length);
+        dos.write(signature);
+        return baos.toByteArray();
+    }
+
+    /**
+     * @return signature - anything else is checked against certificate
+     */
+    static byte[] legacyRead(byte[] serialized, ASAPCertificate certificate) throws Exception {
+        ByteArrayInputStream bais = new ByteArrayInputStream(serialized);
+        DataInputStream dis = new DataInputStream(bais);
+        Assert.assertEquals(certificate.getIssuerID(), ASAPSerialization.readCharSequenceParameter(bais));
+        Assert.assertEquals(certificate.getIssuerName(), ASAPSerialization.readCharSequenceParameter(bais));
+        Assert.assertEquals(certificate.getSubjectID(), ASAPSerialization.readCharSequenceParameter(bais));
+        Assert.assertEquals(certificate.getSubjectName(), ASAPSerialization.readCharSequenceParameter(bais));
+        Assert.assertEquals(certificate.getValidSince().getTimeInMillis(), ASAPSerialization.readLongParameter(bais));
+        Assert.assertEquals(certificate.getValidUntil().getTimeInMillis(), ASAPSerialization.readLongParameter(bais));
+        Assert.assertEquals(ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD, ASAPSerialization.readCharSequenceParameter(bais));
+        Assert.assertEquals(certificate.getConnectionTypeCredentialsReceived(),
+                ASAPSerialization.readEncounterConnectionType(bais));
+        Assert.assertEquals(certificate.getPublicKey(), KeyHelper.readPublicKeyFromStream(dis));
+        byte[] signature = new byte[dis.readInt()];
+        dis.readFully(signature);
+        Assert.assertEquals(0, dis.available());
+        return signature;
+    }
+
+    private static void assertSameCertificate(ASAPCertificate expected, ASAPCertificate actual) {
+        Assert.assertTrue(expected.isIdentical(actual));
+        Assert.assertEquals(expected.getIssuerName(), actual.getIssuerName());
+        Assert.assertEquals(expected.getSubjectName(), actual.getSubjectName());
+        Assert.assertArrayEquals(expected.asBytes(), actual.asBytes());
+    }
+
+    @Test
+    public void wireCompatible() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        for(ASAPEncounterConnectionType encounterType : ASAPEncounterConnectionType.values()) {
+            ASAPCertificateImpl certificate = createCertificate(issuerKeys, "Alice", encounterType);
+            byte[] serialized = certificate.asBytes();
+
+            // legacy reader understands new format ...
+            byte[] signature = legacyRead(serialized, certificate);
+            // ... and it is byte by byte the same
+            Assert.assertArrayEquals(legacyBytes(certificate, signature), serialized);
+
+            ASAPCertificate copy = ASAPCertificateImpl.produceCertificateFromBytes(serialized);
+            assertSameCertificate(certificate, copy);
+            Assert.assertTrue(copy.verify(issuerKeys.getPublic()));
+        }
+    }
+
+    @Test
+    public void readSlicesOfLargerBuffer() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        List<ASAPCertificateImpl> certificates = new ArrayList<>();
+        int length = 0;
+        for(int i = 0; i < 5; i++) {
+            ASAPCertificateImpl certificate = createCertificate(issuerKeys, "Subject_" + i,
+                    ASAPEncounterConnectionType.INTERNET);
+            certificates.add(certificate);
+            length += certificate.getSerializedLength();
+        }
+
+        // certificates one after another in a direct buffer behind some other data
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length + 10);
+        buffer.position(10);
+        for(ASAPCertificateImpl certificate : certificates) {
+            certificate.writeTo(buffer);
+        }
+        Assert.assertFalse(buffer.hasRemaining());
+
+        buffer.position(10);
+        ByteBuffer slice = buffer.slice();
+        for(ASAPCertificateImpl certificate : certificates) {
+            ASAPCertificate copy = ASAPCertificateImpl.produceCertificateFromBuffer(slice);
+            assertSameCertificate(certificate, copy);
+            Assert.assertTrue(copy.verify(issuerKeys.getPublic()));
+        }
+        Assert.assertFalse(slice.hasRemaining());
+
+        // heap buffer with offset
+        byte[] serialized = certificates.get(0).asBytes();
+        byte[] padded = new byte[serialized.length + 7];
+        System.arraycopy(serialized, 0, padded, 3, serialized.length);
+        ByteBuffer heapSlice = ByteBuffer.wrap(padded, 3, serialized.length).slice();
+        assertSameCertificate(certificates.get(0), ASAPCertificateImpl.produceCertificateFromBuffer(heapSlice));
+    }
+
+    @Test
+    public void truncatedOrTooSmall() throws Exception {
+        ASAPCertificateImpl certificate = createCertificate(createKeyPair(), "Alice", ASAPEncounterConnectionType.UNKNOWN);
+        byte[] serialized = certificate.asBytes();
+
+        // signature is not complete - was read silently before
+        for(int cut : new int[] {1, 100, serialized.length - 1}) {
+            try {
+                ASAPCertificateImpl.produceCertificateFromBytes(Arrays.copyOf(serialized, serialized.length - cut));
+                Assert.fail("truncated certificate accepted: " + cut);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+
+        ByteBuffer tooSmall = ByteBuffer.allocate(serialized.length - 1);
+        try {
+            certificate.writeTo(tooSmall);
+            Assert.fail("buffer overflow expected");
+        } catch (BufferOverflowException e) {
+            Assert.assertEquals(0, tooSmall.position());
+        }
+    }
+
+    /**
+     * Encoding and decoding costs are measured by CertificateSerializationBenchmark.
+     */
+    @Test
+    public void manyCertificatesInOneBuffer() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        ASAPCertificateImpl certificate = createCertificate(issuerKeys, "Alice", ASAPEncounterConnectionType.INTERNET);
+        byte[] signature = legacyRead(certificate.asBytes(), certificate);
+        Assert.assertArrayEquals(legacyBytes(certificate, signature), certificate.asBytes());
+
+        int number = 100;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(certificate.getSerializedLength() * number);
+        for(int i = 0; i < number; i++) certificate.writeTo(buffer);
+        Assert.assertFalse(buffer.hasRemaining());
+
+        buffer.flip();
+        for(int i = 0; i < number; i++) {
+            assertSameCertificate(certificate, ASAPCertificateImpl.produceCertificateFromBuffer(buffer));
+        }
+        Assert.assertFalse(buffer.hasRemaining());
+    }
+
+    /**
+     * Allocations of encoding and verification are measured by CertificateSerializationBenchmark.
+     */
+    @Test
+    public void encodedOnlyOnce() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        ASAPCertificateImpl certificate = createCertificate(issuerKeys, "Alice", ASAPEncounterConnectionType.INTERNET);
+        ASAPCertificate received = ASAPCertificateImpl.produceCertificateFromBytes(certificate.asBytes());
+        Assert.assertSame(certificate.asBytes(), certificate.asBytes());
+        Assert.assertSame(received.asBytes(), received.asBytes());
+
+        // kept encoding is what encoding all fields again would produce
+        byte[] signature = legacyRead(received.asBytes(), certificate);
+        Assert.assertArrayEquals(legacyBytes(certificate, signature), received.asBytes());
+
+        // verification works on kept encoding - and leaves it as it is
+        byte[] serialized = received.asBytes().clone();
+        for(int i = 0; i < 10; i++) Assert.assertTrue(received.verify(issuerKeys.getPublic()));
+        Assert.assertArrayEquals(serialized, received.asBytes());
+    }
+
+    @Test
+    public void lazyPublicKey() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        ASAPCertificateImpl certificate = createCertificate(issuerKeys, "Alice", ASAPEncounterConnectionType.INTERNET);
+        byte[] serialized = certificate.asBytes();
+
+        ASAPCertificate lazy = ASAPCertificateImpl.produceLazyCertificate(serialized.clone(), null);
+        Assert.assertTrue(lazy.isIdentical(certificate));
+        Assert.assertTrue(certificate.isIdentical(lazy));
+        Assert.assertArrayEquals(serialized, lazy.asBytes());
+        Assert.assertEquals(certificate.getPublicKey(), lazy.getPublicKey());
+        Assert.assertTrue(lazy.verify(issuerKeys.getPublic()));
+
+        // break key encoding - lazy certificate is read anyway, key is not decoded before first use
+        int keyLength = certificate.getPublicKey().getEncoded().length;
+        byte[] brokenKey = serialized.clone();
+        brokenKey[serialized.length - 4 - 256 - keyLength] = 0;
+        ASAPCertificate lazyBrokenKey = ASAPCertificateImpl.produceLazyCertificate(brokenKey, null);
+        Assert.assertEquals("Alice_ID", lazyBrokenKey.getSubjectID());
+        Assert.assertEquals(certificate.getValidUntil(), lazyBrokenKey.getValidUntil());
+        Assert.assertNull(lazyBrokenKey.getPublicKey());
+        Assert.assertFalse(lazyBrokenKey.verify(issuerKeys.getPublic()));
+        try {
+            ASAPCertificateImpl.produceCertificateFromBytes(brokenKey);
+            Assert.fail("broken key accepted");
+        } catch (GeneralSecurityException e) {
+            // expected
+        }
+    }
+
+    static long usedHeap() {
+        for(int i = 0; i < 3; i++) System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return serialized certificates - 1000 different ones, repeated
+     */
+    static List<byte[]> createMessages(KeyPair issuerKeys, int numberCertificates) throws Exception {
+        // key generation and signing is slow - take 1000 certificates with 10 keys again and again
+        List<PublicKey> subjectKeys = new ArrayList<>();
+        for(int i = 0; i < 10; i++) subjectKeys.add(createKeyPair().getPublic());
+        List<byte[]> messages = new ArrayList<>();
+        for(int i = 0; i < 1000; i++) {
+            messages.add(ASAPCertificateImpl.produceCertificate("Bob_ID", "Bob", issuerKeys.getPrivate(),
+                    "Subject_" + i + "_ID", "Subject_" + i, subjectKeys.get(i % 10), System.currentTimeMillis(),
+                    ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD, ASAPEncounterConnectionType.INTERNET).asBytes());
+        }
+        while(messages.size() < numberCertificates) {
+            messages.add(messages.get(messages.size() % 1000).clone());
+        }
+        return messages;
+    }
+
+    /**
+     * Load time and heap with 100k certificates are measured by CertificateSerializationBenchmark.
+     */
+    @Test
+    public void lazyLoadDecodesKeysOnFirstUse() throws Exception {
+        int numberCertificates = 10000;
+        KeyPair issuerKeys = createKeyPair();
+        List<byte[]> messages = createMessages(issuerKeys, numberCertificates);
+        PublicKeyCache keyCache = KeyHelper.getPublicKeyCache();
+
+        // eager - each key is decoded or taken from cache with loading
+        long keyLookups = keyCache.getHits() + keyCache.getMisses();
+        for(int i = 0; i < numberCertificates; i++) {
+            ASAPCertificateImpl.produceCertificateFromBytes(messages.get(i));
+        }
+        Assert.assertEquals(keyLookups + numberCertificates, keyCache.getHits() + keyCache.getMisses());
+
+        // lazy - no key is touched with loading
+        ASAPCertificate[] certificates = new ASAPCertificate[numberCertificates];
+        keyLookups = keyCache.getHits() + keyCache.getMisses();
+        for(int i = 0; i < numberCertificates; i++) {
+            certificates[i] = ASAPCertificateImpl.produceLazyCertificate(messages.get(i), null);
+        }
+        Assert.assertEquals(keyLookups, keyCache.getHits() + keyCache.getMisses());
+
+        ASAPCertificate last = certificates[numberCertificates - 1];
+        Assert.assertTrue(last.isIdentical(
+                ASAPCertificateImpl.produceCertificateFromBytes(messages.get(numberCertificates - 1))));
+        Assert.assertNotNull(last.getPublicKey());
+        Assert.assertTrue(last.verify(issuerKeys.getPublic()));
+    }
+
+    /**
+     * Heap per certificate is measured by CertificateSerializationBenchmark.
+     */
+    @Test
+    public void lazyCertificatesShareNames() throws Exception {
+        int numberCertificates = 2000;
+        List<byte[]> messages = createMessages(createKeyPair(), numberCertificates);
+
+        ASAPCertificate[] certificates = new ASAPCertificate[numberCertificates];
+        for(int i = 0; i < numberCertificates; i++) {
+            certificates[i] = ASAPCertificateImpl.produceLazyCertificate(messages.get(i), null);
+        }
+
+        // names are shared
+        Assert.assertSame(certificates[0].getIssuerID(), certificates[1].getIssuerID());
+        Assert.assertSame(certificates[5].getSubjectName(), certificates[1005].getSubjectName());
+        Assert.assertEquals(certificates[7].getValidUntil().getTimeInMillis(), certificates[7].getValidUntilMillis());
+
+        // so are decoded keys - 10 different keys only
+        Assert.assertNotNull(certificates[3].getPublicKey());
+        Assert.assertSame(certificates[3].getPublicKey(), certificates[13].getPublicKey());
+    }
+}
@@ -0,0 +1,581 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPException;
+import net.sharksystem.asap.ASAPStorage;
+import net.sharksystem.asap.engine.ASAPEngine;
+import net.sharksystem.asap.engine.ASAPEngineFS;
+import net.sharksystem.fs.FSUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ASAPStorageBasedCertificatesTests {
+    static final String ROOT_DIRECTORY = "playground/certificateIndexTests/";
+    static final String OWNER_ID = "Alice_ID";
+
+    static ASAPEngine getASAPStorage() throws IOException, ASAPException {
+        return ASAPEngineFS.getASAPStorage(OWNER_ID, ROOT_DIRECTORY + OWNER_ID, ASAPCertificateStorage.PKI_APP_NAME);
+    }
+
+    static void storeCertificates(ASAPCertificateStorage storage, KeyPair issuerKeys, int from, int to)
+            throws Exception {
+        for(int i = from; i < to; i++) {
+            storage.storeCertificate(ASAPCertificateImpl.produceCertificate(
+                    "Bob_ID", "Bob", issuerKeys.getPrivate(),
+                    "Subject_" + i, "Subject " + i, issuerKeys.getPublic(),
+                    System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD));
+        }
+    }
+
+    static KeyPair createKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static int countCertificates() throws IOException, ASAPException {
+        return new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice")
+                .getCertificatesByIssuerID("Bob_ID").size();
+    }
+
+    @Test
+    public void startWithIndexSnapshot() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+
+        ASAPEngine asapStorage = getASAPStorage();
+        storeCertificates(new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice"), issuerKeys, 0, 100);
+
+        File snapshotFile = new File(
+                ((ASAPEngineFS) asapStorage).getRootFolder() + CertificateIndexSnapshot.FILE_EXTENSION);
+        Assert.assertFalse(snapshotFile.exists());
+
+        // first start reads whole storage and writes snapshot
+        Assert.assertEquals(100, countCertificates());
+        Assert.assertTrue(snapshotFile.exists());
+        // further starts read snapshot
+        Assert.assertEquals(100, countCertificates());
+        Assert.assertEquals(100, CertificateIndexSnapshot.read(snapshotFile).entries.size());
+
+        // new certificates are appended - only those are read again
+        storeCertificates(new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice"),
+                issuerKeys, 100, 110);
+        Assert.assertEquals(110, countCertificates());
+        Assert.assertEquals(110, CertificateIndexSnapshot.read(snapshotFile).entries.size());
+
+        // tombstone: snapshot stays valid
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice");
+        Assert.assertEquals(ASAPStorageBasedCertificates.RemovalMode.TOMBSTONE, storage.getRemovalMode());
+        storage.removeCertificate(storage.getCertificatesBySubjectID("Subject_5"));
+        Assert.assertTrue(storage.getCertificatesBySubjectID("Subject_5").isEmpty());
+        Assert.assertTrue(snapshotFile.exists());
+        Assert.assertEquals(109, countCertificates());
+
+        // chunk rewrite invalidates snapshot
+        storage = new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice");
+        storage.setRemovalMode(ASAPStorageBasedCertificates.RemovalMode.REWRITE_CHUNK);
+        storage.removeCertificate(storage.getCertificatesBySubjectID("Subject_6"));
+        Assert.assertFalse(snapshotFile.exists());
+        int afterRemoval = countCertificates();
+        Assert.assertEquals(108, afterRemoval);
+        Assert.assertTrue(snapshotFile.exists());
+
+        // corrupted snapshot is ignored
+        try(RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+            file.seek(file.length() - 10);
+            file.write(~file.read());
+        }
+        Assert.assertNull(CertificateIndexSnapshot.read(snapshotFile));
+        Assert.assertEquals(afterRemoval, countCertificates());
+        Assert.assertNotNull(CertificateIndexSnapshot.read(snapshotFile));
+
+        // snapshot of another owner is ignored
+        new CertificateIndexSnapshot("Clara_ID", asapStorage.getEra(), 0,
+                new ArrayList<CertificateIndexSnapshot.Entry>()).write(snapshotFile);
+        Assert.assertEquals(afterRemoval, countCertificates());
+    }
+
+    @Test
+    public void removeInEachMode() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        int number = 500;
+        int removals = 10;
+        storeCertificates(new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice"),
+                createKeyPair(), 0, number);
+
+        for(ASAPStorageBasedCertificates.RemovalMode removalMode : ASAPStorageBasedCertificates.RemovalMode.values()) {
+            ASAPStorageBasedCertificates storage =
+                    new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice");
+            storage.setRemovalMode(removalMode);
+            int offset = removalMode.ordinal() * removals;
+            // set up in memory structures
+            storage.getCertificatesBySubjectID("Subject_0");
+
+            for(int i = offset; i < offset + removals; i++) {
+                storage.removeCertificate(storage.getCertificatesBySubjectID("Subject_" + i));
+                Assert.assertTrue(storage.getCertificatesBySubjectID("Subject_" + i).isEmpty());
+            }
+            Assert.assertEquals(number - offset - removals, storage.getCertificatesByIssuerID("Bob_ID").size());
+        }
+
+        Assert.assertEquals(number - 2 * removals, countCertificates());
+    }
+
+    @Test
+    public void compactDeadEntriesAndSparseEras() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+
+        // eras with 20, 5, 3, 1, 1, 1 certificates - current era is empty
+        ASAPEngine asapStorage = getASAPStorage();
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+        int[] eraSizes = {20, 5, 3, 1, 1, 1};
+        int[] eras = new int[eraSizes.length];
+        int number = 0;
+        for(int i = 0; i < eraSizes.length; i++) {
+            eras[i] = asapStorage.getEra();
+            storeCertificates(storage, issuerKeys, number, number + eraSizes[i]);
+            number += eraSizes[i];
+            asapStorage.newEra();
+        }
+
+        // half of first era removed
+        storage = new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice");
+        for(int i = 0; i < 10; i++) {
+            storage.removeCertificate(storage.getCertificatesBySubjectID("Subject_" + i));
+        }
+        Assert.assertEquals(number - 10, countCertificates());
+
+        CertificateCompactionReport report = new CertificateCompactionService(storage).compactNow();
+        Assert.assertEquals(eraSizes.length, report.getCheckedEras());
+        Assert.assertEquals(1, report.getRewrittenEras());
+        Assert.assertEquals(10, report.getRemovedMessages());
+        Assert.assertTrue(report.getReclaimedBytes() > 0);
+        // second era merged into third one - most recent eras are kept
+        Assert.assertEquals(1, report.getMergedEras());
+
+        Assert.assertEquals(10, getASAPStorage().getChunkStorage()
+                .getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, eras[0]).getNumberMessage());
+        Assert.assertFalse(getASAPStorage().getChunkStorage()
+                .existsChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, eras[1]));
+
+        // compacted storage is in memory as well
+        Assert.assertEquals(number - 10, storage.getCertificatesByIssuerID("Bob_ID").size());
+        Assert.assertEquals(eras[2], storage.getCertificatesBySubjectID("Subject_21")
+                .iterator().next().getASAPStorageAddress().getEra());
+
+        // with snapshot and without it
+        Assert.assertEquals(number - 10, countCertificates());
+        Assert.assertTrue(new File(((ASAPEngineFS) getASAPStorage()).getRootFolder()
+                + CertificateIndexSnapshot.FILE_EXTENSION).delete());
+        Assert.assertEquals(number - 10, countCertificates());
+
+        // nothing left to do
+        Assert.assertFalse(new CertificateCompactionService(storage).compactNow().changedStorage());
+    }
+
+    @Test
+    public void certificateSurvivesMergeThenRemoved() throws Exception {
+        for(ASAPStorageBasedCertificates.RemovalMode removalMode : ASAPStorageBasedCertificates.RemovalMode.values()) {
+            FSUtils.removeFolder(ROOT_DIRECTORY);
+            KeyPair issuerKeys = createKeyPair();
+
+            // eras with 2, 3, 1, 1, 1 certificates - first two are merged
+            ASAPEngine asapStorage = getASAPStorage();
+            ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+            storage.setRemovalMode(removalMode);
+            int[] eraSizes = {2, 3, 1, 1, 1};
+            int[] eras = new int[eraSizes.length];
+            int number = 0;
+            for(int i = 0; i < eraSizes.length; i++) {
+                eras[i] = asapStorage.getEra();
+                storeCertificates(storage, issuerKeys, number, number + eraSizes[i]);
+                number += eraSizes[i];
+                asapStorage.newEra();
+            }
+
+            // taken before compaction - refers to first era
+            Collection<ASAPCertificate> moved = storage.getCertificatesBySubjectID("Subject_0");
+            Assert.assertEquals(eras[0], moved.iterator().next().getASAPStorageAddress().getEra());
+
+            CertificateCompactionReport report = new CertificateCompactionService(storage).compactNow();
+            Assert.assertEquals(1, report.getMergedEras());
+            // merged into the newest of both eras
+            Assert.assertFalse(getASAPStorage().getChunkStorage()
+                    .existsChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, eras[0]));
+            Assert.assertEquals(5, getASAPStorage().getChunkStorage()
+                    .getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, eras[1]).getNumberMessage());
+
+            storage.removeCertificate(moved);
+
+            Assert.assertEquals(removalMode.toString(), number - 1, countCertificates());
+            ASAPStorageBasedCertificates reloaded =
+                    new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice");
+            Assert.assertTrue(reloaded.getCertificatesBySubjectID("Subject_0").isEmpty());
+            Assert.assertEquals(eras[1], reloaded.getCertificatesBySubjectID("Subject_1")
+                    .iterator().next().getASAPStorageAddress().getEra());
+        }
+    }
+
+    static Map<String, Integer> loadCertificates(int parallelism) throws IOException, ASAPException {
+        ASAPEngine asapStorage = getASAPStorage();
+        // full scan - no index
+        new File(((ASAPEngineFS) asapStorage).getRootFolder() + CertificateIndexSnapshot.FILE_EXTENSION).delete();
+
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+        storage.setLoadParallelism(parallelism);
+
+        Map<String, Integer> eraBySubject = new TreeMap<>();
+        for(ASAPCertificate certificate : storage.getCertificatesByIssuerID("Bob_ID")) {
+            eraBySubject.put(certificate.getSubjectID().toString(), certificate.getASAPStorageAddress().getEra());
+        }
+        return eraBySubject;
+    }
+
+    /**
+     * Load time against store size and core count is measured by CertificateLoadBenchmark.
+     */
+    @Test
+    public void parallelLoad() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+
+        ASAPEngine asapStorage = getASAPStorage();
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+        int number = 0;
+        for(int size : new int[] {50, 150, 200}) {
+            storeCertificates(storage, issuerKeys, number, number + size);
+            number += size;
+            asapStorage.newEra();
+
+            Map<String, Integer> expected = loadCertificates(1);
+            Assert.assertEquals(number, expected.size());
+
+            // same certificates from same eras in any mode
+            for(int parallelism : new int[] {2, 4}) {
+                Assert.assertEquals(expected, loadCertificates(parallelism));
+            }
+        }
+    }
+
+    @Test
+    public void repeatedEncountersDoNotGrowStorage() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+        int number = 10;
+        int encounters = 1000;
+
+        List<byte[]> received = new ArrayList<>();
+        for(int i = 0; i < number; i++) {
+            received.add(ASAPCertificateImpl.produceCertificate(
+                    "Bob_ID", "Bob", issuerKeys.getPrivate(),
+                    "Subject_" + i, "Subject " + i, issuerKeys.getPublic(),
+                    System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD).asBytes());
+        }
+
+        ASAPEngine asapStorage = getASAPStorage();
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+        // own certificate - Bob sends a copy as well
+        storeCertificates(storage, issuerKeys, number, number + 1);
+        received.add(storage.getCertificatesBySubjectID("Subject_" + number).iterator().next().asBytes());
+
+        int newCertificates = 0;
+        for(int encounter = 0; encounter < encounters; encounter++) {
+            // Bob sends anything he has with each encounter
+            ASAPStorage incomingStorage = asapStorage.getIncomingStorage("Bob_ID");
+            for(byte[] message : received) {
+                incomingStorage.add(ASAPCertificate.ASAP_CERTIFICATE_URI, message);
+            }
+            newCertificates += storage.getNewReceivedCertificates().size();
+        }
+
+        int storedMessages = asapStorage.getChunkStorage()
+                .getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, asapStorage.getEra()).getNumberMessage();
+
+        Assert.assertEquals(number, newCertificates);
+        Assert.assertEquals(number + 1, storedMessages);
+        Assert.assertEquals(number + 1, countCertificates());
+    }
+
+    @Test
+    public void receiveRemovedCertificatesAgain() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+
+        ASAPEngine asapStorage = getASAPStorage();
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+        Assert.assertEquals(ASAPStorageBasedCertificates.RemovalMode.TOMBSTONE, storage.getRemovalMode());
+        storeCertificates(storage, issuerKeys, 0, 2);
+        asapStorage.newEra();
+        storeCertificates(storage, issuerKeys, 2, 3);
+
+        // removed from an older era and from current era
+        List<byte[]> received = new ArrayList<>();
+        for(String subjectID : new String[] {"Subject_0", "Subject_2"}) {
+            Collection<ASAPCertificate> certificates = storage.getCertificatesBySubjectID(subjectID);
+            received.add(certificates.iterator().next().asBytes());
+            storage.removeCertificate(certificates);
+        }
+        Assert.assertEquals(1, countCertificates());
+
+        // Bob sends both again
+        ASAPStorage incomingStorage = asapStorage.getIncomingStorage("Bob_ID");
+        for(byte[] message : received) {
+            incomingStorage.add(ASAPCertificate.ASAP_CERTIFICATE_URI, message);
+        }
+
+        // copy of older era is taken - tombstone of current era would hide the other one
+        Collection<ASAPCertificate> newCertificates = storage.getNewReceivedCertificates();
+        Assert.assertEquals(1, newCertificates.size());
+        Assert.assertEquals("Subject_0", newCertificates.iterator().next().getSubjectID().toString());
+        Assert.assertEquals(1, storage.getCertificatesBySubjectID("Subject_0").size());
+        Assert.assertTrue(storage.getCertificatesBySubjectID("Subject_2").isEmpty());
+
+        // same after next load
+        ASAPStorageBasedCertificates reloaded = new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice");
+        Assert.assertEquals(asapStorage.getEra(), reloaded.getCertificatesBySubjectID("Subject_0")
+                .iterator().next().getASAPStorageAddress().getEra());
+        Assert.assertTrue(reloaded.getCertificatesBySubjectID("Subject_2").isEmpty());
+        Assert.assertEquals(2, countCertificates());
+    }
+
+    @Test
+    public void receiveBatchOfCertificates() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+        int number = 10;
+
+        List<ASAPCertificate> batch = new ArrayList<>();
+        for(int i = 0; i < number; i++) {
+            batch.add(ASAPCertificateImpl.produceCertificate(
+                    "Bob_ID", "Bob", issuerKeys.getPrivate(),
+                    "Subject_" + i, "Subject " + i, issuerKeys.getPublic(),
+                    System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD));
+        }
+        byte[] batchMessage = ASAPCertificateImpl.produceBatch(batch);
+
+        ASAPEngine asapStorage = getASAPStorage();
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+        // loaded - received certificates would be read with it
+        Assert.assertTrue(storage.getAllCertificates().isEmpty());
+        // one batch, a single certificate which is in batch as well and a broken batch
+        ASAPStorage incomingStorage = asapStorage.getIncomingStorage("Bob_ID");
+        incomingStorage.add(ASAPCertificate.ASAP_CERTIFICATE_BATCH_URI, batchMessage);
+        incomingStorage.add(ASAPCertificate.ASAP_CERTIFICATE_URI, batch.get(0).asBytes());
+        incomingStorage.add(ASAPCertificate.ASAP_CERTIFICATE_BATCH_URI,
+                Arrays.copyOf(batchMessage, batchMessage.length - 1));
+
+        Assert.assertEquals(number, storage.getNewReceivedCertificates().size());
+        CertificateIngestMetrics metrics = storage.getIngestMetrics();
+        Assert.assertEquals(number + 1, metrics.getReadMessages());
+        Assert.assertEquals(1, metrics.getFailedMessages());
+        for(int i = 0; i < number; i++) {
+            Assert.assertTrue(storage.getCertificatesBySubjectID("Subject_" + i)
+                    .iterator().next().verify(issuerKeys.getPublic()));
+        }
+        Assert.assertEquals(number, countCertificates());
+
+        // all messages taken - nothing read again
+        Assert.assertTrue(storage.getNewReceivedCertificates().isEmpty());
+        Assert.assertEquals(number + 1, metrics.getReadMessages());
+    }
+
+    @Test
+    public void skipSendersWithoutNewCertificates() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+        int senders = 200;
+
+        ASAPEngine asapStorage = getASAPStorage();
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, OWNER_ID, "Alice");
+        // loaded - received certificates would be read with it
+        Assert.assertTrue(storage.getAllCertificates().isEmpty());
+        for(int i = 0; i < senders; i++) {
+            asapStorage.getIncomingStorage("Sender_" + i).add(ASAPCertificate.ASAP_CERTIFICATE_URI,
+                    ASAPCertificateImpl.produceCertificate("Sender_" + i, "Sender", issuerKeys.getPrivate(),
+                            "Subject_" + i, "Subject " + i, issuerKeys.getPublic(),
+                            System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD).asBytes());
+        }
+
+        Assert.assertEquals(senders, storage.getNewReceivedCertificates().size());
+
+        // nothing new
+        for(int i = 0; i < 10; i++) {
+            Assert.assertTrue(storage.getNewReceivedCertificates().isEmpty());
+        }
+
+        // new message from one sender is found
+        asapStorage.getIncomingStorage("Sender_7").add(ASAPCertificate.ASAP_CERTIFICATE_URI,
+                ASAPCertificateImpl.produceCertificate("Sender_7", "Sender", issuerKeys.getPrivate(),
+                        "Subject_new", "Subject new", issuerKeys.getPublic(),
+                        System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD).asBytes());
+        Assert.assertEquals(1, storage.getNewReceivedCertificates().size());
+        Assert.assertTrue(storage.getNewReceivedCertificates().isEmpty());
+        Assert.assertEquals(senders + 1, new ASAPStorageBasedCertificates(getASAPStorage(), OWNER_ID, "Alice")
+                .getAllCertificates().size());
+    }
+
+    private static List<String> ingest(String ownerID, int parallelism, List<List<byte[]>> messagesBySender)
+            throws IOException, ASAPException {
+        ASAPEngine asapStorage = ASAPEngineFS.getASAPStorage(
+                ownerID, ROOT_DIRECTORY + ownerID, ASAPCertificateStorage.PKI_APP_NAME);
+        ASAPStorageBasedCertificates storage = new ASAPStorageBasedCertificates(asapStorage, ownerID, ownerID);
+        storage.setIngestParallelism(parallelism);
+        storage.getAllCertificates();
+
+        for(int sender = 0; sender < messagesBySender.size(); sender++) {
+            ASAPStorage incomingStorage = asapStorage.getIncomingStorage("Sender_" + sender);
+            for(byte[] message : messagesBySender.get(sender)) {
+                incomingStorage.add(ASAPCertificate.ASAP_CERTIFICATE_URI, message);
+            }
+        }
+
+        List<String> received = new ArrayList<>();
+        for(ASAPCertificate certificate : storage.getNewReceivedCertificates()) {
+            received.add(certificate.getSubjectID().toString());
+        }
+
+        int numberMessages = 0;
+        for(List<byte[]> messages : messagesBySender) {
+            numberMessages += messages.size();
+        }
+        CertificateIngestMetrics metrics = storage.getIngestMetrics();
+        Assert.assertEquals(messagesBySender.size(), metrics.getReadSenders());
+        Assert.assertEquals(numberMessages, metrics.getReadMessages());
+        Assert.assertEquals(received.size(), metrics.getIndexedCertificates());
+        Assert.assertEquals(0, metrics.getFailedMessages());
+
+        Assert.assertEquals(received.size(), asapStorage.getChunkStorage()
+                .getChunk(ASAPCertificate.ASAP_CERTIFICATE_URI, asapStorage.getEra()).getNumberMessage());
+        Assert.assertTrue(storage.getNewReceivedCertificates().isEmpty());
+        // nothing new - no sender read again
+        Assert.assertEquals(messagesBySender.size(), metrics.getReadSenders());
+        return received;
+    }
+
+    @Test
+    public void parallelIngest() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+        int senders = 20;
+        int certificatesPerSender = 50;
+
+        // each sender has its own certificates and some certificates of the first one
+        List<List<byte[]>> messagesBySender = new ArrayList<>();
+        for(int sender = 0; sender < senders; sender++) {
+            List<byte[]> messages = new ArrayList<>();
+            for(int i = 0; i < certificatesPerSender; i++) {
+                messages.add(ASAPCertificateImpl.produceCertificate(
+                        "Sender_" + sender, "Sender", issuerKeys.getPrivate(),
+                        "Subject_" + sender + "_" + i, "Subject", issuerKeys.getPublic(),
+                        System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD).asBytes());
+            }
+            if(sender > 0) messages.addAll(messagesBySender.get(0).subList(0, 5));
+            messagesBySender.add(messages);
+        }
+
+        List<String> sequential = ingest("Owner_1", 1, messagesBySender);
+        Assert.assertEquals(senders * certificatesPerSender, sequential.size());
+
+        // same certificates in same order
+        Assert.assertEquals(sequential, ingest("Owner_2", 4, messagesBySender));
+    }
+
+    /**
+     * Storage failing in read or decode stage - pipeline must neither hang nor hide that failure.
+     */
+    @Test
+    public void ingestWithFailingStorage() throws Exception {
+        FSUtils.removeFolder(ROOT_DIRECTORY);
+        KeyPair issuerKeys = createKeyPair();
+        int senders = 10;
+
+        ASAPEngine asapStorage = getASAPStorage();
+        List<CharSequence> senderIDs = new ArrayList<>();
+        for(int sender = 0; sender < senders; sender++) {
+            senderIDs.add("Sender_" + sender);
+            ASAPStorage incomingStorage = asapStorage.getIncomingStorage("Sender_" + sender);
+            // more than fits into pipeline queues
+            for(int i = 0; i < 100; i++) {
+                incomingStorage.add(ASAPCertificate.ASAP_CERTIFICATE_URI, ASAPCertificateImpl.produceCertificate(
+                        "Sender_" + sender, "Sender", issuerKeys.getPrivate(),
+                        "Subject_" + sender + "_" + i, "Subject", issuerKeys.getPublic(),
+                        System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD).asBytes());
+            }
+        }
+
+        for(int parallelism : new int[] {1, 4}) {
+            for(boolean failWhenReading : new boolean[] {true, false}) {
+                List<CharSequence> doneSenders = new ArrayList<>();
+                ReceivedCertificatesPipeline.Stages stages = new ReceivedCertificatesPipeline.Stages() {
+                    private final AtomicInteger decoded = new AtomicInteger();
+
+                    @Override
+                    public ASAPStorage getIncomingStorage(CharSequence sender) throws IOException, ASAPException {
+                        if(failWhenReading && sender.toString().equals("Sender_5")) {
+                            throw new IllegalStateException("storage failed");
+                        }
+                        return asapStorage.getIncomingStorage(sender.toString());
+                    }
+
+                    @Override
+                    public boolean isKnown(ByteBuffer digest) {
+                        if(!failWhenReading && this.decoded.incrementAndGet() == 350) {
+                            throw new IllegalStateException("storage failed");
+                        }
+                        return false;
+                    }
+
+                    @Override
+                    public boolean index(ByteBuffer digest, byte[] message, ASAPCertificate certificate) {
+                        return true;
+                    }
+
+                    @Override
+                    public void senderDone(CharSequence sender, ASAPStorage incomingStorage, int messages) {
+                        doneSenders.add(sender);
+                    }
+                };
+
+                CertificateIngestMetrics metrics = new CertificateIngestMetrics();
+                // no address - certificates are not stored
+                ReceivedCertificatesPipeline pipeline =
+                        new ReceivedCertificatesPipeline(stages, null, parallelism, metrics);
+                ExecutorService executor = Executors.newSingleThreadExecutor();
+                try {
+                    executor.submit(() -> pipeline.run(senderIDs)).get(60, TimeUnit.SECONDS);
+                    Assert.fail("failure of storage must not be hidden");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+                    Assert.assertEquals("storage failed", e.getCause().getMessage());
+                } finally {
+                    executor.shutdownNow();
+                }
+
+                // senders before failure can be done - never the failing one or one after it
+                Assert.assertTrue(doneSenders.size() <= (failWhenReading ? 5 : 3));
+                for(int i = 0; i < doneSenders.size(); i++) {
+                    Assert.assertEquals("Sender_" + i, doneSenders.get(i).toString());
+                }
+                Assert.assertTrue(metrics.getIndexedCertificates() < senders * 100);
+            }
+        }
+    }
+}
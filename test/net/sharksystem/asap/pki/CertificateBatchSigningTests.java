@@ -0,0 +1,118 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.persons.OtherPerson;
+import net.sharksystem.asap.persons.PersonStoreImplAndCertsWrapper;
+import net.sharksystem.pki.CredentialMessage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class CertificateBatchSigningTests {
+    private static final int NUMBER_CREDENTIALS = 50;
+
+    private static PersonStoreImplAndCertsWrapper createPersonStore() throws Exception {
+        return new PersonStoreImplAndCertsWrapper(new InMemoCertificates("Alice_ID", "Alice"),
+                new PooledASAPKeyStore("Alice_ID"));
+    }
+
+    private static List<CredentialMessage> createCredentialMessages(PublicKey[] publicKeys) {
+        List<CredentialMessage> credentialMessages = new ArrayList<>();
+        for(int i = 0; i < publicKeys.length; i++) {
+            credentialMessages.add(new CredentialMessageInMemo("Person_" + i, "Person " + i,
+                    System.currentTimeMillis(), publicKeys[i], ASAPEncounterConnectionType.INTERNET));
+        }
+        return credentialMessages;
+    }
+
+    @Test
+    public void signManyCredentials() throws Exception {
+        PublicKey[] publicKeys = new PublicKey[NUMBER_CREDENTIALS];
+        for(int i = 0; i < publicKeys.length; i++) {
+            publicKeys[i] = KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_EC).getPublic();
+        }
+
+        PersonStoreImplAndCertsWrapper alice = createPersonStore();
+        List<CredentialMessage> credentialMessages = createCredentialMessages(publicKeys);
+        // Person_0 sends a new key later - last one wins
+        KeyPair newKeys = KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_EC);
+        credentialMessages.add(new CredentialMessageInMemo("Person_0", "Person 0",
+                System.currentTimeMillis(), newKeys.getPublic(), ASAPEncounterConnectionType.INTERNET));
+
+        List<ASAPCertificate> certificates = alice.addAndSignPersons(credentialMessages);
+        Assert.assertEquals(NUMBER_CREDENTIALS, certificates.size());
+        Assert.assertEquals(NUMBER_CREDENTIALS, alice.getNumberOfPersons());
+
+        for(int i = 0; i < NUMBER_CREDENTIALS; i++) {
+            Collection<ASAPCertificate> stored = alice.getCertificatesBySubject("Person_" + i);
+            Assert.assertEquals(1, stored.size());
+            ASAPCertificate certificate = stored.iterator().next();
+            Assert.assertEquals(i == 0 ? newKeys.getPublic() : publicKeys[i], certificate.getPublicKey());
+            Assert.assertTrue(alice.verifyCertificate(certificate));
+            Assert.assertEquals(OtherPerson.HIGHEST_IDENTITY_ASSURANCE_LEVEL,
+                    alice.getIdentityAssurance("Person_" + i));
+        }
+
+        // again - certificates issued before are replaced
+        alice.addAndSignPersons(createCredentialMessages(publicKeys));
+        Assert.assertEquals(NUMBER_CREDENTIALS, alice.getNumberOfPersons());
+        Collection<ASAPCertificate> stored = alice.getCertificatesBySubject("Person_0");
+        Assert.assertEquals(1, stored.size());
+        Assert.assertEquals(publicKeys[0], stored.iterator().next().getPublicKey());
+
+        // own credentials are refused - nothing is changed
+        List<CredentialMessage> withOwner = new ArrayList<>();
+        withOwner.add(new CredentialMessageInMemo("Person_Other", "Other",
+                System.currentTimeMillis(), publicKeys[1]));
+        withOwner.add(new CredentialMessageInMemo("Alice_ID", "Alice",
+                System.currentTimeMillis(), alice.getPublicKey()));
+        try {
+            alice.addAndSignPersons(withOwner);
+            Assert.fail("owner credentials accepted");
+        } catch (ASAPSecurityException e) {
+            // expected
+        }
+        Assert.assertEquals(NUMBER_CREDENTIALS, alice.getNumberOfPersons());
+    }
+
+    @Test
+    public void batchAndSingleSigning() throws Exception {
+        PublicKey[] publicKeys = new PublicKey[NUMBER_CREDENTIALS];
+        for(int i = 0; i < publicKeys.length; i++) {
+            publicKeys[i] = KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_EC).getPublic();
+        }
+        List<CredentialMessage> credentialMessages = createCredentialMessages(publicKeys);
+
+        PersonStoreImplAndCertsWrapper single = createPersonStore();
+        for(CredentialMessage credentialMessage : credentialMessages) {
+            single.addAndSignPerson(credentialMessage.getSubjectID(), credentialMessage.getSubjectName(),
+                    credentialMessage.getPublicKey(), credentialMessage.getValidSince(),
+                    credentialMessage.getConnectionTypeCredentialReceived());
+        }
+
+        PersonStoreImplAndCertsWrapper batch = createPersonStore();
+        batch.addAndSignPersons(credentialMessages);
+
+        // same certificates - signed with another key pair of Alice
+        Assert.assertEquals(single.getNumberOfPersons(), batch.getNumberOfPersons());
+        for(CredentialMessage credentialMessage : credentialMessages) {
+            CharSequence subjectID = credentialMessage.getSubjectID();
+            ASAPCertificate singleCertificate = single.getCertificatesBySubject(subjectID).iterator().next();
+            ASAPCertificate batchCertificate = batch.getCertificatesBySubject(subjectID).iterator().next();
+
+            Assert.assertEquals(singleCertificate.getPublicKey(), batchCertificate.getPublicKey());
+            Assert.assertEquals(singleCertificate.getSubjectName(), batchCertificate.getSubjectName());
+            Assert.assertEquals(singleCertificate.getValidSinceMillis(), batchCertificate.getValidSinceMillis());
+            Assert.assertEquals(singleCertificate.getConnectionTypeCredentialsReceived(),
+                    batchCertificate.getConnectionTypeCredentialsReceived());
+            Assert.assertEquals(single.getIdentityAssurance(subjectID), batch.getIdentityAssurance(subjectID));
+            Assert.assertTrue(batch.verifyCertificate(batchCertificate));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CertificateBatchVerificationTests {
+    private static KeyPair createKeyPair(String algorithm, int keySize) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        generator.initialize(keySize);
+        return generator.generateKeyPair();
+    }
+
+    private static List<CertificateVerification> createVerifications(int number) throws Exception {
+        KeyPair issuerKeys = createKeyPair("RSA", 2048);
+        KeyPair otherKeys = createKeyPair("RSA", 2048);
+        KeyPair ecKeys = createKeyPair("EC", 256);
+        KeyPair subjectKeys = createKeyPair("RSA", 2048);
+
+        List<CertificateVerification> verifications = new ArrayList<>();
+        for(int i = 0; i < number; i++) {
+            ASAPCertificate certificate = ASAPCertificateImpl.produceCertificate("Bob_ID", "Bob",
+                    issuerKeys.getPrivate(), "Subject_" + i, "Subject " + i, subjectKeys.getPublic(),
+                    System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD,
+                    ASAPEncounterConnectionType.INTERNET);
+
+            switch(i % 4) {
+                case 0: case 1: verifications.add(new CertificateVerification(certificate, issuerKeys.getPublic()));
+                    break;
+                case 2: verifications.add(new CertificateVerification(certificate, otherKeys.getPublic()));
+                    break;
+                default: // wrong kind of key
+                    verifications.add(new CertificateVerification(certificate, ecKeys.getPublic()));
+            }
+        }
+        return verifications;
+    }
+
+    @Test
+    public void resultsOfEachCertificate() throws Exception {
+        List<CertificateVerification> verifications = createVerifications(100);
+
+        InMemoCertificates storage = new InMemoCertificates("Alice_ID", "Alice");
+        storage.setVerifyParallelism(4);
+        storage.verifyCertificates(verifications);
+
+        for(int i = 0; i < verifications.size(); i++) {
+            CertificateVerification verification = verifications.get(i);
+            Assert.assertEquals(i % 4 < 2, verification.isVerified());
+            Assert.assertNull(verification.getException());
+        }
+        Assert.assertEquals(100, storage.getVerificationCache().size());
+
+        // an exception spoils the result of its certificate only
+        List<CertificateVerification> withBrokenCertificate = new ArrayList<>(verifications.subList(0, 20));
+        withBrokenCertificate.add(10, new CertificateVerification(new StubCertificate("Bob_ID", "Clara_ID") {
+            @Override
+            public boolean verify(PublicKey publicKeyIssuer) throws SignatureException {
+                throw new SignatureException("broken");
+            }
+        }, verifications.get(0).getPublicKey()));
+        storage.verifyCertificates(withBrokenCertificate);
+
+        Assert.assertFalse(withBrokenCertificate.get(10).isVerified());
+        Assert.assertTrue(withBrokenCertificate.get(10).getException() instanceof SignatureException);
+        withBrokenCertificate.remove(10);
+        for(int i = 0; i < withBrokenCertificate.size(); i++) {
+            Assert.assertEquals(i % 4 < 2, withBrokenCertificate.get(i).isVerified());
+        }
+        Assert.assertEquals(100, storage.getVerificationCache().size()); // exceptions are not cached
+    }
+
+    @Test
+    public void serialAndParallel() throws Exception {
+        List<CertificateVerification> verifications = createVerifications(40);
+
+        InMemoCertificates serialStorage = new InMemoCertificates("Alice_ID", "Alice");
+        serialStorage.setVerifyParallelism(1);
+        serialStorage.verifyCertificates(verifications);
+        List<Boolean> serialResults = new ArrayList<>();
+        for(CertificateVerification verification : verifications) serialResults.add(verification.isVerified());
+
+        InMemoCertificates parallelStorage = new InMemoCertificates("Alice_ID", "Alice");
+        parallelStorage.setVerifyParallelism(4);
+        parallelStorage.verifyCertificates(verifications);
+
+        for(int i = 0; i < verifications.size(); i++) {
+            Assert.assertEquals(i % 4 < 2, serialResults.get(i));
+            Assert.assertEquals(serialResults.get(i), verifications.get(i).isVerified());
+        }
+        Assert.assertEquals(verifications.size(), serialStorage.getVerificationCache().size());
+        Assert.assertEquals(verifications.size(), parallelStorage.getVerificationCache().size());
+    }
+}
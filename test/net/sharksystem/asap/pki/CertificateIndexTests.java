@@ -0,0 +1,62 @@
+package net.sharksystem.asap.pki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * In memory certificate indexes must find what a scan over all certificates finds. Lookup costs are measured
+ * by CertificateIndexBenchmark.
+ */
+public class CertificateIndexTests {
+    private static final int NUMBER_CERTIFICATES = 10000;
+    private static final int NUMBER_ISSUERS = 100;
+
+    private InMemoCertificates fillStorage(int numberCertificates) throws IOException {
+        InMemoCertificates storage = new InMemoCertificates("Owner_ID", "Owner");
+        for(int i = 0; i < numberCertificates; i++) {
+            storage.storeCertificate(new StubCertificate("Issuer_" + (i % NUMBER_ISSUERS), "Subject_" + i));
+        }
+        return storage;
+    }
+
+    /** That's what getCertificatesByIssuerID did before there was an issuer index */
+    private Set<ASAPCertificate> scanForIssuer(Collection<ASAPCertificate> allCerts, CharSequence issuerID) {
+        Set<ASAPCertificate> certSetIssuer = new HashSet<>();
+        for(ASAPCertificate cert : allCerts) {
+            if(cert.getIssuerID().toString().equalsIgnoreCase(issuerID.toString())) {
+                certSetIssuer.add(cert);
+            }
+        }
+        return certSetIssuer;
+    }
+
+    @Test
+    public void issuerLookupFindsSameAsScan() throws IOException {
+        InMemoCertificates storage = this.fillStorage(NUMBER_CERTIFICATES);
+        Collection<ASAPCertificate> allCerts = storage.getAllCertificates();
+        Assert.assertEquals(NUMBER_CERTIFICATES, allCerts.size());
+
+        for(int i = 0; i < NUMBER_ISSUERS; i++) {
+            // ids are not case sensitive
+            Collection<ASAPCertificate> certs = storage.getCertificatesByIssuerID("ISSUER_" + i);
+            Assert.assertEquals(NUMBER_CERTIFICATES / NUMBER_ISSUERS, certs.size());
+            Assert.assertEquals(this.scanForIssuer(allCerts, "issuer_" + i), new HashSet<>(certs));
+        }
+        Assert.assertTrue(storage.getCertificatesByIssuerID("Issuer_" + NUMBER_ISSUERS).isEmpty());
+    }
+
+    @Test
+    public void removalUpdatesIssuerIndex() throws IOException {
+        InMemoCertificates storage = this.fillStorage(NUMBER_CERTIFICATES);
+        // set up in memory structures
+        Assert.assertEquals(NUMBER_CERTIFICATES / NUMBER_ISSUERS, storage.getCertificatesByIssuerID("Issuer_1").size());
+
+        storage.removeCertificate(new StubCertificate("Issuer_1", "Subject_1"));
+        Collection<ASAPCertificate> certs = storage.getCertificatesByIssuerID("Issuer_1");
+        Assert.assertEquals(NUMBER_CERTIFICATES / NUMBER_ISSUERS - 1, certs.size());
+        Assert.assertEquals(this.scanForIssuer(storage.getAllCertificates(), "Issuer_1"), new HashSet<>(certs));
+    }
+}
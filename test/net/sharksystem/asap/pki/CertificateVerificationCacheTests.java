@@ -0,0 +1,68 @@
+package net.sharksystem.asap.pki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+public class CertificateVerificationCacheTests {
+    private static KeyPair createKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    @Test
+    public void verifyOnlyOnce() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        KeyPair otherKeys = createKeyPair();
+        ASAPCertificate certificate = ASAPCertificateImpl.produceCertificate(
+                "Bob_ID", "Bob", issuerKeys.getPrivate(),
+                "Alice_ID", "Alice", createKeyPair().getPublic(),
+                System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD);
+
+        CertificateVerificationCache cache = new CertificateVerificationCache();
+        Assert.assertTrue(cache.verify(certificate, issuerKeys.getPublic()));
+        Assert.assertTrue(cache.verify(certificate, issuerKeys.getPublic()));
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(1, cache.getHits());
+
+        // negative results are cached as well
+        Assert.assertFalse(cache.verify(certificate, otherKeys.getPublic()));
+        Assert.assertFalse(cache.verify(certificate, otherKeys.getPublic()));
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(2, cache.getHits());
+
+        // a deserialized copy is the same certificate
+        ASAPCertificate copy = ASAPCertificateImpl.produceCertificateFromBytes(certificate.asBytes());
+        Assert.assertTrue(cache.verify(copy, issuerKeys.getPublic()));
+        Assert.assertEquals(3, cache.getHits());
+
+        // repeated verification is read from cache
+        for(int i = 0; i < 100; i++) Assert.assertTrue(cache.verify(certificate, issuerKeys.getPublic()));
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(103, cache.getHits());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreDropped() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        ASAPCertificate certificate = ASAPCertificateImpl.produceCertificate(
+                "Bob_ID", "Bob", issuerKeys.getPrivate(),
+                "Alice_ID", "Alice", createKeyPair().getPublic(),
+                System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD);
+
+        KeyPair[] keys = new KeyPair[] {issuerKeys, createKeyPair(), createKeyPair()};
+
+        CertificateVerificationCache cache = new CertificateVerificationCache(2);
+        for(KeyPair keyPair : keys) cache.verify(certificate, keyPair.getPublic());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(3, cache.getMisses());
+
+        // first one was dropped
+        Assert.assertTrue(cache.verify(certificate, issuerKeys.getPublic()));
+        Assert.assertEquals(4, cache.getMisses());
+        Assert.assertEquals(0, cache.getHits());
+    }
+}
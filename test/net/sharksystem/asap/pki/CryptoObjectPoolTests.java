@@ -0,0 +1,103 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class CryptoObjectPoolTests {
+    static KeyPair createKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    @Test
+    public void reuseAndLimitIdleObjects() throws Exception {
+        CryptoObjectPool<Signature> pool = new CryptoObjectPool<>(Signature::getInstance, 2);
+
+        Signature first = pool.borrow("SHA256withRSA");
+        pool.release("SHA256withRSA", first);
+        Assert.assertSame(first, pool.borrow("SHA256withRSA"));
+
+        // algorithms are not mixed up
+        Signature other = pool.borrow("SHA512withRSA");
+        Assert.assertEquals("SHA512withRSA", other.getAlgorithm());
+
+        List<Signature> borrowed = new ArrayList<>();
+        for(int i = 0; i < 5; i++) borrowed.add(pool.borrow("SHA256withRSA"));
+        for(Signature signature : borrowed) pool.release("SHA256withRSA", signature);
+        Assert.assertEquals(2, pool.idle("SHA256withRSA"));
+
+        try {
+            pool.borrow("NoSuchSignatureAlgorithm");
+            Assert.fail("unknown algorithm accepted");
+        } catch (NoSuchAlgorithmException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void verifyFromManyThreads() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        KeyPair otherKeys = createKeyPair();
+        ASAPCertificateImpl certificate = ASAPCertificateImpl.produceCertificate("Bob_ID", "Bob",
+                issuerKeys.getPrivate(), "Alice_ID", "Alice", createKeyPair().getPublic(),
+                System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD,
+                ASAPEncounterConnectionType.INTERNET);
+
+        // a failed verification must not spoil a pooled signature object
+        Assert.assertFalse(certificate.verify(null));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for(int i = 0; i < 400; i++) {
+            final PublicKey key = i % 2 == 0 ? issuerKeys.getPublic() : otherKeys.getPublic();
+            results.add(executor.submit(() -> certificate.verify(key)));
+        }
+        for(int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(i % 2 == 0, results.get(i).get());
+        }
+        executor.shutdown();
+
+        Assert.assertTrue(CryptoObjectPool.SIGNATURES.idle(ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD)
+                <= CryptoObjectPool.DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Costs of pooled and new objects are measured by CryptoObjectPoolBenchmark.
+     */
+    @Test
+    public void pooledObjectsWorkLikeNewOnes() throws Exception {
+        KeyPair issuerKeys = createKeyPair();
+        KeyPair otherKeys = createKeyPair();
+        ASAPCertificateImpl certificate = ASAPCertificateImpl.produceCertificate("Bob_ID", "Bob",
+                issuerKeys.getPrivate(), "Alice_ID", "Alice", createKeyPair().getPublic(),
+                System.currentTimeMillis(), ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD,
+                ASAPEncounterConnectionType.INTERNET);
+        byte[] encodedKey = certificate.getPublicKey().getEncoded();
+
+        // decode: pooled key factory and key factory per call
+        KeyFactory keyFactory = CryptoObjectPool.KEY_FACTORIES.borrow("RSA");
+        Assert.assertEquals(KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encodedKey)),
+                keyFactory.generatePublic(new X509EncodedKeySpec(encodedKey)));
+        CryptoObjectPool.KEY_FACTORIES.release("RSA", keyFactory);
+        Assert.assertSame(keyFactory, CryptoObjectPool.KEY_FACTORIES.borrow("RSA"));
+        CryptoObjectPool.KEY_FACTORIES.release("RSA", keyFactory);
+
+        // verify: signature object per call and certificate.verify() with pooled one - again and again
+        byte[] signed = certificate.asBytes();
+        int signedLength = signed.length - 4 - 256;
+        for(PublicKey key : new PublicKey[] {issuerKeys.getPublic(), otherKeys.getPublic(), issuerKeys.getPublic()}) {
+            Signature signature = Signature.getInstance(ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD);
+            signature.initVerify(key);
+            signature.update(signed, 0, signedLength);
+            Assert.assertEquals(signature.verify(signed, signedLength + 4, 256), certificate.verify(key));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPKeyStore;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import net.sharksystem.asap.persons.OtherPerson;
+import net.sharksystem.asap.persons.PersonInformationStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+public class IdentityAssuranceGraphTests {
+    static final String OWNER_ID = "Owner_ID";
+
+    /**
+     * Person store stub that only knows signing failure rates.
+     */
+    static PersonInformationStore failureRates(final Map<String, Integer> failureRates) {
+        return (PersonInformationStore) Proxy.newProxyInstance(
+                PersonInformationStore.class.getClassLoader(),
+                new Class[]{PersonInformationStore.class},
+                (proxy, method, args) -> {
+                    if(method.getName().equals("getSigningFailureRate")) {
+                        if(PeerID.sameID(OWNER_ID, (CharSequence) args[0])) return OtherPerson.YOUR_SIGNING_FAILURE_RATE;
+                        Integer rate = failureRates.get(args[0].toString());
+                        return rate != null ? rate : OtherPerson.WORST_SIGNING_FAILURE_RATE;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    static String peer(int i) {
+        return i == 0 ? OWNER_ID : "Peer_" + i;
+    }
+
+    /**
+     * Random trust graph: each peer has certificates issued by degree other peers. Owner has met some peers.
+     */
+    static InMemoCertificates createTrustGraph(int peers, int degree, int directlyMet,
+                                               Map<String, Integer> failureRates) throws IOException {
+        Random random = new Random(42);
+        InMemoCertificates storage = new InMemoCertificates(OWNER_ID, "Owner");
+        for(int subject = 1; subject < peers; subject++) {
+            failureRates.put(peer(subject), 1 + random.nextInt(9));
+            Set<Integer> issuers = new HashSet<>();
+            if(subject <= directlyMet) issuers.add(0);
+            while(issuers.size() < degree) {
+                int issuer = 1 + random.nextInt(peers - 1);
+                if(issuer != subject) issuers.add(issuer);
+            }
+            for(int issuer : issuers) {
+                storage.storeCertificate(new StubCertificate(peer(issuer), peer(subject)));
+            }
+        }
+        return storage;
+    }
+
+    /**
+     * Exhaustive search over all chains - no repeated peer on a chain.
+     */
+    private static float bestChain(InMemoCertificates storage, CharSequence subjectID, Set<String> visited,
+                                   Map<String, Integer> failureRates) {
+        float best = 0;
+        for(ASAPCertificate certificate : storage.getCertificatesBySubjectID(subjectID)) {
+            String issuer = certificate.getIssuerID().toString();
+            if(issuer.equals(OWNER_ID)) return 1;
+            if(visited.contains(issuer)) continue;
+
+            visited.add(issuer);
+            float probability = (1 - ((float) failureRates.get(issuer)) / 10)
+                    * bestChain(storage, issuer, visited, failureRates);
+            visited.remove(issuer);
+
+            best = Math.max(best, probability);
+        }
+        return best;
+    }
+
+    @Test
+    public void sameResultAsExhaustiveSearch() throws IOException, ASAPSecurityException {
+        Map<String, Integer> failureRates = new HashMap<>();
+        InMemoCertificates storage = createTrustGraph(12, 3, 2, failureRates);
+        ASAPKeyStore keyStore = new InMemoASAPKeyStore(OWNER_ID);
+        PersonInformationStore persons = failureRates(failureRates);
+
+        for(int i = 1; i < 12; i++) {
+            String subject = peer(i);
+            float expected = bestChain(storage, subject, new HashSet<>(Collections.singleton(subject)), failureRates);
+            int expectedLevel = expected == 1 ? OtherPerson.HIGHEST_IDENTITY_ASSURANCE_LEVEL : Math.round(expected * 10);
+
+            Assert.assertEquals(subject, expectedLevel, storage.getIdentityAssurances(subject, keyStore, persons));
+
+            List<CharSequence> path = storage.getIdentityAssurancesCertificationPath(subject, keyStore, persons);
+            if(expected == 1) {
+                Assert.assertEquals(Collections.singletonList(OWNER_ID), path);
+            } else if(expected > 0) {
+                Assert.assertEquals(subject, path.get(0));
+                // last one in path has met owner
+                Assert.assertNotNull(storage.getCertificateByIssuerAndSubjectID(OWNER_ID, path.get(path.size() - 1)));
+            }
+        }
+    }
+
+    /**
+     * Identity assurances of a dense graph are set up once - duration is measured by
+     * IdentityAssuranceGraphBenchmark.
+     */
+    @Test
+    public void denseGraphAllPeersReachable() throws IOException, ASAPSecurityException {
+        int peers = 2000;
+        int degree = 20;
+        Map<String, Integer> failureRates = new HashMap<>();
+        InMemoCertificates storage = createTrustGraph(peers, degree, 10, failureRates);
+        ASAPKeyStore keyStore = new InMemoASAPKeyStore(OWNER_ID);
+        PersonInformationStore persons = failureRates(failureRates);
+
+        int identityAssurance = storage.getIdentityAssurances(peer(peers - 1), keyStore, persons);
+        int pathLength = storage.getIdentityAssurancesCertificationPath(peer(peers - 1), keyStore, persons).size();
+
+        // recomputed after sync - same results
+        storage.syncIdentityAssurance();
+        Assert.assertEquals(identityAssurance, storage.getIdentityAssurances(peer(peers - 1), keyStore, persons));
+        Assert.assertEquals(pathLength,
+                storage.getIdentityAssurancesCertificationPath(peer(peers - 1), keyStore, persons).size());
+
+        int reachable = 0;
+        for(int i = 1; i < peers; i++) {
+            if(storage.getIdentityAssurancesCertificationPath(peer(i), keyStore, persons).size() > 0) reachable++;
+        }
+        Assert.assertEquals(peers - 1, reachable);
+    }
+}
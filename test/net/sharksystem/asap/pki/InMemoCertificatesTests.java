@@ -0,0 +1,98 @@
+package net.sharksystem.asap.pki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sharksystem.asap.ASAPSecurityException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+public class InMemoCertificatesTests {
+    @Test
+    public void storeAndRemoveKeepIndexesInSync() throws IOException {
+        InMemoCertificates storage = new InMemoCertificates("Owner_ID", "Owner");
+        ASAPCertificate aliceByBob = new StubCertificate("Bob_ID", "Alice_ID");
+        ASAPCertificate claraByBob = new StubCertificate("Bob_ID", "Clara_ID");
+        storage.storeCertificate(aliceByBob);
+
+        // set up in memory structures
+        Assert.assertEquals(1, storage.getCertificatesByIssuerID("Bob_ID").size());
+
+        // changes must become visible without re-reading storage
+        storage.storeCertificate(claraByBob);
+        Assert.assertEquals(2, storage.getCertificatesByIssuerID("Bob_ID").size());
+        Assert.assertEquals(1, storage.getCertificatesBySubjectID("Clara_ID").size());
+
+        // identical certificate is not added twice
+        storage.storeCertificate(new StubCertificate("Bob_ID", "Clara_ID"));
+        Assert.assertEquals(2, storage.getCertificatesByIssuerID("Bob_ID").size());
+
+        // remove with another object describing the same certificate
+        storage.removeCertificate(new StubCertificate("Bob_ID", "Alice_ID"));
+        Assert.assertTrue(storage.getCertificatesBySubjectID("Alice_ID").isEmpty());
+        Collection<ASAPCertificate> bobIssued = storage.getCertificatesByIssuerID("Bob_ID");
+        Assert.assertEquals(1, bobIssued.size());
+        Assert.assertTrue(bobIssued.contains(claraByBob));
+
+        // explicit rebuild leads to same result
+        storage.dropInMemoCache();
+        Assert.assertEquals(1, storage.getCertificatesByIssuerID("Bob_ID").size());
+        Assert.assertTrue(storage.getCertificatesBySubjectID("Alice_ID").isEmpty());
+    }
+
+    @Test
+    public void readAfterWriteWithManyCertificates() throws IOException {
+        InMemoCertificates storage = new InMemoCertificates("Owner_ID", "Owner");
+        for(int i = 0; i < 100000; i++) {
+            storage.storeCertificate(new StubCertificate("Issuer_" + (i % 100), "Subject_" + i));
+        }
+
+        // set up in memory structures once
+        Assert.assertEquals(1, storage.getCertificatesBySubjectID("Subject_0").size());
+
+        for(int i = 0; i < 1000; i++) {
+            storage.storeCertificate(new StubCertificate("Issuer_X", "NewSubject_" + i));
+            // read after write - was a full reload before
+            Assert.assertEquals(1, storage.getCertificatesBySubjectID("NewSubject_" + i).size());
+        }
+        Assert.assertEquals(1000, storage.getCertificatesByIssuerID("Issuer_X").size());
+        Assert.assertEquals(101000, storage.getAllCertificates().size());
+    }
+
+    @Test
+    public void issuerAndSubjectLookup() throws IOException, ASAPSecurityException {
+        InMemoCertificates storage = new InMemoCertificates("Owner_ID", "Owner");
+        ASAPCertificate ownerByBob = new StubCertificate("Bob_ID", "Owner_ID");
+        ASAPCertificate ownerByClara = new StubCertificate("Clara_ID", "Owner_ID");
+        storage.storeCertificate(ownerByBob);
+        storage.storeCertificate(ownerByClara);
+        storage.storeCertificate(new StubCertificate("Owner_ID", "Bob_ID"));
+
+        Assert.assertSame(ownerByBob, storage.getCertificateByIssuerAndSubjectID("Bob_ID", "Owner_ID"));
+        // ids are not case sensitive and can be any char sequence
+        Assert.assertSame(ownerByClara,
+                storage.getCertificateByIssuerAndSubjectID(new StringBuilder("clara_id"), "OWNER_ID"));
+
+        try {
+            storage.getCertificateByIssuerAndSubjectID("David_ID", "Owner_ID");
+            Assert.fail("there is no such certificate");
+        } catch (ASAPSecurityException e) {
+            // expected
+        }
+
+        Map<CharSequence, ASAPCertificate> certsByIssuer = storage.getCertificatesByIssuersAndSubjectID(
+                Arrays.<CharSequence>asList("Bob_ID", "Clara_ID", "David_ID"), "Owner_ID");
+        Assert.assertEquals(2, certsByIssuer.size());
+        Assert.assertSame(ownerByBob, certsByIssuer.get("Bob_ID"));
+        Assert.assertFalse(certsByIssuer.containsKey("David_ID"));
+
+        // removal must be visible
+        storage.removeCertificate(ownerByBob);
+        certsByIssuer = storage.getCertificatesByIssuersAndSubjectID(
+                Arrays.<CharSequence>asList("Bob_ID", "Clara_ID"), "Owner_ID");
+        Assert.assertEquals(1, certsByIssuer.size());
+    }
+}
@@ -0,0 +1,110 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.SharkTestPeerFS;
+import net.sharksystem.asap.crypto.ASAPKeyStore;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import net.sharksystem.asap.persons.PersonStoreImplAndCertsWrapper;
+import net.sharksystem.fs.ExtraDataFS;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Set;
+
+public class KeyPairPoolTests {
+    private static final String ROOT_DIRECTORY = "tmp/keyPairPool/";
+
+    @Test
+    public void takeReadyPairsAndRefill() throws Exception {
+        KeyPairPool pool = new KeyPairPool(KeyHelper.KEY_ALGORITHM_RSA, 2);
+        Assert.assertEquals(0, pool.available());
+
+        // empty pool, no generation running - pair generated by caller, pool is not filled
+        Set<KeyPair> keyPairs = new HashSet<>();
+        keyPairs.add(pool.take());
+        Assert.assertEquals(1, pool.getGeneratedInCaller());
+        Assert.assertEquals(0, pool.awaitFilled());
+
+        pool.fill();
+        Assert.assertEquals(2, pool.awaitFilled());
+        keyPairs.add(pool.take());
+        keyPairs.add(pool.take());
+        Assert.assertEquals(1, pool.getGeneratedInCaller());
+        Assert.assertEquals(0, pool.available());
+
+        // empty pool being filled - caller waits for generated pair
+        pool.fill();
+        keyPairs.add(pool.take());
+        Assert.assertEquals(1, pool.getGeneratedInCaller());
+
+        // any pair is handed out once
+        Assert.assertEquals(2, pool.awaitFilled());
+        keyPairs.add(pool.take());
+        Assert.assertEquals(5, keyPairs.size());
+        Assert.assertEquals(5, pool.getTaken());
+
+        // no generation after shutdown - ready pairs can still be taken
+        pool.shutdown();
+        pool.fill();
+        Assert.assertEquals(1, pool.awaitFilled());
+        keyPairs.add(pool.take());
+        keyPairs.add(pool.take());
+        Assert.assertEquals(7, keyPairs.size());
+        Assert.assertEquals(2, pool.getGeneratedInCaller());
+    }
+
+    @Test
+    public void keyStoreTakesPairFromPool() throws Exception {
+        SharkTestPeerFS.removeFolder(ROOT_DIRECTORY);
+        KeyPairPool pool = new KeyPairPool(KeyHelper.KEY_ALGORITHM_RSA, 1);
+
+        // no memento yet - new key pair is taken and stored, pool is not filled for a fresh key pair
+        PooledASAPKeyStore keyStore = new PooledASAPKeyStore("Alice_ID", pool);
+        keyStore.setMementoTarget(new ExtraDataFS(ROOT_DIRECTORY));
+        Assert.assertEquals(1, pool.getTaken());
+        Assert.assertEquals(0, pool.awaitFilled());
+        Assert.assertNotNull(keyStore.getPrivateKey());
+        Assert.assertTrue(keyStore.getKeysCreationTime() > 0);
+        Assert.assertFalse(keyStore.isToBeRenewed(PooledASAPKeyStore.DEFAULT_RENEWAL_PERIOD_IN_MILLIS));
+
+        // in memory key store restores same keys
+        InMemoASAPKeyStore restored = new InMemoASAPKeyStore("Alice_ID");
+        restored.setMementoTarget(new ExtraDataFS(ROOT_DIRECTORY));
+        Assert.assertEquals(keyStore.getPublicKey(), restored.getPublicKey());
+        Assert.assertEquals(keyStore.getPrivateKey(), restored.getPrivateKey());
+        Assert.assertEquals(keyStore.getKeysCreationTime(), restored.getKeysCreationTime());
+
+        // restored key pair is not renewed - nothing generated
+        PooledASAPKeyStore restoredPooled = new PooledASAPKeyStore("Alice_ID", pool);
+        restoredPooled.setMementoTarget(new ExtraDataFS(ROOT_DIRECTORY));
+        Assert.assertEquals(keyStore.getPublicKey(), restoredPooled.getPublicKey());
+        Assert.assertEquals(1, pool.getTaken());
+        Assert.assertEquals(0, pool.awaitFilled());
+        // key pair expires within renewal period
+        Assert.assertTrue(restoredPooled.isToBeRenewed(366L * 24 * 60 * 60 * 1000));
+
+        // key rotation takes ready pair - new memento is written
+        pool.fill();
+        Assert.assertEquals(1, pool.awaitFilled());
+        keyStore.generateKeyPair();
+        Assert.assertEquals(2, pool.getTaken());
+        Assert.assertEquals(0, pool.available());
+        Assert.assertNotEquals(restored.getPublicKey(), keyStore.getPublicKey());
+        Assert.assertEquals(keyStore.getPublicKey(), keyStore.getKeyPair().getPublic());
+        restored = new InMemoASAPKeyStore("Alice_ID");
+        restored.setMementoTarget(new ExtraDataFS(ROOT_DIRECTORY));
+        Assert.assertEquals(keyStore.getPublicKey(), restored.getPublicKey());
+
+        // person store creates missing key pair
+        pool.fill();
+        Assert.assertEquals(1, pool.awaitFilled());
+        ASAPKeyStore bobKeyStore = new PooledASAPKeyStore("Bob_ID", pool);
+        PersonStoreImplAndCertsWrapper bob =
+                new PersonStoreImplAndCertsWrapper(new InMemoCertificates("Bob_ID", "Bob"), bobKeyStore);
+        Assert.assertNotNull(bob.getPublicKey());
+        Assert.assertEquals(3, pool.getTaken());
+        Assert.assertEquals(1, pool.getGeneratedInCaller());
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,59 @@
+package net.sharksystem.asap.pki;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class PeerIDTests {
+    @Test
+    public void canonicalAndCaseInsensitive() {
+        PeerID alice = PeerID.of("Alice_ID");
+        Assert.assertSame(alice, PeerID.of("alice_id"));
+        Assert.assertSame(alice, PeerID.of(new StringBuilder("ALICE_ID")));
+        Assert.assertSame(alice, PeerID.of(alice));
+        Assert.assertNotSame(alice, PeerID.of("Bob_ID"));
+
+        // keeps first spelling
+        Assert.assertEquals("Alice_ID", PeerID.of("ALICE_id").toString());
+
+        Assert.assertTrue(PeerID.sameID("Alice_ID", new StringBuilder("aLiCe_iD")));
+        Assert.assertTrue(PeerID.sameID(alice, "ALICE_ID"));
+        Assert.assertFalse(PeerID.sameID("Alice_ID", "Alice_I"));
+        Assert.assertFalse(PeerID.sameID(alice, PeerID.of("Bob_ID")));
+
+        // usable as map key
+        Map<PeerID, String> map = new HashMap<>();
+        map.put(PeerID.of("Alice_ID"), "alice");
+        Assert.assertEquals("alice", map.get(PeerID.of(new StringBuilder("alice_ID"))));
+    }
+
+    /**
+     * PeerID keyed map finds what scanning ids with toString().equalsIgnoreCase (as it was done before) finds.
+     * Lookup costs are measured by PeerIDBenchmark.
+     */
+    @Test
+    public void mapLookupFindsSameAsScan() {
+        int numberIDs = 1000;
+        List<CharSequence> idList = new ArrayList<>();
+        Map<PeerID, CharSequence> idMap = new HashMap<>();
+        for(int i = 0; i < numberIDs; i++) {
+            String id = "Peer_ID_" + i;
+            idList.add(id);
+            idMap.put(PeerID.of(id), id);
+        }
+        Assert.assertEquals(numberIDs, idMap.size());
+
+        for(int i = 0; i < numberIDs + 10; i++) {
+            // query is any char sequence
+            CharSequence query = new StringBuilder("PEER_ID_" + i);
+            CharSequence scanned = null;
+            for(CharSequence id : idList) {
+                if(id.toString().equalsIgnoreCase(query.toString())) { scanned = id; break; }
+            }
+            Assert.assertEquals(scanned, idMap.get(PeerID.of(query)));
+            // query is already a peer id
+            Assert.assertSame(idMap.get(PeerID.of(query)), idMap.get(PeerID.of("peer_id_" + i)));
+        }
+    }
+}
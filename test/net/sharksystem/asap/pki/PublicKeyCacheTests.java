@@ -0,0 +1,92 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+public class PublicKeyCacheTests {
+    private static KeyPair createKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    @Test
+    public void sameKeyInDifferentCertificates() throws Exception {
+        KeyPair aliceKeys = createKeyPair();
+        KeyPair bobKeys = createKeyPair();
+        KeyPair claraKeys = createKeyPair();
+
+        // Alice key certified by Bob and by Clara
+        byte[] fromBob = ASAPCertificateImpl.produceCertificate("Bob_ID", "Bob", bobKeys.getPrivate(),
+                "Alice_ID", "Alice", aliceKeys.getPublic(), System.currentTimeMillis(),
+                ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD, ASAPEncounterConnectionType.INTERNET).asBytes();
+        byte[] fromClara = ASAPCertificateImpl.produceCertificate("Clara_ID", "Clara", claraKeys.getPrivate(),
+                "Alice_ID", "Alice", aliceKeys.getPublic(), System.currentTimeMillis(),
+                ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD, ASAPEncounterConnectionType.INTERNET).asBytes();
+
+        PublicKeyCache cache = KeyHelper.getPublicKeyCache();
+        long misses = cache.getMisses();
+
+        ASAPCertificate certificateFromBob = ASAPCertificateImpl.produceCertificateFromBytes(fromBob);
+        ASAPCertificate certificateFromClara = ASAPCertificateImpl.produceCertificateFromBytes(fromClara);
+        ASAPCertificate lazyFromClara = ASAPCertificateImpl.produceLazyCertificate(fromClara, null);
+
+        Assert.assertEquals(aliceKeys.getPublic(), certificateFromBob.getPublicKey());
+        Assert.assertSame(certificateFromBob.getPublicKey(), certificateFromClara.getPublicKey());
+        Assert.assertSame(certificateFromBob.getPublicKey(), lazyFromClara.getPublicKey());
+        Assert.assertEquals(1, cache.getMisses() - misses);
+
+        // credential message decodes its key with the same cache
+        CredentialMessageInMemo credentialMessage = new CredentialMessageInMemo(
+                "Alice_ID", "Alice", System.currentTimeMillis(), aliceKeys.getPublic());
+        CredentialMessageInMemo received = new CredentialMessageInMemo(credentialMessage.getMessageAsBytes());
+        Assert.assertSame(certificateFromBob.getPublicKey(), received.getPublicKey());
+    }
+
+    @Test
+    public void leastRecentlyUsedKeysAreDropped() throws Exception {
+        PublicKeyCache cache = new PublicKeyCache(2);
+        PublicKey[] keys = new PublicKey[3];
+        for(int i = 0; i < keys.length; i++) keys[i] = createKeyPair().getPublic();
+
+        PublicKey key0 = cache.decode("RSA", keys[0].getEncoded());
+        PublicKey key1 = cache.decode("RSA", keys[1].getEncoded());
+        Assert.assertSame(key0, cache.decode("RSA", keys[0].getEncoded())); // key 0 used recently
+        cache.decode("RSA", keys[2].getEncoded()); // key 1 dropped
+        Assert.assertEquals(2, cache.size());
+
+        Assert.assertSame(key0, cache.decode("RSA", keys[0].getEncoded()));
+        PublicKey key1Again = cache.decode("RSA", keys[1].getEncoded());
+        Assert.assertNotSame(key1, key1Again);
+        Assert.assertEquals(key1, key1Again);
+        Assert.assertEquals(4, cache.getMisses());
+        Assert.assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void keyWithinLargerArray() throws Exception {
+        PublicKeyCache cache = new PublicKeyCache();
+        byte[] encodedKey = createKeyPair().getPublic().getEncoded();
+        byte[] padded = new byte[encodedKey.length + 20];
+        System.arraycopy(encodedKey, 0, padded, 7, encodedKey.length);
+
+        PublicKey key = cache.decode("RSA", padded, 7, encodedKey.length);
+        // array is not kept
+        padded[10] = 0;
+        Assert.assertSame(key, cache.decode("RSA", encodedKey));
+        Assert.assertEquals(1, cache.getMisses());
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+
+        // another cache decodes its own - equal - key
+        PublicKey decoded = new PublicKeyCache().decode("RSA", encodedKey);
+        Assert.assertNotSame(key, decoded);
+        Assert.assertEquals(key, decoded);
+    }
+}
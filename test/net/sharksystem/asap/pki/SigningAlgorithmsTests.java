@@ -0,0 +1,138 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import net.sharksystem.asap.persons.PersonStoreImplAndCertsWrapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+public class SigningAlgorithmsTests {
+    static final String[] KEY_ALGORITHMS = {
+            KeyHelper.KEY_ALGORITHM_RSA, KeyHelper.KEY_ALGORITHM_EC, KeyHelper.KEY_ALGORITHM_ED25519};
+
+    static ASAPCertificateImpl produceCertificate(KeyPair issuerKeys, KeyPair subjectKeys) throws Exception {
+        return ASAPCertificateImpl.produceCertificate("Bob_ID", "Bob", issuerKeys.getPrivate(),
+                "Alice_ID", "Alice", subjectKeys.getPublic(), System.currentTimeMillis(),
+                KeyHelper.getSigningAlgorithm(issuerKeys.getPrivate()), ASAPEncounterConnectionType.INTERNET);
+    }
+
+    @Test
+    public void certificatesWithEachAlgorithm() throws Exception {
+        for(String keyAlgorithm : KEY_ALGORITHMS) {
+            KeyPair issuerKeys = KeyHelper.generateKeyPair(keyAlgorithm);
+            KeyPair otherKeys = KeyHelper.generateKeyPair(keyAlgorithm);
+            KeyPair subjectKeys = KeyHelper.generateKeyPair(keyAlgorithm);
+
+            ASAPCertificateImpl certificate = produceCertificate(issuerKeys, subjectKeys);
+            ASAPCertificate received = ASAPCertificateImpl.produceCertificateFromBytes(certificate.asBytes());
+            ASAPCertificate lazy = ASAPCertificateImpl.produceLazyCertificate(certificate.asBytes(), null);
+
+            Assert.assertTrue(keyAlgorithm, received.verify(issuerKeys.getPublic()));
+            Assert.assertFalse(keyAlgorithm, received.verify(otherKeys.getPublic()));
+            Assert.assertEquals(subjectKeys.getPublic(), received.getPublicKey());
+            Assert.assertEquals(subjectKeys.getPublic(), lazy.getPublicKey());
+            Assert.assertTrue(received.isIdentical(certificate));
+        }
+
+        // any kind of issuer can certify any kind of key
+        KeyPair rsaKeys = KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_RSA);
+        KeyPair edKeys = KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_ED25519);
+        Assert.assertTrue(produceCertificate(rsaKeys, edKeys).verify(rsaKeys.getPublic()));
+        Assert.assertTrue(produceCertificate(edKeys, rsaKeys).verify(edKeys.getPublic()));
+        // wrong kind of key cannot verify anything
+        Assert.assertFalse(produceCertificate(rsaKeys, edKeys).verify(edKeys.getPublic()));
+    }
+
+    @Test
+    public void credentialMessagesAndKeySerialization() throws Exception {
+        for(String keyAlgorithm : KEY_ALGORITHMS) {
+            KeyPair keyPair = KeyHelper.generateKeyPair(keyAlgorithm);
+
+            CredentialMessageInMemo credentialMessage = new CredentialMessageInMemo(
+                    "Alice_ID", "Alice", System.currentTimeMillis(), keyPair.getPublic());
+            CredentialMessageInMemo received = new CredentialMessageInMemo(credentialMessage.getMessageAsBytes());
+            Assert.assertEquals(keyPair.getPublic(), received.getPublicKey());
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            KeyHelper.writePublicKeyToStream(keyPair.getPublic(), new DataOutputStream(baos));
+            KeyHelper.writePrivateKeyToStream(keyPair.getPrivate(), new DataOutputStream(baos));
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+            Assert.assertEquals(keyPair.getPublic(), KeyHelper.readPublicKeyFromStream(dis));
+            PrivateKey privateKey = KeyHelper.readPrivateKeyFromStream(dis);
+            Assert.assertArrayEquals(keyPair.getPrivate().getEncoded(), privateKey.getEncoded());
+        }
+    }
+
+    /**
+     * Owner key pair of any kind - in memory key store restores RSA key pairs only.
+     */
+    private static class OwnerKeyStore extends InMemoASAPKeyStore {
+        private final KeyPair ownerKeys;
+
+        OwnerKeyStore(CharSequence ownerID, KeyPair ownerKeys) throws ASAPSecurityException {
+            super(ownerID);
+            this.ownerKeys = ownerKeys;
+        }
+
+        @Override
+        public KeyPair getKeyPair() {
+            return this.ownerKeys;
+        }
+
+        @Override
+        public PrivateKey getPrivateKey() {
+            return this.ownerKeys.getPrivate();
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            return this.ownerKeys.getPublic();
+        }
+    }
+
+    @Test
+    public void signWithOwnersKindOfKey() throws Exception {
+        KeyPair aliceKeys = KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_ED25519);
+        PersonStoreImplAndCertsWrapper alice = new PersonStoreImplAndCertsWrapper(
+                new InMemoCertificates("Alice_ID", "Alice"), new OwnerKeyStore("Alice_ID", aliceKeys));
+
+        KeyPair bobKeys = KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_EC);
+        ASAPCertificate certificate = alice.addAndSignPerson("Bob_ID", "Bob", bobKeys.getPublic(),
+                System.currentTimeMillis(), ASAPEncounterConnectionType.INTERNET);
+
+        Assert.assertEquals(ASAPCertificateImpl.SIGNATURE_METHOD_ED25519,
+                ((ASAPCertificateImpl) certificate).getSigningAlgorithm());
+        Assert.assertTrue(alice.verifyCertificate(certificate));
+    }
+
+    /**
+     * Costs of signing and verification are measured by SigningAlgorithmsBenchmark.
+     */
+    @Test
+    public void certificateSizes() throws Exception {
+        int[] sizes = new int[KEY_ALGORITHMS.length];
+        for(int i = 0; i < KEY_ALGORITHMS.length; i++) {
+            KeyPair issuerKeys = KeyHelper.generateKeyPair(KEY_ALGORITHMS[i]);
+            ASAPCertificateImpl certificate =
+                    produceCertificate(issuerKeys, KeyHelper.generateKeyPair(KEY_ALGORITHMS[i]));
+
+            Assert.assertEquals(KeyHelper.getSigningAlgorithm(issuerKeys.getPrivate()),
+                    certificate.getSigningAlgorithm());
+            Assert.assertEquals(certificate.asBytes().length, certificate.getSerializedLength());
+            sizes[i] = certificate.getSerializedLength();
+        }
+
+        // RSA first - elliptic curve keys and signatures are much smaller
+        Assert.assertTrue(sizes[1] < sizes[0] / 2);
+        Assert.assertTrue(sizes[2] < sizes[0] / 2);
+    }
+}
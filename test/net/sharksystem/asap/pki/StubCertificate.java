@@ -0,0 +1,75 @@
+package net.sharksystem.asap.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.Calendar;
+
+/**
+ * Certificate without any cryptography. It is meant to fill certificate storages with huge numbers of
+ * certificates in performance tests. Signing a million real certificates would take far too long.
+ */
+class StubCertificate implements ASAPCertificate {
+    private final CharSequence issuerID;
+    private final CharSequence subjectID;
+    private final long validSince;
+    private final long validUntil;
+
+    StubCertificate(CharSequence issuerID, CharSequence subjectID) {
+        this.issuerID = issuerID;
+        this.subjectID = subjectID;
+        this.validSince = System.currentTimeMillis();
+        this.validUntil = this.validSince + 1000L * 60 * 60 * 24 * 365;
+    }
+
+    @Override
+    public CharSequence getSubjectID() { return this.subjectID; }
+
+    @Override
+    public CharSequence getSubjectName() { return this.subjectID; }
+
+    @Override
+    public CharSequence getIssuerID() { return this.issuerID; }
+
+    @Override
+    public CharSequence getIssuerName() { return this.issuerID; }
+
+    @Override
+    public Calendar getValidSince() { return ASAPCertificateImpl.long2Calendar(this.validSince); }
+
+    @Override
+    public Calendar getValidUntil() { return ASAPCertificateImpl.long2Calendar(this.validUntil); }
+
+    @Override
+    public long getValidSinceMillis() { return this.validSince; }
+
+    @Override
+    public long getValidUntilMillis() { return this.validUntil; }
+
+    @Override
+    public byte[] asBytes() { return (this.issuerID + "/" + this.subjectID).getBytes(); }
+
+    @Override
+    public boolean verify(PublicKey publicKeyIssuer)
+            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException { return true; }
+
+    @Override
+    public ASAPStorageAddress getASAPStorageAddress() { return null; }
+
+    @Override
+    public PublicKey getPublicKey() { return null; }
+
+    @Override
+    public ASAPEncounterConnectionType getConnectionTypeCredentialsReceived() {
+        return ASAPEncounterConnectionType.UNKNOWN;
+    }
+
+    @Override
+    public boolean isIdentical(ASAPCertificate cert) {
+        return this.issuerID.toString().equalsIgnoreCase(cert.getIssuerID().toString())
+                && this.subjectID.toString().equalsIgnoreCase(cert.getSubjectID().toString());
+    }
+}
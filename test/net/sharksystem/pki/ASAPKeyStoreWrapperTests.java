@@ -0,0 +1,274 @@
+package net.sharksystem.pki;
+
+import net.sharksystem.asap.ASAPEncounterConnectionType;
+import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
+import net.sharksystem.asap.crypto.InMemoASAPKeyStore;
+import net.sharksystem.asap.persons.SharkPKIFacadeImpl;
+import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.asap.pki.ASAPCertificateImpl;
+import net.sharksystem.asap.pki.ASAPStorageAddress;
+import net.sharksystem.asap.pki.InMemoCertificates;
+import net.sharksystem.asap.pki.KeyHelper;
+import net.sharksystem.asap.pki.PooledASAPKeyStore;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ASAPKeyStoreWrapperTests {
+    private static final String ALICE_ID = "Alice_ID";
+    private static final String BOB_ID = "Bob_ID";
+
+    private static KeyPair createKeyPair() throws Exception {
+        return KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_RSA);
+    }
+
+    private static ASAPCertificateImpl produceCertificate(String issuerID, KeyPair issuerKeys,
+                                                          PublicKey subjectKey, long validSince) throws Exception {
+        return ASAPCertificateImpl.produceCertificate(issuerID, issuerID, issuerKeys.getPrivate(),
+                BOB_ID, "Bob", subjectKey, validSince,
+                ASAPCertificateImpl.DEFAULT_SIGNATURE_METHOD, ASAPEncounterConnectionType.INTERNET);
+    }
+
+    @Test
+    public void keyFromCertificateWithBestIdentityAssurance() throws Exception {
+        InMemoCertificates certificates = new InMemoCertificates(ALICE_ID, "Alice");
+        PooledASAPKeyStore aliceKeyStore = new PooledASAPKeyStore(ALICE_ID);
+        SharkPKIFacadeImpl facade = new SharkPKIFacadeImpl(certificates, aliceKeyStore);
+        ASAPKeyStoreWrapper keyStore = new ASAPKeyStoreWrapper(aliceKeyStore, facade);
+
+        // two certificates of issuers unknown to Alice - same validity
+        long now = System.currentTimeMillis();
+        PublicKey fromZoe = createKeyPair().getPublic();
+        PublicKey fromClara = createKeyPair().getPublic();
+        certificates.storeCertificate(produceCertificate("Zoe_ID", createKeyPair(), fromZoe, now));
+        certificates.storeCertificate(produceCertificate("Clara_ID", createKeyPair(), fromClara, now));
+
+        // same choice each time
+        PublicKey publicKey = keyStore.getPublicKey(BOB_ID);
+        Assert.assertEquals(fromClara, publicKey);
+        Assert.assertSame(publicKey, keyStore.getPublicKey(BOB_ID));
+        Assert.assertEquals(fromClara, new ASAPKeyStoreWrapper(aliceKeyStore, facade).getPublicKey(BOB_ID));
+        // storage makes that choice
+        Assert.assertEquals(fromClara, certificates.getPublicKey(BOB_ID));
+
+        // Alice signs Bob - cache is invalidated, certificate of owner wins
+        PublicKey fromAlice = createKeyPair().getPublic();
+        facade.addAndSignPerson(BOB_ID, "Bob", fromAlice, now - 1000, ASAPEncounterConnectionType.INTERNET);
+        Assert.assertEquals(fromAlice, keyStore.getPublicKey(BOB_ID));
+        Assert.assertEquals(fromAlice, certificates.getPublicKey(BOB_ID));
+
+        // owner key is not taken from certificates
+        Assert.assertEquals(aliceKeyStore.getPublicKey(), keyStore.getPublicKey(ALICE_ID));
+
+        try {
+            keyStore.getPublicKey("Unknown_ID");
+            Assert.fail("key of unknown peer found");
+        } catch (Exception e) {
+            // expected
+        }
+
+        // changed identity assurance only - same key is resolved again and kept
+        certificates.syncIdentityAssurance();
+        publicKey = keyStore.getPublicKey(BOB_ID);
+        Assert.assertEquals(fromAlice, publicKey);
+        Assert.assertSame(publicKey, keyStore.getPublicKey(BOB_ID));
+    }
+
+    @Test
+    public void envelopeForManyRecipients() throws Exception {
+        PooledASAPKeyStore aliceKeyStore = new PooledASAPKeyStore(ALICE_ID);
+        SharkPKIFacadeImpl aliceFacade =
+                new SharkPKIFacadeImpl(new InMemoCertificates(ALICE_ID, "Alice"), aliceKeyStore);
+        ASAPKeyStoreWrapper alice = new ASAPKeyStoreWrapper(aliceKeyStore, aliceFacade);
+
+        // Alice has certified all recipients
+        int numberRecipients = 8;
+        List<CharSequence> recipientIDs = new ArrayList<>();
+        List<ASAPKeyStoreWrapper> recipients = new ArrayList<>();
+        for(int i = 0; i < numberRecipients; i++) {
+            String peerID = "Peer_" + i;
+            PooledASAPKeyStore keyStore = new PooledASAPKeyStore(peerID);
+            aliceFacade.addAndSignPerson(peerID, peerID, keyStore.getPublicKey(), System.currentTimeMillis(),
+                    ASAPEncounterConnectionType.INTERNET);
+            recipientIDs.add(peerID);
+            recipients.add(new ASAPKeyStoreWrapper(keyStore,
+                    new SharkPKIFacadeImpl(new InMemoCertificates(peerID, peerID), keyStore)));
+        }
+
+        byte[] content = new byte[1000];
+        new Random(42).nextBytes(content);
+        List<CharSequence> withDuplicateAndOwner = new ArrayList<>(recipientIDs);
+        withDuplicateAndOwner.add("Peer_0");
+        withDuplicateAndOwner.add(ALICE_ID);
+
+        byte[] envelope = alice.produceEncryptedEnvelope(content, withDuplicateAndOwner);
+        for(ASAPKeyStoreWrapper recipient : recipients) {
+            Assert.assertArrayEquals(content, recipient.decryptEnvelope(envelope));
+        }
+        Assert.assertArrayEquals(content, alice.decryptEnvelope(envelope));
+
+        // no recipient
+        PooledASAPKeyStore otherKeyStore = new PooledASAPKeyStore("Other_ID");
+        try {
+            new ASAPKeyStoreWrapper(otherKeyStore, new SharkPKIFacadeImpl(
+                    new InMemoCertificates("Other_ID", "Other"), otherKeyStore)).decryptEnvelope(envelope);
+            Assert.fail("envelope decrypted by peer that is no recipient");
+        } catch (ASAPSecurityException e) {
+            // expected
+        }
+
+        // no public key of recipient
+        try {
+            alice.produceEncryptedEnvelope(content, Collections.singletonList("Unknown_ID"));
+            Assert.fail("encrypted for unknown peer");
+        } catch (ASAPSecurityException e) {
+            // expected
+        }
+
+        // package for each recipient vs. envelope - content is encrypted once only
+        content = new byte[100000];
+        new Random(42).nextBytes(content);
+        envelope = alice.produceEncryptedEnvelope(content, recipientIDs);
+        Assert.assertTrue(envelope.length < content.length + numberRecipients * 1000);
+
+        int packagesLength = 0;
+        for(CharSequence recipientID : recipientIDs) {
+            packagesLength += ASAPCryptoAlgorithms.produceEncryptedMessagePackage(content, recipientID, alice).length;
+        }
+        Assert.assertTrue(packagesLength > numberRecipients * content.length);
+        Assert.assertArrayEquals(content, recipients.get(numberRecipients - 1).decryptEnvelope(envelope));
+    }
+
+    @Test
+    public void envelopeRejectsRecipientsWithoutRSAKey() throws Exception {
+        PooledASAPKeyStore aliceKeyStore = new PooledASAPKeyStore(ALICE_ID);
+        SharkPKIFacadeImpl aliceFacade =
+                new SharkPKIFacadeImpl(new InMemoCertificates(ALICE_ID, "Alice"), aliceKeyStore);
+        ASAPKeyStoreWrapper alice = new ASAPKeyStoreWrapper(aliceKeyStore, aliceFacade);
+
+        // Alice has certified peers with keys of any kind
+        String[] keyAlgorithms = new String[] {
+                KeyHelper.KEY_ALGORITHM_RSA, KeyHelper.KEY_ALGORITHM_EC, KeyHelper.KEY_ALGORITHM_ED25519};
+        List<CharSequence> recipientIDs = new ArrayList<>();
+        for(String keyAlgorithm : keyAlgorithms) {
+            String peerID = "Peer_" + keyAlgorithm;
+            aliceFacade.addAndSignPerson(peerID, peerID, KeyHelper.generateKeyPair(keyAlgorithm).getPublic(),
+                    System.currentTimeMillis(), ASAPEncounterConnectionType.INTERNET);
+            recipientIDs.add(peerID);
+        }
+
+        byte[] content = new byte[100];
+        new Random(42).nextBytes(content);
+        try {
+            alice.produceEncryptedEnvelope(content, recipientIDs);
+            Assert.fail("encrypted for recipient without RSA key");
+        } catch (ASAPSecurityException e) {
+            Assert.assertTrue(e.getMessage().contains("Peer_" + KeyHelper.KEY_ALGORITHM_EC));
+        }
+
+        // EdDSA key is refused as well
+        try {
+            alice.produceEncryptedEnvelope(content, recipientIDs.subList(2, 3));
+            Assert.fail("encrypted for recipient without RSA key");
+        } catch (ASAPSecurityException e) {
+            Assert.assertTrue(e.getMessage().contains("Peer_" + KeyHelper.KEY_ALGORITHM_ED25519));
+        }
+
+        // RSA keys only
+        List<CharSequence> rsaRecipients = new ArrayList<>(recipientIDs.subList(0, 1));
+        rsaRecipients.add(ALICE_ID);
+        byte[] envelope = alice.produceEncryptedEnvelope(content, rsaRecipients);
+        Assert.assertArrayEquals(content, alice.decryptEnvelope(envelope));
+    }
+
+    /**
+     * Certificate read lazily with a broken key encoding - its key cannot be decoded.
+     */
+    private static class UndecodableKeyCertificate implements ASAPCertificate {
+        private final ASAPCertificate certificate;
+
+        UndecodableKeyCertificate(ASAPCertificate certificate) {
+            this.certificate = certificate;
+        }
+
+        @Override
+        public PublicKey getPublicKey() { return null; }
+
+        @Override
+        public CharSequence getSubjectID() { return this.certificate.getSubjectID(); }
+
+        @Override
+        public CharSequence getSubjectName() { return this.certificate.getSubjectName(); }
+
+        @Override
+        public CharSequence getIssuerID() { return this.certificate.getIssuerID(); }
+
+        @Override
+        public CharSequence getIssuerName() { return this.certificate.getIssuerName(); }
+
+        @Override
+        public Calendar getValidSince() { return this.certificate.getValidSince(); }
+
+        @Override
+        public Calendar getValidUntil() { return this.certificate.getValidUntil(); }
+
+        @Override
+        public byte[] asBytes() { return this.certificate.asBytes(); }
+
+        @Override
+        public boolean verify(PublicKey publicKeyIssuer) { return false; }
+
+        @Override
+        public ASAPStorageAddress getASAPStorageAddress() { return this.certificate.getASAPStorageAddress(); }
+
+        @Override
+        public ASAPEncounterConnectionType getConnectionTypeCredentialsReceived() {
+            return this.certificate.getConnectionTypeCredentialsReceived();
+        }
+
+        @Override
+        public boolean isIdentical(ASAPCertificate asapCertificate) { return false; }
+    }
+
+    @Test
+    public void certificateWithUndecodableKey() throws Exception {
+        InMemoCertificates certificates = new InMemoCertificates(ALICE_ID, "Alice");
+        InMemoASAPKeyStore aliceKeyStore = new InMemoASAPKeyStore(ALICE_ID);
+        SharkPKIFacadeImpl facade = new SharkPKIFacadeImpl(certificates, aliceKeyStore);
+        ASAPKeyStoreWrapper keyStore = new ASAPKeyStoreWrapper(aliceKeyStore, facade);
+
+        // issued by owner - best identity assurance
+        long now = System.currentTimeMillis();
+        KeyPair aliceKeys = new KeyPair(aliceKeyStore.getPublicKey(), aliceKeyStore.getPrivateKey());
+        certificates.storeCertificate(new UndecodableKeyCertificate(
+                produceCertificate(ALICE_ID, aliceKeys, createKeyPair().getPublic(), now)));
+
+        // only key is broken - no NullPointerException
+        try {
+            keyStore.getPublicKey(BOB_ID);
+            Assert.fail("broken key taken");
+        } catch (ASAPSecurityException e) {
+            // expected
+        }
+        try {
+            keyStore.produceEncryptedEnvelope(new byte[100], Collections.singletonList(BOB_ID));
+            Assert.fail("encrypted with broken key");
+        } catch (ASAPSecurityException e) {
+            // expected
+        }
+
+        // broken key is not taken even from issuer with best identity assurance
+        PublicKey fromClara = createKeyPair().getPublic();
+        certificates.storeCertificate(produceCertificate("Clara_ID", createKeyPair(), fromClara, now - 1000));
+        certificates.syncIdentityAssurance();
+        Assert.assertEquals(fromClara, keyStore.getPublicKey(BOB_ID));
+    }
+}
@@ -5,15 +5,21 @@ import net.sharksystem.SharkTestPeerFS;
 import net.sharksystem.SharkUnknownBehaviourException;
 import net.sharksystem.asap.ASAPException;
 import net.sharksystem.asap.ASAPSecurityException;
+import net.sharksystem.asap.ASAPStorage;
 import net.sharksystem.asap.persons.PersonValues;
 import net.sharksystem.asap.pki.ASAPCertificate;
+import net.sharksystem.asap.pki.CredentialMessageInMemo;
+import net.sharksystem.asap.pki.KeyHelper;
 import net.sharksystem.asap.crypto.ASAPCryptoAlgorithms;
 import net.sharksystem.testhelper.SharkPKITesthelper;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import static net.sharksystem.asap.persons.PersonValues.DEFAULT_SIGNING_FAILURE_RATE;
 import static net.sharksystem.pki.TestConstants.*;
@@ -100,6 +106,51 @@ public class SharkComponentUsageTests {
 
     }
 
+    /**
+     * Bob signs a batch of credentials during an encounter. New certificates are sent to Alice at once - all in one
+     * message. They would not reach her before next encounter otherwise.
+     */
+    @Test
+    public void acceptAndSignCredentialsDuringEncounter() throws SharkException, ASAPException,
+            IOException, InterruptedException, SharkUnknownBehaviourException, NoSuchAlgorithmException {
+
+        this.setUpAndStartAliceAndBob();
+        aliceComponent.setBehaviour(SharkPKIComponent.BEHAVIOUR_SEND_CREDENTIAL_FIRST_ENCOUNTER, false);
+        bobComponent.setBehaviour(SharkPKIComponent.BEHAVIOUR_SEND_CREDENTIAL_FIRST_ENCOUNTER, false);
+
+        aliceSharkPeer.getASAPTestPeerFS().startEncounter(getPortNumber(), bobSharkPeer.getASAPTestPeerFS());
+        Thread.sleep(200);
+
+        List<CredentialMessage> credentialMessages = new ArrayList<>();
+        credentialMessages.add(new CredentialMessageInMemo(ALICE_ID, ALICE_NAME,
+                System.currentTimeMillis(), aliceComponent.getPublicKey()));
+        credentialMessages.add(new CredentialMessageInMemo(CLARA_ID, CLARA_NAME,
+                System.currentTimeMillis(), KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_RSA).getPublic()));
+        int numberOthers = 8;
+        for(int i = 0; i < numberOthers; i++) {
+            credentialMessages.add(new CredentialMessageInMemo("Other_" + i, "Other " + i, System.currentTimeMillis(),
+                    KeyHelper.generateKeyPair(KeyHelper.KEY_ALGORITHM_EC).getPublic()));
+        }
+        Assert.assertEquals(2 + numberOthers, bobComponent.acceptAndSignCredentials(credentialMessages).size());
+        Thread.sleep(200);
+
+        aliceSharkPeer.getASAPTestPeerFS().stopEncounter(bobSharkPeer.getASAPTestPeerFS());
+
+        // all certificates arrived during this encounter
+        Collection<ASAPCertificate> certificatesByIssuer = aliceComponent.getCertificatesByIssuer(BOB_ID);
+        Assert.assertEquals(2 + numberOthers, certificatesByIssuer.size());
+        Assert.assertEquals(1, aliceComponent.getCertificatesBySubject(CLARA_ID).size());
+        for(int i = 0; i < numberOthers; i++) {
+            Assert.assertEquals(1, aliceComponent.getCertificatesBySubject("Other_" + i).size());
+        }
+
+        // Bob has sent one message - look after encounter, storage memento is written meanwhile
+        Thread.sleep(200);
+        ASAPStorage bobStorage = bobSharkPeer.getASAPTestPeerFS().getASAPStorage(SharkPKIComponent.PKI_APP_NAME);
+        Assert.assertEquals(1, bobStorage.getChannel(ASAPCertificate.ASAP_CERTIFICATE_BATCH_URI)
+                .getMessages().size());
+    }
+
     /**
      * Alice send her credential information to Bob and expects him to sign. Certificates issued by Bob must be
      * available on both sides.